@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * This class implements AsyncBackendInterface by running the operations of
+ * a Backend on an executor. Every call into the Backend holds a fair lock,
+ * and readData only holds it while inserting one batch of rows, so queries
+ * are answered between batches from the songs loaded so far, rather than
+ * waiting for the whole file.
+ */
+public class AsyncBackend implements AsyncBackendInterface {
+
+    private final Backend backend;
+    private final Executor executor;
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Creates an asynchronous front for backend.
+     * @param backend the backend to run operations on
+     * @param executor the executor that runs the operations; a pool with
+     *     more than one thread lets queries run while data is being loaded
+     */
+    public AsyncBackend(Backend backend, Executor executor) {
+        this.backend = backend;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> readData(String filename) {
+        return readData(filename, rows -> { });
+    }
+
+    /**
+     * Reads and parses the file on the executor through Backend.readBatches,
+     * inserting each batch of Backend.BATCH_SIZE rows under the lock and then
+     * reporting progress. A backend that reads files lazily maps the whole
+     * file under the lock instead, and reports its rows at once.
+     */
+    @Override
+    public CompletableFuture<Void> readData(String filename, LongConsumer progress) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                lock.lock();
+                try {
+                    if (backend.readsLazily()) {
+                        int rows = backend.readLazily(filename);
+                        progress.accept(rows);
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                long[] loaded = { 0 };
+                backend.readBatches(filename, batch -> {
+                    if (!batch.isEmpty()) {
+                        loaded[0] += insert(batch);
+                        progress.accept(loaded[0]);
+                    }
+                });
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Inserts one batch while holding the lock.
+     * @return the number of songs in the batch
+     */
+    private int insert(List<Song> batch) {
+        lock.lock();
+        try {
+            backend.insertBatch(batch);
+        } finally {
+            lock.unlock();
+        }
+        return batch.size();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getRange(Integer low, Integer high) {
+        return query(() -> backend.getRange(low, high));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> setFilter(Integer threshold) {
+        return query(() -> backend.setFilter(threshold));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> fiveMost() {
+        return query(backend::fiveMost);
+    }
+
+    /**
+     * Runs a query on the executor while holding the lock.
+     */
+    private CompletableFuture<List<String>> query(Supplier<List<String>> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            lock.lock();
+            try {
+                return query.get();
+            } finally {
+                lock.unlock();
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * AsyncBackendInterface - the operations of BackendInterface, returning
+ * CompletableFutures instead of blocking the calling thread. This lets the
+ * backend be called from an event loop.
+ */
+public interface AsyncBackendInterface {
+
+    /**
+     * Starts loading data from the .csv file referenced by filename, as
+     * described by BackendInterface.readData. Queries can be made while the
+     * file is being loaded, and see the songs that were loaded so far.
+     *
+     * @param filename the name of the csv file to load data from
+     * @return a future that completes once every song has been loaded, or
+     *     completes exceptionally with an IOException when there is trouble
+     *     finding or reading the file
+     */
+    public CompletableFuture<Void> readData(String filename);
+
+    /**
+     * Starts loading data like readData(filename), reporting progress along
+     * the way.
+     *
+     * @param filename the name of the csv file to load data from
+     * @param progress called with the total number of rows loaded so far,
+     *     each time another batch of rows has been loaded
+     * @return a future that completes once every song has been loaded
+     */
+    public CompletableFuture<Void> readData(String filename, LongConsumer progress);
+
+    /**
+     * Asynchronous version of BackendInterface.getRange.
+     *
+     * @param low the minimum Loudness of songs in the returned list
+     * @param high the maximum Loudness of songs in the returned list
+     * @return a future for the list of titles
+     */
+    public CompletableFuture<List<String>> getRange(Integer low, Integer high);
+
+    /**
+     * Asynchronous version of BackendInterface.setFilter.
+     *
+     * @param threshold filters returned song titles to only include songs that
+     *     have a Speed that is larger than this threshold.
+     * @return a future for the list of titles
+     */
+    public CompletableFuture<List<String>> setFilter(Integer threshold);
+
+    /**
+     * Asynchronous version of BackendInterface.fiveMost.
+     *
+     * @return a future for the list of five most Danceable song titles
+     */
+    public CompletableFuture<List<String>> fiveMost();
+}
@@ -0,0 +1,375 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class implements a B+ tree that stores values in wide, array-backed
+ * nodes. Values are kept only in the leaves, which are linked together in
+ * order, so a range scan is a sequential walk over arrays instead of a
+ * pointer chase through one node per value. Duplicate values are allowed,
+ * and are stored after the equal values that were inserted before them.
+ * It can be passed to Backend in place of a RedBlackTree.
+ */
+public class BPlusTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    // maximum number of values in a leaf, and of children of an internal node
+    public static final int DEFAULT_ORDER = 64;
+
+    // set when the tree is created, before any node is
+    private int order;
+    private Node root;
+    private LeafNode firstLeaf;
+    private int size;
+
+    // bounds applied to every iterator created by this tree, null when unbounded
+    private Comparable<T> iteratorMin = null;
+    private Comparable<T> iteratorMax = null;
+
+    /**
+     * Creates an empty tree with nodes of DEFAULT_ORDER entries.
+     */
+    public BPlusTree() {
+        this.order = DEFAULT_ORDER;
+        clear();
+    }
+
+    /**
+     * Creates an empty tree whose nodes hold up to order entries.
+     * @param order the maximum number of values per leaf and children per
+     *     internal node
+     * @return a new, empty tree
+     * @throws IllegalArgumentException if order is smaller than 3
+     */
+    public static <T extends Comparable<T>> BPlusTree<T> withOrder(int order) {
+        if (order < 3) {
+            throw new IllegalArgumentException("Order must be at least 3");
+        }
+        BPlusTree<T> tree = new BPlusTree<>();
+        tree.order = order;
+        tree.clear();
+        return tree;
+    }
+
+    /**
+     * Inserts a new value into the tree, splitting every node on the path
+     * back to the root that overflows.
+     * @param data the new value being inserted
+     * @throws NullPointerException if data is null
+     */
+    @Override
+    public void insert(T data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert null values");
+        }
+        Split split = root.insert(data);
+        if (split != null) {
+            InternalNode newRoot = new InternalNode();
+            newRoot.children[0] = root;
+            newRoot.children[1] = split.right;
+            newRoot.keys[0] = split.separator;
+            newRoot.count = 2;
+            root = newRoot;
+        }
+        size++;
+    }
+
+    @Override
+    public boolean contains(Comparable<T> data) {
+        LeafNode leaf = findLeaf(data);
+        int index = leaf.lowerBound(data);
+        // the first value >= data may be at the start of a later leaf
+        while (leaf != null && index == leaf.count) {
+            leaf = leaf.next;
+            index = 0;
+        }
+        return leaf != null && data.compareTo(leaf.value(index)) == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        firstLeaf = new LeafNode();
+        root = firstLeaf;
+        size = 0;
+    }
+
+    @Override
+    public void setIteratorMin(Comparable<T> min) { this.iteratorMin = min; }
+
+    @Override
+    public void setIteratorMax(Comparable<T> max) { this.iteratorMax = max; }
+
+    /**
+     * Returns an iterator over the values between the current iterator min
+     * and max, in sorted order.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        final Comparable<T> max = iteratorMax;
+        final LeafNode startLeaf;
+        final int startIndex;
+        if (iteratorMin == null) {
+            startLeaf = firstLeaf;
+            startIndex = 0;
+        } else {
+            startLeaf = findLeaf(iteratorMin);
+            startIndex = startLeaf.lowerBound(iteratorMin);
+        }
+        return new Iterator<T>() {
+            private LeafNode leaf = startLeaf;
+            private int index = startIndex;
+
+            @Override
+            public boolean hasNext() {
+                while (leaf != null && index == leaf.count) {
+                    leaf = leaf.next;
+                    index = 0;
+                }
+                return leaf != null && (max == null || max.compareTo(leaf.value(index)) >= 0);
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return leaf.value(index++);
+            }
+        };
+    }
+
+    /**
+     * @return the leaf where the first value that is not smaller than data
+     * is stored, or the leaf preceding it when it begins a later leaf
+     */
+    private LeafNode findLeaf(Comparable<T> data) {
+        Node node = root;
+        while (node instanceof BPlusTree.InternalNode) {
+            InternalNode internal = (InternalNode) node;
+            node = internal.child(internal.lowerBoundChild(data));
+        }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Describes the new right sibling created by splitting a node, and the
+     * smallest value stored beneath it.
+     */
+    private class Split {
+        final Node right;
+        final T separator;
+
+        Split(Node right, T separator) {
+            this.right = right;
+            this.separator = separator;
+        }
+    }
+
+    private abstract class Node {
+        // inserts data beneath this node, returning the split it caused or null
+        abstract Split insert(T data);
+    }
+
+    /**
+     * Internal node: keys[i] is the smallest value stored beneath
+     * children[i + 1], and every value beneath children[i] is at most keys[i].
+     */
+    private class InternalNode extends Node {
+        final Object[] keys = new Object[order];
+        final Object[] children = new Object[order + 1];
+        int count = 0; // number of children
+
+        @SuppressWarnings("unchecked")
+        T key(int i) { return (T) keys[i]; }
+
+        @SuppressWarnings("unchecked")
+        Node child(int i) { return (Node) children[i]; }
+
+        // index of the child that holds the first value >= data
+        int lowerBoundChild(Comparable<T> data) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data.compareTo(key(mid)) > 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // index of the child after which data is inserted, past equal values
+        int upperBoundChild(T data) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data.compareTo(key(mid)) >= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        @Override
+        Split insert(T data) {
+            int index = upperBoundChild(data);
+            Split split = child(index).insert(data);
+            if (split == null) {
+                return null;
+            }
+            System.arraycopy(keys, index, keys, index + 1, count - 1 - index);
+            System.arraycopy(children, index + 1, children, index + 2, count - 1 - index);
+            keys[index] = split.separator;
+            children[index + 1] = split.right;
+            count++;
+            if (count <= order) {
+                return null;
+            }
+            // move the upper half of the children to a new sibling, and push
+            // the key between the two halves up to the parent
+            InternalNode right = new InternalNode();
+            int keep = count / 2;
+            right.count = count - keep;
+            System.arraycopy(children, keep, right.children, 0, right.count);
+            System.arraycopy(keys, keep, right.keys, 0, right.count - 1);
+            T separator = key(keep - 1);
+            for (int i = keep; i < count; i++) {
+                children[i] = null;
+                keys[i - 1] = null;
+            }
+            count = keep;
+            return new Split(right, separator);
+        }
+    }
+
+    /**
+     * Leaf node: stores up to order values in sorted order, and links to the
+     * leaf holding the next values.
+     */
+    private class LeafNode extends Node {
+        final Object[] values = new Object[order + 1];
+        int count = 0;
+        LeafNode next = null;
+
+        @SuppressWarnings("unchecked")
+        T value(int i) { return (T) values[i]; }
+
+        // index of the first value >= data
+        int lowerBound(Comparable<T> data) {
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data.compareTo(value(mid)) > 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        @Override
+        Split insert(T data) {
+            // find the position after any equal values
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data.compareTo(value(mid)) >= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            System.arraycopy(values, lo, values, lo + 1, count - lo);
+            values[lo] = data;
+            count++;
+            if (count <= order) {
+                return null;
+            }
+            LeafNode right = new LeafNode();
+            int keep = count / 2;
+            right.count = count - keep;
+            System.arraycopy(values, keep, right.values, 0, right.count);
+            for (int i = keep; i < count; i++) {
+                values[i] = null;
+            }
+            count = keep;
+            right.next = next;
+            next = right;
+            return new Split(right, right.value(0));
+        }
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that iteration returns every inserted value, duplicates
+     * included, in sorted order after many splits.
+     */
+    @Test
+    public void testInsertAndIterate() {
+        BPlusTree<Integer> tree = BPlusTree.withOrder(4);
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(28);
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(500);
+            tree.insert(value);
+            expected.add(value);
+        }
+        Collections.sort(expected);
+        List<Integer> actual = new ArrayList<>();
+        for (int value : tree) {
+            actual.add(value);
+        }
+        assertEquals(expected, actual);
+        assertEquals(5000, tree.size());
+        assertTrue(tree.contains(expected.get(0)));
+        assertFalse(tree.contains(500));
+    }
+
+    /**
+     * Checks that iteration honors the iterator min and max, including when
+     * equal values are spread across several leaves.
+     */
+    @Test
+    public void testBoundedIteration() {
+        BPlusTree<Integer> tree = BPlusTree.withOrder(3);
+        for (int i = 0; i < 10; i++) {
+            tree.insert(5);
+            tree.insert(i);
+        }
+        tree.setIteratorMin(5);
+        tree.setIteratorMax(6);
+        int fives = 0;
+        int sixes = 0;
+        for (int value : tree) {
+            if (value == 5) fives++;
+            else if (value == 6) sixes++;
+            else fail("unexpected value " + value);
+        }
+        assertEquals(11, fives);
+        assertEquals(1, sixes);
+    }
+}
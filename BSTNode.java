@@ -1,6 +1,6 @@
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Stack;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 
 /**
  * This class represents a node for a Binary Search Tree that holds a single 
@@ -98,36 +98,44 @@ public class BSTNode<T> {
      * @return a string of node values in level-order
      */
     public String toLevelOrderString() {
-        // create a linked list that we'll use as a queue to store inprocessed nodes
-        Queue<BSTNode<T>> nodeList = new LinkedList<>();
+        StringBuilder sb = new StringBuilder();
+        try {
+            appendLevelOrder(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Performs a level-order traversal of the subtree rooted at this node and
+     * writes those nodes' contents to out as they are visited, in the same
+     * format as toLevelOrderString, without first building the whole string.
+     * @param out where the node values are written
+     * @throws IOException if out cannot be written to
+     */
+    public void appendLevelOrder(Appendable out) throws IOException {
+        // queue of nodes that have been reached but not yet written
+        ArrayDeque<BSTNode<T>> nodeList = new ArrayDeque<>();
         // add this node to the queue first
         nodeList.add(this);
-        // create the buffer to assemble the string efficiently
-        StringBuffer sb = new StringBuffer();
-        // add the bracket preceding the list of nodes to the buffer first
-        sb.append("[ ");
+        // write the bracket preceding the list of nodes first
+        out.append("[ ");
         // keep processing nodes as long as we have any left on the queue
         while (!nodeList.isEmpty()) {
-            // if it exists, add the left child of the head of the queue to the queue
-            if (nodeList.peek().getLeft() != null) {
-                nodeList.add(nodeList.peek().getLeft());
-            }
-            // if it exists, add the right child of the head of the queue to the queue
-            if (nodeList.peek().getRight() != null) {
-                nodeList.add(nodeList.peek().getRight());
+            BSTNode<T> current = nodeList.poll();
+            // if they exist, add the children of the current node to the queue
+            if (current.getLeft() != null) {
+                nodeList.add(current.getLeft());
             }
-            // add the head of the queue to the string buffer and remove from queue
-            sb.append(nodeList.poll().toString());
-            // add a comma to separate values to the buffer, or close the bracket if
-            // we've just added the last node to it
-            if (nodeList.isEmpty()) {
-                sb.append(" ]");
-            } else {
-                sb.append(", ");
+            if (current.getRight() != null) {
+                nodeList.add(current.getRight());
             }
+            out.append(current.toString());
+            // separate values with a comma, or close the bracket after the last node
+            out.append(nodeList.isEmpty() ? " ]" : ", ");
         }
-        // return the string built with the string buffer
-        return sb.toString();
     }
 
     /**
@@ -136,42 +144,43 @@ public class BSTNode<T> {
      * @return a string of node value in in-order
      */
     public String toInOrderString() {
-        // create a stack to keep track of unvisited nodes
-        Stack<BSTNode<T>> stack = new Stack<>();
-        // add root (this node) to the stack first
-        stack.push(this);
-        // follow the left child references and add all nodes on the path from this node
-        // to its left-most descendant to the stack
-        while (stack.peek().getLeft() != null) {
-            stack.push(stack.peek().getLeft());
+        StringBuilder sb = new StringBuilder();
+        try {
+            appendInOrder(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
         }
-        // create a buffer to assemble the string efficiently
-        StringBuffer sb = new StringBuffer();
-        // add the bracket preceding the list of nodes to the buffer first
-        sb.append("[ ");
+        return sb.toString();
+    }
+
+    /**
+     * Performs an in-order traversal of the subtree rooted at this node and
+     * writes those nodes' contents to out as they are visited, in the same
+     * format as toInOrderString, without first building the whole string.
+     * @param out where the node values are written
+     * @throws IOException if out cannot be written to
+     */
+    public void appendInOrder(Appendable out) throws IOException {
+        // stack of nodes whose left subtrees are being visited
+        ArrayDeque<BSTNode<T>> stack = new ArrayDeque<>();
+        // add all nodes on the path from this node to its left-most descendant
+        for (BSTNode<T> node = this; node != null; node = node.getLeft()) {
+            stack.push(node);
+        }
+        // write the bracket preceding the list of nodes first
+        out.append("[ ");
         // keep processing nodes as long as the stack is not empty
         while (!stack.isEmpty()) {
-            // pop the top node from the stack
             BSTNode<T> current = stack.pop();
-            // add popped node to the string
-            sb.append(current.toString());
-            // handle the right subtree of the popped node
-            if (current.getRight() != null) {
-                stack.push(current.getRight());
-                while (stack.peek().getLeft() != null) {
-                    stack.push(stack.peek().getLeft());
-                }
-            }
-            // add a comma to separate values to the buffer, or close the bracket if
-            // we've just added the last node to it
-            if (!stack.isEmpty()) {
-                sb.append(", ");
-            } else {
-                sb.append(" ]");
+            out.append(current.toString());
+            // the right subtree of the popped node is visited next
+            for (BSTNode<T> node = current.getRight(); node != null; node = node.getLeft()) {
+                stack.push(node);
             }
+            // separate values with a comma, or close the bracket after the last node
+            out.append(stack.isEmpty() ? " ]" : ", ");
         }
-        // return the string built with the string buffer
-        return sb.toString();
     }
 
-}
\ No newline at end of file
+}
@@ -1,17 +1,57 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public class Backend implements BackendInterface {
 
+    // number of parsed songs that readData passes to the tree's insertAll at once
+    static final int BATCH_SIZE = 10_000;
+
     // Change from Tree_Placeholder to IterableSortedCollection<Song>
     private IterableSortedCollection<Song> songTree;
     private Integer loudnessLow;
     private Integer loudnessHigh;
     private Integer bpmFilter; 
+    // optional loudness x bpm index, null until enableRangeIndex is called
+    private LoudnessBpmIndex rangeIndex;
+    // optional bitmap indexes over song attributes, null until enableBitmapIndex is called
+    private SongBitmapIndex bitmapIndex;
+    // optional artist and genre word index, null until enableInvertedIndex is called
+    private InvertedIndex invertedIndex;
+    // optional nearest neighbor index over song features, null until enableSimilarityIndex is called
+    private SimilarityIndex similarityIndex;
+    // optional title trie for prefix lookups, null until enableTitleIndex is called
+    private TitleIndex titleIndex;
+    // optional title and artist hash index, null until enableHashIndex is called
+    private SongHashIndex hashIndex;
+    // whether readData skips songs whose title and artist are already indexed
+    private boolean deduplicate;
+    // optional view of the songs passing the current filters, null until enableFilterView is called
+    private FilterView filterView;
+    // optional off-heap storage that replaces the tree, null until useOffHeapStore is called
+    private SongStore songStore;
+    // memory-mapped files read in lazy mode, null until useLazyIngest is called
+    private List<LazySongFile> lazyFiles;
+    // year partitions that replace the tree, null until useYearPartitions is called
+    private YearPartitionedCatalog partitions;
+    // optional counts of every attribute value, null until enableHistograms is called
+    private SongHistograms histograms;
 
     /**
      * Constructor: accepts the IterableSortedCollection<Song> object which contains the song data.
@@ -22,17 +62,397 @@ public class Backend implements BackendInterface {
         this.loudnessLow = null;
         this.loudnessHigh = null;
         this.bpmFilter = null;  
+        this.rangeIndex = null;
+        this.bitmapIndex = null;
+        this.invertedIndex = null;
+        this.similarityIndex = null;
+        this.titleIndex = null;
+        this.hashIndex = null;
+        this.deduplicate = false;
+        this.filterView = null;
+        this.songStore = null;
+        this.lazyFiles = null;
+        this.partitions = null;
+        this.histograms = null;
+    }
+
+    /**
+     * Builds a two-dimensional Loudness x BPM index over the songs that are
+     * currently in the tree, and keeps it up to date in future calls to
+     * readData. Once enabled, getRange, setFilter and fiveMost answer their
+     * combined Loudness range and BPM filter from this index rather than by
+     * scanning the whole tree. Songs inserted into the tree directly, rather
+     * than through readData, are not seen by the index.
+     */
+    public void enableRangeIndex() {
+        rangeIndex = new LoudnessBpmIndex();
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            rangeIndex.insert(song);
+        }
+    }
+
+    /**
+     * Builds compressed bitmap indexes over the Loudness, BPM, year, genre and
+     * artist of the songs that are currently in the tree, and keeps them up to
+     * date in future calls to readData. Once enabled, multi-predicate filters
+     * are evaluated by intersecting bitmaps, and only the songs that pass
+     * every predicate are looked up. Songs inserted into the tree directly,
+     * rather than through readData, are not seen by the index.
+     */
+    public void enableBitmapIndex() {
+        bitmapIndex = new SongBitmapIndex();
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            bitmapIndex.add(song);
+        }
+    }
+
+    /**
+     * Builds an inverted index from the words of every artist and genre to
+     * the songs that are currently in the tree, and keeps it up to date in
+     * future calls to readData. Once enabled, search intersects the posting
+     * lists of its words, and getMatching only compares the artist and genre
+     * of songs that contain all of their words, rather than scanning every
+     * song. Songs inserted into the tree directly, rather than through
+     * readData, are not seen by the index.
+     */
+    public void enableInvertedIndex() {
+        invertedIndex = new InvertedIndex();
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            invertedIndex.add(song);
+        }
+    }
+
+    /**
+     * Builds a nearest neighbor index over the BPM, energy, danceability,
+     * loudness and liveness of the songs that are currently in the tree, and
+     * keeps it up to date in future calls to readData. Once enabled, similar
+     * searches a k-d tree rather than measuring the distance to every song.
+     * Songs inserted into the tree directly, rather than through readData,
+     * are not seen by the index.
+     */
+    public void enableSimilarityIndex() {
+        similarityIndex = new SimilarityIndex();
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            similarityIndex.add(song);
+        }
+    }
+
+    /**
+     * Builds a title trie over the songs that are currently in the tree, and
+     * keeps it up to date in future calls to readData. Once enabled,
+     * titlesWithPrefix walks the trie rather than scanning every song. Songs
+     * inserted into the tree directly, rather than through readData, are not
+     * seen by the index.
+     */
+    public void enableTitleIndex() {
+        titleIndex = new TitleIndex();
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            titleIndex.add(song);
+        }
+    }
+
+    /**
+     * Builds a hash index from the title and artist of the songs that are
+     * currently in the tree, and keeps it up to date in future calls to
+     * readData. Once enabled, containsSong and findSong take expected
+     * constant time rather than scanning every song. When deduplicate is
+     * true, readData also skips every song whose title and artist match a
+     * song that was already loaded, such as the overlapping rows of two
+     * exports; duplicates already in the tree are kept. Songs inserted into
+     * the tree directly, rather than through readData, are not seen by the
+     * index, and songs loaded into an off-heap store or lazily are neither
+     * indexed nor deduplicated. Year partitions cannot be deduplicated, since
+     * the index cannot forget the songs of a dropped partition.
+     * @param deduplicate whether readData skips songs that are already loaded
+     * @throws IllegalStateException if year partitions are in use
+     */
+    public void enableHashIndex(boolean deduplicate) {
+        if (partitions != null) {
+            throw new IllegalStateException("Cannot index or deduplicate year partitions");
+        }
+        hashIndex = new SongHashIndex();
+        this.deduplicate = deduplicate;
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            hashIndex.add(song);
+        }
+    }
+
+    /**
+     * Counts every value of every numeric attribute of the songs loaded so
+     * far, and keeps the counts up to date in future calls to readData,
+     * dropYears and reloadYears. Once enabled, percentile and histogram read
+     * the counts in microseconds rather than scanning every song. Unlike the
+     * other indexes, the counts also see songs in an off-heap store, year
+     * partitions or lazily loaded files. Songs inserted into the tree
+     * directly, rather than through readData, are not counted.
+     */
+    public void enableHistograms() {
+        histograms = new SongHistograms();
+        for (Song song : scannedSongs()) {
+            histograms.add(song);
+        }
+    }
+
+    /**
+     * Keeps a materialized view of the songs that pass the current loudness
+     * range and BPM filter. Every song loaded by readData is offered to the
+     * view, so reading the filtered songs takes time proportional to their
+     * number, and fiveMost takes constant time. The view is rebuilt whenever
+     * getRange or setFilter changes the filters. Songs inserted into the tree
+     * directly, rather than through readData, are not seen by the view.
+     */
+    public void enableFilterView() {
+        filterView = new FilterView(loudnessLow, loudnessHigh, bpmFilter);
+        for (Song song : computeFilteredSongs()) {
+            filterView.offer(song);
+        }
+    }
+
+    /**
+     * Switches this backend to keep songs off the Java heap in store. The
+     * songs currently in the tree are copied into store and the backend no
+     * longer uses the tree, which is left as it was for the caller. Future
+     * calls to readData add songs to store, and queries scan the store's
+     * records, only creating Song objects for the songs they return. This
+     * keeps the heap small and quiet for catalogs of tens of millions of
+     * songs. The indexes built from the tree
+     * are dropped, since they would not see the songs added to store; only
+     * the filter view and histograms are kept up to date in this mode.
+     * @param store the store to keep songs in
+     */
+    public void useOffHeapStore(SongStore store) {
+        if (lazyFiles != null) {
+            throw new IllegalStateException("Cannot use an off-heap store in lazy mode");
+        }
+        if (partitions != null) {
+            throw new IllegalStateException("Cannot use an off-heap store with year partitions");
+        }
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        for (Song song : songTree) {
+            store.add(song);
+        }
+        this.songStore = store;
+        releaseTree();
+    }
+
+    /**
+     * @return true if every song is in the tree, so that the indexes built
+     * from it see every song; false with an off-heap store, in lazy mode or
+     * with year partitions
+     */
+    private boolean indexesCurrent() {
+        return songStore == null && lazyFiles == null && partitions == null;
+    }
+
+    /**
+     * Stops using the tree passed to the constructor once songs are kept
+     * elsewhere, and drops the indexes built from it. The tree still belongs
+     * to the caller, so it is left as it was rather than cleared.
+     */
+    private void releaseTree() {
+        songTree = new RedBlackTree<>();
+        rangeIndex = null;
+        bitmapIndex = null;
+        invertedIndex = null;
+        similarityIndex = null;
+        titleIndex = null;
+        hashIndex = null;
+    }
+
+    /**
+     * Switches readData to load files lazily: each file is memory-mapped as a
+     * LazySongFile, which only parses the numeric attributes of every row
+     * and decodes a song's title, artist and genre when it is returned. This
+     * makes loading faster and keeps far less on the heap. Songs already in
+     * the tree stay there and are queried along with the lazily loaded ones,
+     * but the indexes do not see lazily loaded songs, so queries scan them.
+     * @throws IllegalStateException if an off-heap store or year partitions
+     *     are in use
+     */
+    public void useLazyIngest() {
+        if (songStore != null) {
+            throw new IllegalStateException("Cannot load lazily into an off-heap store");
+        }
+        if (partitions != null) {
+            throw new IllegalStateException("Cannot load lazily into year partitions");
+        }
+        if (lazyFiles == null) {
+            lazyFiles = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Switches this backend to keep songs in catalog, which splits them into
+     * a tree per range of years and records the attribute ranges of each.
+     * The songs currently in the tree are copied into catalog and the backend
+     * no longer uses the tree, which is left as it was for the caller. Future
+     * calls to readData add songs to catalog instead. Queries then only scan
+     * the partitions whose years and attribute ranges can match, and
+     * dropYears and reloadYears replace one range of years without reloading
+     * the rest. Since the other indexes cannot forget the songs of a dropped
+     * partition, they are dropped and only the filter view and histograms are
+     * used in this mode, and a hash index that deduplicates songs cannot be
+     * enabled.
+     * @param catalog the catalog to keep songs in
+     * @throws IllegalStateException if an off-heap store or lazy mode is in
+     *     use, or readData deduplicates songs through the hash index
+     */
+    public void useYearPartitions(YearPartitionedCatalog catalog) {
+        if (songStore != null || lazyFiles != null) {
+            throw new IllegalStateException("Cannot partition an off-heap store or lazily loaded files");
+        }
+        if (hashIndex != null && deduplicate) {
+            throw new IllegalStateException("Cannot deduplicate year partitions");
+        }
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        List<Song> songs = new ArrayList<>();
+        songTree.forEach(songs::add);
+        catalog.addAll(songs);
+        this.partitions = catalog;
+        releaseTree();
+    }
+
+    /**
+     * Drops the year partition that year falls in, with all of its songs.
+     * @param year any year in the partition to drop
+     * @return the number of songs dropped
+     * @throws IllegalStateException if year partitions are not in use
+     */
+    public int dropYears(int year) {
+        if (partitions == null) {
+            throw new IllegalStateException("Year partitions are not in use");
+        }
+        uncountPartition(year);
+        int dropped = partitions.dropPartition(year);
+        if (filterView != null) {
+            enableFilterView(); // the view may still hold dropped songs
+        }
+        return dropped;
+    }
+
+    /**
+     * Replaces the songs of the year partition that year falls in with the
+     * songs in filename from the same range of years. Songs from other years
+     * in the file are ignored, and the other partitions are left as they are.
+     * @param year any year in the partition to reload
+     * @param filename the CSV file to reload the partition from
+     * @return the number of songs in the reloaded partition
+     * @throws IOException if there is an error reading the file, in which
+     *     case the partition is left as it was
+     * @throws IllegalStateException if year partitions are not in use
+     */
+    public int reloadYears(int year, String filename) throws IOException {
+        if (partitions == null) {
+            throw new IllegalStateException("Year partitions are not in use");
+        }
+        int start = partitions.partitionStart(year);
+        List<Song> songs = new ArrayList<>();
+        readBatches(filename, batch -> {
+            for (Song song : batch) {
+                if (partitions.partitionStart(song.getYear()) == start) {
+                    songs.add(song);
+                }
+            }
+        });
+        uncountPartition(year);
+        int reloaded = partitions.reloadPartition(year, songs);
+        if (histograms != null) {
+            for (Song song : songs) {
+                histograms.add(song);
+            }
+        }
+        if (filterView != null) {
+            enableFilterView();
+        }
+        return reloaded;
+    }
+
+    /**
+     * Removes the songs of the year partition that year falls in from the
+     * enabled histograms, before the partition is dropped or reloaded.
+     */
+    private void uncountPartition(int year) {
+        YearPartitionedCatalog.Partition partition = partitions.getPartition(year);
+        if (histograms != null && partition != null) {
+            for (Song song : partition) {
+                histograms.remove(song);
+            }
+        }
     }
 
     /**
      * Reads CSV file with song information (e.g., title, artist, BPM, etc.), 
-     * creates Song objects, and adds them to the songTree.
+     * creates Song objects, and adds them to the songTree in batches of
+     * BATCH_SIZE songs through insertAll.
      * Also handles potential invalid data types and file structure.
      * @param filename the CSV file containing the song data
      * @throws IOException if there is an error reading the file
      */
     @Override
     public void readData(String filename) throws IOException {
+        if (lazyFiles != null) {
+            readLazily(filename);
+            return;
+        }
+        readBatches(filename, this::insertBatch);
+    }
+
+    /**
+     * @return true if readData maps files for lazy reading rather than
+     * parsing them into songs
+     */
+    boolean readsLazily() {
+        return lazyFiles != null;
+    }
+
+    /**
+     * Maps a CSV file for lazy reading, as readData does after useLazyFiles.
+     * @param filename the CSV file containing the song data
+     * @return the number of rows in the file
+     * @throws IOException if there is an error reading the file
+     */
+    int readLazily(String filename) throws IOException {
+        LazySongFile file;
+        try {
+            file = new LazySongFile(filename);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filename);
+            throw e;
+        }
+        lazyFiles.add(file);
+        if (histograms != null) {
+            histograms.addAll(file);
+        }
+        if (filterView != null) {
+            enableFilterView(); // the new rows were not offered to the view
+        }
+        return file.size();
+    }
+
+    /**
+     * Parses the rows of a CSV file into songs, and passes them to sink in
+     * batches of up to BATCH_SIZE songs. Rows with invalid columns or values
+     * are reported and skipped.
+     * @param filename the CSV file containing the song data
+     * @param sink receives each batch, which it must not keep
+     * @throws IOException if there is an error reading the file
+     */
+    void readBatches(String filename, Consumer<List<Song>> sink) throws IOException {
+        List<Song> batch = new ArrayList<>();
         try (Scanner scanner = new Scanner(new File(filename))) {
             // Skip header row
             if (scanner.hasNextLine()) {
@@ -41,33 +461,20 @@ public class Backend implements BackendInterface {
 
             while (scanner.hasNextLine()) {
                 String line = scanner.nextLine();
-                String[] values = line.split(",");
-
-                // Ensure we have the expected number of columns (14 columns total)
-                if (values.length != 14) {
-                    System.err.println("Invalid row: " + line);
-                    continue; // Skip this row if the column count is invalid
-                }
 
                 try {
-                    String title = values[0];         // Title of the song
-                    String artist = values[1];        // Artist of the song
-                    String genre = values[2];         // Top genre
-                    int year = Integer.parseInt(values[3]);    // Year
-                    int bpm = Integer.parseInt(values[4]);     // Beats per minute (BPM)
-                    int energy = Integer.parseInt(values[5]);  // Energy (nrgy)
-                    int danceability = Integer.parseInt(values[6]);  // Danceability (dnce)
-                    int loudness = Integer.parseInt(values[7]);      // Loudness (dB)
-                    int liveness = Integer.parseInt(values[8]);      // Liveness (live)
-
-                    // Create and insert a song object into the tree
-                    Song song = new Song(title, artist, genre, year, bpm, energy, danceability, loudness, liveness);
-                    songTree.insert(song);
-                } catch (NumberFormatException e) {
-                    // Handle invalid number formatting
-                    System.err.println("Invalid data in row: " + line);
+                    // Insert the song object with its batch
+                    batch.add(parseSong(line, null));
+                    if (batch.size() == BATCH_SIZE) {
+                        sink.accept(batch);
+                        batch.clear();
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Handle rows with invalid columns or values
+                    System.err.println(e.getMessage());
                 }
             }
+            sink.accept(batch);
         } catch (IOException e) {
             // Handle file read errors
             System.err.println("Error reading file: " + filename);
@@ -75,30 +482,147 @@ public class Backend implements BackendInterface {
         }
     }
 
+    /**
+     * Parses one row of a songs CSV file into a Song.
+     * @param line the row to parse, with 14 comma separated columns
+     * @param comparator the comparator for the new Song, or null to order by title
+     * @return the new Song
+     * @throws IllegalArgumentException if the row does not have 14 columns or
+     *     one of the numeric columns is not an integer or does not fit in a Song
+     */
+    static Song parseSong(String line, Comparator<Song> comparator) throws IllegalArgumentException {
+        String[] values = line.split(",");
+
+        // Ensure we have the expected number of columns (14 columns total)
+        if (values.length != 14) {
+            throw new IllegalArgumentException("Invalid row: " + line);
+        }
+
+        try {
+            String title = values[0];         // Title of the song
+            String artist = values[1];        // Artist of the song
+            String genre = values[2];         // Top genre
+            int year = Integer.parseInt(values[3]);    // Year
+            int bpm = Integer.parseInt(values[4]);     // Beats per minute (BPM)
+            int energy = Integer.parseInt(values[5]);  // Energy (nrgy)
+            int danceability = Integer.parseInt(values[6]);  // Danceability (dnce)
+            int loudness = Integer.parseInt(values[7]);      // Loudness (dB)
+            int liveness = Integer.parseInt(values[8]);      // Liveness (live)
+
+            return new Song(title, artist, genre, year, bpm, energy, danceability, loudness,
+                            liveness, comparator);
+        } catch (IllegalArgumentException e) {
+            // Handle invalid number formatting, or numbers too large for a Song
+            throw new IllegalArgumentException("Invalid data in row: " + line, e);
+        }
+    }
+
+    /**
+     * Inserts a batch of parsed songs into the tree with a single call to
+     * insertAll, and adds them to every enabled index. When an off-heap store
+     * is in use, the songs' attributes are copied into the store instead,
+     * skipping any song with a value that does not fit the store, and when
+     * year partitions are in use, the songs are added to their partitions.
+     * @param batch the songs to insert
+     */
+    void insertBatch(List<Song> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (partitions != null) {
+            partitions.addAll(batch);
+            for (Song song : batch) {
+                if (histograms != null) {
+                    histograms.add(song);
+                }
+                if (filterView != null) {
+                    filterView.offer(song);
+                }
+            }
+            return;
+        }
+        if (songStore != null) {
+            for (Song song : batch) {
+                try {
+                    songStore.add(song);
+                    if (histograms != null) {
+                        histograms.add(song);
+                    }
+                    if (filterView != null) {
+                        filterView.offer(song);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid data in song " + song.getTitle() + ": " + e.getMessage());
+                }
+            }
+            return;
+        }
+        if (hashIndex != null) {
+            // the index keeps the first song with each title and artist, so
+            // any song it rejects is a duplicate
+            List<Song> kept = new ArrayList<>(batch.size());
+            for (Song song : batch) {
+                if (hashIndex.add(song) || !deduplicate) {
+                    kept.add(song);
+                }
+            }
+            batch = kept;
+            if (batch.isEmpty()) {
+                return;
+            }
+        }
+        songTree.insertAll(batch);
+        for (Song song : batch) {
+            indexSong(song);
+        }
+        if (filterView != null) {
+            for (Song song : batch) {
+                filterView.offer(song);
+            }
+        }
+    }
+
+    /**
+     * Adds a song that was just inserted into the tree to every enabled index.
+     * @param song the newly inserted song
+     */
+    private void indexSong(Song song) {
+        if (rangeIndex != null) {
+            rangeIndex.insert(song);
+        }
+        if (bitmapIndex != null) {
+            bitmapIndex.add(song);
+        }
+        if (invertedIndex != null) {
+            invertedIndex.add(song);
+        }
+        if (similarityIndex != null) {
+            similarityIndex.add(song);
+        }
+        if (titleIndex != null) {
+            titleIndex.add(song);
+        }
+        if (histograms != null) {
+            histograms.add(song);
+        }
+    }
+
     /**
      * Retrieves the list of song titles within the specified loudness range.
+     * The range is remembered for future calls to setFilter and fiveMost, and
+     * any BPM filter set by setFilter is applied as well.
      * @param low the lower bound of the loudness range (null if no lower bound)
      * @param high the upper bound of the loudness range (null if no upper bound)
      * @return a list of song titles that fall within the specified loudness range
      */
     @Override
     public List<String> getRange(Integer low, Integer high) {
-        List<String> titles = new ArrayList<>();
-
-        for (Song song : songTree) {
-            int loudness = song.getLoudness();
-
-            // Check if the song's loudness is within the specified range
-            boolean withinLowBound = (low == null || loudness >= low);
-            boolean withinHighBound = (high == null || loudness <= high);
-
-            if (withinLowBound && withinHighBound) {
-                titles.add(song.getTitle());
-            }
-        }
+        // Remember the range for future calls to setFilter and fiveMost
+        this.loudnessLow = low;
+        this.loudnessHigh = high;
 
         // Returns the list of songs within the specified loudness range
-        return titles;
+        return titlesOf(filteredSongs());
     }
 
     /**
@@ -112,19 +636,7 @@ public class Backend implements BackendInterface {
         // Update BPM filter to set new threshold
         this.bpmFilter = threshold;
 
-        List<String> filteredSongs = new ArrayList<>();
-        for (Song song : songTree) {
-            // Apply BPM filter and loudness range filter
-            boolean bpmFilterCondition = (this.bpmFilter == null || song.getBPM() > this.bpmFilter);
-            boolean withinLowBound = (loudnessLow == null || song.getLoudness() >= loudnessLow);
-            boolean withinHighBound = (loudnessHigh == null || song.getLoudness() <= loudnessHigh);
-
-            if (bpmFilterCondition && withinLowBound && withinHighBound) {
-                filteredSongs.add(song.getTitle());
-            }
-        }
-
-        return filteredSongs;
+        return titlesOf(filteredSongs());
     }
 
     /**
@@ -133,9 +645,791 @@ public class Backend implements BackendInterface {
      */
     @Override
     public List<String> fiveMost() {
-        List<Song> filteredSongs = new ArrayList<>();
+        if (filterView != null) {
+            return titlesOf(currentView().mostDanceable());
+        }
 
         // Filter songs based on the most recent loudness range and BPM filter
+        List<Song> filteredSongs = filteredSongs();
+
+        // Sort songs by danceability and return the top 5 most danceable songs
+        filteredSongs.sort(Song.BY_DANCEABILITY.reversed());
+
+        // Retrieve the titles of the top 5 (or fewer) most danceable songs and return them in a list
+        List<String> mostDanceableTitles = new ArrayList<>();
+        for (int i = 0; i < Math.min(5, filteredSongs.size()); i++) {
+            mostDanceableTitles.add(filteredSongs.get(i).getTitle());
+        }
+
+        return mostDanceableTitles;
+    }
+
+    /**
+     * Retrieves the titles of songs released in the given year, in the given
+     * genre and by the given artist, that also fall within the most recent
+     * loudness range and pass the most recent BPM filter. Genre and artist are
+     * matched ignoring case and surrounding whitespace.
+     * @param year the year to match, or null for any year
+     * @param genre the genre to match, or null for any genre
+     * @param artist the artist to match, or null for any artist
+     * @return a list of the matching song titles, ordered by loudness
+     */
+    public List<String> getMatching(Integer year, String genre, String artist) {
+        if (bitmapIndex != null && indexesCurrent()) {
+            return titlesOf(bitmapIndex.select(loudnessLow, loudnessHigh, bpmFilter,
+                                               year, genre, artist));
+        }
+
+        List<Song> candidates;
+        if (partitions != null && year != null) {
+            // only the partition for year, if its ranges overlap the filters
+            candidates = partitions.select(year, year, loudnessLow, loudnessHigh, bpmFilter);
+        } else if (invertedIndex != null && indexesCurrent() && (genre != null || artist != null)) {
+            // an exact match contains every word of the genre and artist, so
+            // only the songs that contain them all need to be compared
+            candidates = invertedIndex.search(artist, genre, loudnessLow, loudnessHigh, bpmFilter);
+        } else {
+            candidates = filteredSongs();
+        }
+
+        List<String> titles = new ArrayList<>();
+        for (Song song : candidates) {
+            boolean yearCondition = (year == null || song.getYear() == year);
+            boolean genreCondition = (genre == null || (song.getGenres() != null
+                && song.getGenres().trim().equalsIgnoreCase(genre.trim())));
+            boolean artistCondition = (artist == null || (song.getArtist() != null
+                && song.getArtist().trim().equalsIgnoreCase(artist.trim())));
+
+            if (yearCondition && genreCondition && artistCondition) {
+                titles.add(song.getTitle());
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * Retrieves the titles of songs released from fromYear through toYear
+     * that also fall within the most recent loudness range and pass the most
+     * recent BPM filter. When year partitions are in use, only the partitions
+     * for those years whose attribute ranges overlap the filters are scanned.
+     * @param fromYear the earliest year, or null for no earliest year
+     * @param toYear the latest year, or null for no latest year
+     * @return a list of the matching song titles, ordered by loudness
+     */
+    public List<String> getRangeInYears(Integer fromYear, Integer toYear) {
+        if (partitions != null) {
+            return titlesOf(partitions.select(fromYear, toYear, loudnessLow, loudnessHigh,
+                                              bpmFilter));
+        }
+        List<String> titles = new ArrayList<>();
+        for (Song song : filteredSongs()) {
+            if ((fromYear == null || song.getYear() >= fromYear)
+                && (toYear == null || song.getYear() <= toYear)) {
+                titles.add(song.getTitle());
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * Retrieves the titles of songs whose artist contains every word of
+     * artistTerms and whose genre contains every word of genreTerms, that
+     * also fall within the most recent loudness range and pass the most
+     * recent BPM filter. Words are runs of letters and digits, matched
+     * ignoring case. An enabled inverted index answers this by intersecting
+     * posting lists; otherwise every song in the range is checked.
+     * @param artistTerms the words to find in the artist, or null for any artist
+     * @param genreTerms the words to find in the genre, or null for any genre
+     * @return a list of the matching song titles, ordered by loudness
+     */
+    public List<String> search(String artistTerms, String genreTerms) {
+        if (invertedIndex != null && indexesCurrent()) {
+            return titlesOf(invertedIndex.search(artistTerms, genreTerms, loudnessLow,
+                                                 loudnessHigh, bpmFilter));
+        }
+
+        Set<String> artistWords = InvertedIndex.tokens(artistTerms);
+        Set<String> genreWords = InvertedIndex.tokens(genreTerms);
+        List<String> titles = new ArrayList<>();
+        for (Song song : filteredSongs()) {
+            if (InvertedIndex.tokens(song.getArtist()).containsAll(artistWords)
+                && InvertedIndex.tokens(song.getGenres()).containsAll(genreWords)) {
+                titles.add(song.getTitle());
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * Retrieves the titles of the k songs most similar to song, by the
+     * distance between their normalized BPM, energy, danceability, loudness
+     * and liveness (see SimilarityIndex), among the songs that fall within
+     * the most recent loudness range and pass the most recent BPM filter.
+     * Song itself is not returned. An enabled similarity index answers this
+     * from its k-d tree; otherwise the distance to every song is measured.
+     * @param song the song to find similar songs to
+     * @param k the largest number of titles to return
+     * @return up to k titles, the most similar first
+     */
+    public List<String> similar(Song song, int k) {
+        Integer low = loudnessLow;
+        Integer high = loudnessHigh;
+        Integer threshold = bpmFilter;
+        Predicate<Song> filter = candidate -> (low == null || candidate.getLoudness() >= low)
+            && (high == null || candidate.getLoudness() <= high)
+            && (threshold == null || candidate.getBPM() > threshold);
+        if (similarityIndex != null && indexesCurrent()) {
+            return titlesOf(similarityIndex.nearest(song, k, filter));
+        }
+
+        // features are normalized over every song, not just those that pass
+        List<Song> songs = new ArrayList<>();
+        for (Song candidate : scannedSongs()) {
+            if (candidate instanceof SongStore.View) {
+                candidate = songStore.toSong(((SongStore.View) candidate).getRow());
+            }
+            songs.add(candidate);
+        }
+        return titlesOf(SimilarityIndex.nearestByScan(songs, song, k, filter));
+    }
+
+    /**
+     * Retrieves the titles of songs that start with prefix, for autocomplete.
+     * Titles are matched and ordered ignoring case, and the loudness range and
+     * BPM filter do not apply. An enabled title index answers this in
+     * O(prefix length + n) steps; otherwise every song is scanned.
+     * @param prefix the prefix to match
+     * @param n the largest number of titles to return
+     * @return up to n matching titles, in case insensitive order
+     */
+    public List<String> titlesWithPrefix(String prefix, int n) {
+        if (titleIndex != null && indexesCurrent()) {
+            return titlesOf(titleIndex.withPrefix(prefix, n));
+        }
+
+        List<String> titles = new ArrayList<>();
+        for (Song song : scannedSongs()) {
+            String title = song.getTitle();
+            if (title != null && title.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                titles.add(title);
+            }
+        }
+        titles.sort(String.CASE_INSENSITIVE_ORDER);
+        return new ArrayList<>(titles.subList(0, Math.min(n, titles.size())));
+    }
+
+    /**
+     * Finds the song with this title and artist, from the hash index when it
+     * is enabled and otherwise by scanning every song. The loudness range and
+     * BPM filter do not apply.
+     * @param title the title of the song
+     * @param artist the artist of the song
+     * @return the first loaded song with this title and artist, or null if
+     *     there is none
+     */
+    public Song findSong(String title, String artist) {
+        if (hashIndex != null && indexesCurrent()) {
+            return hashIndex.get(title, artist);
+        }
+        for (Song song : scannedSongs()) {
+            if (Objects.equals(song.getTitle(), title) && Objects.equals(song.getArtist(), artist)) {
+                if (song instanceof SongStore.View) {
+                    song = songStore.toSong(((SongStore.View) song).getRow());
+                }
+                return song;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a song with this title and artist has been loaded
+     */
+    public boolean containsSong(String title, String artist) {
+        return findSong(title, artist) != null;
+    }
+
+    /**
+     * Finds the value of a numeric attribute at a percentile of every loaded
+     * song, by the nearest rank method (see SongHistograms.percentile). The
+     * loudness range and BPM filter do not apply, so for example
+     * getRange(percentile(SongAttribute.LOUDNESS, 90), null) returns the
+     * loudest 10% of songs. Enabled histograms answer this exactly in
+     * microseconds; otherwise every song is counted first.
+     * @param attribute the numeric attribute
+     * @param percent the percentile, from 0 through 100
+     * @return the value at that percentile, or null if no songs are loaded
+     * @throws IllegalArgumentException if attribute is not numeric or
+     *     percent is not from 0 through 100
+     */
+    public Integer percentile(SongAttribute attribute, double percent) {
+        return currentHistograms().percentile(attribute, percent);
+    }
+
+    /**
+     * Counts every loaded song in buckets of bucketWidth values of a numeric
+     * attribute (see SongHistograms.histogram), for distribution charts. The
+     * loudness range and BPM filter do not apply. Enabled histograms answer
+     * this without scanning; otherwise every song is counted first.
+     * @param attribute the numeric attribute
+     * @param bucketWidth the number of values in each bucket
+     * @return the number of songs in each bucket, by the first value of the
+     *     bucket
+     * @throws IllegalArgumentException if attribute is not numeric or
+     *     bucketWidth is not positive
+     */
+    public SortedMap<Integer, Long> histogram(SongAttribute attribute, int bucketWidth) {
+        return currentHistograms().histogram(attribute, bucketWidth);
+    }
+
+    /**
+     * @return the enabled histograms, or new histograms of every song
+     */
+    private SongHistograms currentHistograms() {
+        if (histograms != null) {
+            return histograms;
+        }
+        SongHistograms counted = new SongHistograms();
+        for (Song song : scannedSongs()) {
+            counted.add(song);
+        }
+        return counted;
+    }
+
+    /**
+     * Writes the songs that fall within the most recent loudness range and
+     * pass the most recent BPM filter to out, one song at a time as the songs
+     * are scanned, so no list of matches is built. Songs are written in the
+     * order of the tree, or of the off-heap store or lazily loaded files,
+     * rather than by loudness, since ordering them would mean collecting them
+     * first.
+     * @param format the format to write songs in
+     * @param out where the songs are written
+     * @return the number of songs written
+     * @throws IOException if out cannot be written to
+     */
+    public long export(SongExport.Format format, Appendable out) throws IOException {
+        SongExport.writeHeader(format, out);
+        long count = 0;
+        for (Song song : scannedSongs()) {
+            if ((loudnessLow == null || song.getLoudness() >= loudnessLow)
+                && (loudnessHigh == null || song.getLoudness() <= loudnessHigh)
+                && (bpmFilter == null || song.getBPM() > bpmFilter)) {
+                SongExport.writeSong(format, song, out);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the songs that export(format, Appendable) would to channel,
+     * encoded as UTF-8 through one reused buffer.
+     * @param format the format to write songs in
+     * @param channel where the songs are written
+     * @return the number of songs written
+     * @throws IOException if channel cannot be written to
+     */
+    public long export(SongExport.Format format, WritableByteChannel channel) throws IOException {
+        SongExport.ChannelAppender out = new SongExport.ChannelAppender(channel);
+        long count = export(format, out);
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Answers every query in batch together, in one sweep over the songs
+     * ordered by loudness (see BatchQuery), rather than with one scan per
+     * query. Each query's result is the same as calling getRange and then
+     * setFilter with its bounds, and fiveMost after them, but the loudness
+     * range and BPM filter of this backend are neither used nor changed.
+     * Songs come from an enabled range or bitmap index already ordered by
+     * loudness; otherwise every song is collected and sorted once, which
+     * creates a Song for every record of an off-heap store.
+     * @param batch the queries to answer
+     * @return the result of each query, in the order they were added to batch
+     */
+    public List<BatchQuery.Result> runBatch(BatchQuery batch) {
+        return batch.evaluate(songsByLoudness());
+    }
+
+    /**
+     * Collects every song ordered by loudness, from the same source and with
+     * ties in the same order as computeFilteredSongs without any filters.
+     * @return a new list of every song
+     */
+    private List<Song> songsByLoudness() {
+        if (partitions != null) {
+            return partitions.select(null, null, null, null, null);
+        }
+        if (indexesCurrent()) {
+            if (rangeIndex != null) {
+                return rangeIndex.query(null, null, null);
+            }
+            if (bitmapIndex != null) {
+                return bitmapIndex.select(null, null, null, null, null, null);
+            }
+        }
+        List<Song> songs = new ArrayList<>();
+        for (Song song : scannedSongs()) {
+            if (song instanceof SongStore.View) {
+                song = songStore.toSong(((SongStore.View) song).getRow());
+            }
+            songs.add(song);
+        }
+        songs.sort(Song.BY_LOUDNESS);
+        return songs;
+    }
+
+    /**
+     * Runs query, using the cheapest access path found by plan. The loudness
+     * range and BPM filter set through getRange and setFilter do not apply;
+     * the query's own predicates are used instead.
+     * @param query the query to run
+     * @return a new list of the matching songs, in the query's order
+     */
+    public List<Song> query(SongQuery query) {
+        QueryPlan plan = plan(query);
+        List<SongQuery.Predicate> residual = plan.getResidualPredicates();
+        int limit = query.getLimit();
+        Comparator<Song> order = comparatorOf(query);
+
+        List<Song> matches = new ArrayList<>();
+        // the heap's head is the worst match kept so far; ties are broken by
+        // arrival so that the top-k results match a stable sort
+        PriorityQueue<Map.Entry<Song, Integer>> heap = null;
+        Comparator<Map.Entry<Song, Integer>> entryOrder = null;
+        if (plan.getOrder() == QueryPlan.Order.TOP_K) {
+            entryOrder = Map.Entry.<Song, Integer>comparingByKey(order)
+                .thenComparing(Map.Entry.comparingByValue());
+            heap = new PriorityQueue<>(Math.max(1, limit), entryOrder.reversed());
+        }
+        boolean stopAtLimit = limit >= 0 && (plan.getOrder() == QueryPlan.Order.NONE
+                                             || plan.getOrder() == QueryPlan.Order.INDEX_ORDER);
+        int arrival = 0;
+        for (Song song : candidates(plan)) {
+            if (stopAtLimit && matches.size() >= limit) {
+                break;
+            }
+            if (!matchesAll(residual, song)) {
+                continue;
+            }
+            if (song instanceof SongStore.View) {
+                song = songStore.toSong(((SongStore.View) song).getRow());
+            }
+            if (heap == null) {
+                matches.add(song);
+            } else if (limit > 0) {
+                heap.add(new AbstractMap.SimpleEntry<>(song, arrival++));
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        }
+
+        if (heap != null) {
+            List<Map.Entry<Song, Integer>> best = new ArrayList<>(heap);
+            best.sort(entryOrder);
+            for (Map.Entry<Song, Integer> entry : best) {
+                matches.add(entry.getKey());
+            }
+        } else if (plan.getOrder() == QueryPlan.Order.SORT) {
+            matches.sort(order);
+        }
+        if (limit >= 0 && matches.size() > limit) {
+            matches.subList(limit, matches.size()).clear();
+        }
+        return matches;
+    }
+
+    /**
+     * Describes how query would be run, without running it.
+     * @param query the query to describe
+     * @return the chosen access path, the predicates it answers and those
+     *     checked on each candidate, the ordering, and the estimated number of
+     *     matching rows
+     */
+    public String explain(SongQuery query) {
+        return plan(query).explain();
+    }
+
+    /**
+     * Chooses how to run query. Every enabled index that can answer at least
+     * one of the query's predicates is costed against a full scan: a scan
+     * costs one unit per song, the range index about 2 * sqrt(n) plus the
+     * songs it returns, and the bitmap index one unit per 64 row ids in the
+     * bitmaps it combines plus the songs it returns. Row estimates use the
+     * bitmap index's exact counts when it is enabled, and fixed default
+     * selectivities otherwise. An off-heap store, and the tree together with
+     * lazily loaded files, are always scanned, since the indexes are not kept
+     * up to date in those modes. Year partitions are scanned too, but only
+     * those whose attribute ranges can satisfy every predicate, so the cost
+     * is the number of songs in those partitions.
+     * @param query the query to plan
+     * @return the cheapest plan
+     */
+    QueryPlan plan(SongQuery query) {
+        List<SongQuery.Predicate> predicates = query.getPredicates();
+        Map<QueryPlan.Access, Long> costs = new EnumMap<>(QueryPlan.Access.class);
+        long n;
+        QueryPlan.Access access;
+        List<SongQuery.Predicate> indexed = new ArrayList<>();
+
+        if (songStore != null) {
+            n = songStore.size();
+            access = QueryPlan.Access.STORE_SCAN;
+            costs.put(access, n);
+        } else if (lazyFiles != null) {
+            n = songTree.size();
+            for (LazySongFile file : lazyFiles) {
+                n += file.size();
+            }
+            access = QueryPlan.Access.LAZY_SCAN;
+            costs.put(access, n);
+        } else if (partitions != null) {
+            n = partitions.size();
+            access = QueryPlan.Access.PARTITION_SCAN;
+            costs.put(access, partitions.countCandidates(predicates));
+        } else {
+            n = bitmapIndex != null ? bitmapIndex.size()
+                : rangeIndex != null ? rangeIndex.size() : songTree.size();
+            access = QueryPlan.Access.FULL_SCAN;
+            costs.put(access, n);
+            long best = n;
+
+            if (rangeIndex != null) {
+                List<SongQuery.Predicate> usable = indexablePredicates(predicates, false);
+                if (!usable.isEmpty()) {
+                    long cost = (long) (2 * Math.sqrt(n)) + estimateRows(usable, n);
+                    costs.put(QueryPlan.Access.RANGE_INDEX, cost);
+                    if (cost < best) {
+                        best = cost;
+                        access = QueryPlan.Access.RANGE_INDEX;
+                        indexed = usable;
+                    }
+                }
+            }
+            if (bitmapIndex != null) {
+                List<SongQuery.Predicate> usable = indexablePredicates(predicates, true);
+                if (!usable.isEmpty()) {
+                    long words = 0;
+                    for (SongQuery.Predicate predicate : usable) {
+                        words += bitmapCount(predicate) / 64;
+                    }
+                    long cost = words + estimateRows(usable, n);
+                    costs.put(QueryPlan.Access.BITMAP_INDEX, cost);
+                    if (cost < best) {
+                        best = cost;
+                        access = QueryPlan.Access.BITMAP_INDEX;
+                        indexed = usable;
+                    }
+                }
+            }
+        }
+
+        List<SongQuery.Predicate> residual = new ArrayList<>(predicates);
+        residual.removeAll(indexed);
+
+        QueryPlan.Order order;
+        if (query.getOrderBy() == null) {
+            order = QueryPlan.Order.NONE;
+        } else if (query.getOrderBy() == SongAttribute.LOUDNESS && !query.isDescending()
+                   && (access == QueryPlan.Access.RANGE_INDEX
+                       || access == QueryPlan.Access.BITMAP_INDEX)) {
+            // both indexes return their songs ordered by loudness
+            order = QueryPlan.Order.INDEX_ORDER;
+        } else if (query.getLimit() >= 0) {
+            order = QueryPlan.Order.TOP_K;
+        } else {
+            order = QueryPlan.Order.SORT;
+        }
+
+        long estimate = estimateRows(predicates, n);
+        if (query.getLimit() >= 0) {
+            estimate = Math.min(estimate, query.getLimit());
+        }
+        return new QueryPlan(query, access, indexed, residual, order, n, estimate, costs);
+    }
+
+    /**
+     * Picks the predicates an index can answer: the first Loudness predicate
+     * and the first BPM greater than predicate, and for the bitmap index also
+     * the first equality predicate on year, genre and artist.
+     * @param bitmap true for the bitmap index, false for the range index
+     * @return the predicates the index would answer
+     */
+    private static List<SongQuery.Predicate> indexablePredicates(List<SongQuery.Predicate> predicates,
+                                                                 boolean bitmap) {
+        List<SongQuery.Predicate> usable = new ArrayList<>();
+        EnumMap<SongAttribute, Boolean> taken = new EnumMap<>(SongAttribute.class);
+        for (SongQuery.Predicate predicate : predicates) {
+            SongAttribute attribute = predicate.getAttribute();
+            SongQuery.Kind kind = predicate.getKind();
+            boolean supported;
+            switch (attribute) {
+            case LOUDNESS:
+                // a greater than bound becomes an inclusive minimum one larger
+                supported = kind != SongQuery.Kind.GREATER_THAN
+                    || (Integer) predicate.getLow() < Integer.MAX_VALUE;
+                break;
+            case BPM:
+                supported = kind == SongQuery.Kind.GREATER_THAN;
+                break;
+            case YEAR:
+            case GENRE:
+            case ARTIST:
+                supported = bitmap && kind == SongQuery.Kind.EQUALS;
+                break;
+            default:
+                supported = false;
+            }
+            if (supported && taken.put(attribute, true) == null) {
+                usable.add(predicate);
+            }
+        }
+        return usable;
+    }
+
+    /**
+     * Estimates how many of n songs satisfy every one of predicates, treating
+     * the predicates as independent.
+     * @return the estimated number of matching songs
+     */
+    private long estimateRows(List<SongQuery.Predicate> predicates, long n) {
+        double rows = n;
+        for (SongQuery.Predicate predicate : predicates) {
+            long count = bitmapCount(predicate);
+            if (count >= 0) {
+                rows *= n == 0 ? 0 : (double) count / n;
+            } else {
+                switch (predicate.getKind()) {
+                case EQUALS: rows *= 0.1; break;
+                case BETWEEN: rows *= 0.25; break;
+                default: rows /= 3; break;
+                }
+            }
+        }
+        return Math.round(Math.ceil(rows));
+    }
+
+    /**
+     * @return the number of songs the bitmap index holds for predicate, or -1
+     * when the bitmap index is disabled, does not see every song (with an
+     * off-heap store, in lazy mode or with year partitions), or cannot count
+     * this predicate
+     */
+    private long bitmapCount(SongQuery.Predicate predicate) {
+        if (bitmapIndex == null || !indexesCurrent()) {
+            return -1;
+        }
+        SongQuery.Kind kind = predicate.getKind();
+        switch (predicate.getAttribute()) {
+        case LOUDNESS:
+            Integer[] bounds = loudnessBounds(predicate);
+            return bitmapIndex.countLoudness(bounds[0], bounds[1]);
+        case BPM:
+            return kind == SongQuery.Kind.GREATER_THAN
+                ? bitmapIndex.countBpmAbove((Integer) predicate.getLow()) : -1;
+        case YEAR:
+            return kind == SongQuery.Kind.EQUALS
+                ? bitmapIndex.countYear((Integer) predicate.getLow()) : -1;
+        case GENRE:
+            return kind == SongQuery.Kind.EQUALS
+                ? bitmapIndex.countGenre((String) predicate.getLow()) : -1;
+        case ARTIST:
+            return kind == SongQuery.Kind.EQUALS
+                ? bitmapIndex.countArtist((String) predicate.getLow()) : -1;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * @return the inclusive minimum and maximum Loudness that satisfy a
+     * Loudness predicate, with null for an open end
+     */
+    private static Integer[] loudnessBounds(SongQuery.Predicate predicate) {
+        Integer low = (Integer) predicate.getLow();
+        switch (predicate.getKind()) {
+        case EQUALS: return new Integer[] { low, low };
+        case BETWEEN: return new Integer[] { low, (Integer) predicate.getHigh() };
+        default: return new Integer[] { low == Integer.MAX_VALUE ? low : low + 1, null };
+        }
+    }
+
+    /**
+     * Produces the candidate songs for plan from its access path. Candidates
+     * from the off-heap store are a single View that is moved from row to row,
+     * and candidates from lazily loaded files only decode their strings when
+     * a predicate or the caller reads them.
+     * @return the candidates, which satisfy every indexed predicate
+     */
+    private Iterable<Song> candidates(QueryPlan plan) {
+        switch (plan.getAccess()) {
+        case STORE_SCAN:
+        case FULL_SCAN:
+        case LAZY_SCAN:
+            return scannedSongs();
+        case PARTITION_SCAN:
+            // pruned partitions are skipped, and the rest checked as residuals
+            return partitions.candidates(plan.getQuery().getPredicates());
+        default:
+            break;
+        }
+
+        Integer low = null;
+        Integer high = null;
+        Integer bpm = null;
+        Integer year = null;
+        String genre = null;
+        String artist = null;
+        for (SongQuery.Predicate predicate : plan.getIndexedPredicates()) {
+            switch (predicate.getAttribute()) {
+            case LOUDNESS:
+                Integer[] bounds = loudnessBounds(predicate);
+                low = bounds[0];
+                high = bounds[1];
+                break;
+            case BPM: bpm = (Integer) predicate.getLow(); break;
+            case YEAR: year = (Integer) predicate.getLow(); break;
+            case GENRE: genre = (String) predicate.getLow(); break;
+            default: artist = (String) predicate.getLow(); break;
+            }
+        }
+        if (plan.getAccess() == QueryPlan.Access.RANGE_INDEX) {
+            return rangeIndex.query(low, high, bpm);
+        }
+        return bitmapIndex.select(low, high, bpm, year, genre, artist);
+    }
+
+    /**
+     * @return every song, from the off-heap store, the year partitions, or
+     * the tree followed by any lazily loaded files; songs from the store are
+     * a single View that is moved from row to row
+     */
+    private Iterable<Song> scannedSongs() {
+        if (partitions != null) {
+            return partitions.candidates(List.of());
+        }
+        if (songStore != null) {
+            return () -> new Iterator<Song>() {
+                private final SongStore.View view = songStore.view();
+                private int row = 0;
+                @Override public boolean hasNext() { return row < songStore.size(); }
+                @Override public Song next() { return view.moveTo(row++); }
+            };
+        }
+        songTree.setIteratorMin(null);
+        songTree.setIteratorMax(null);
+        if (lazyFiles == null) {
+            return songTree;
+        }
+        List<Iterable<Song>> sources = new ArrayList<>();
+        sources.add(songTree);
+        for (LazySongFile file : lazyFiles) {
+            sources.add(() -> IntStream.range(0, file.size()).mapToObj(file::toSong).iterator());
+        }
+        return () -> sources.stream()
+            .flatMap(source -> StreamSupport.stream(source.spliterator(), false)).iterator();
+    }
+
+    /**
+     * @return true if song satisfies every one of predicates
+     */
+    private static boolean matchesAll(List<SongQuery.Predicate> predicates, Song song) {
+        for (SongQuery.Predicate predicate : predicates) {
+            if (!predicate.test(song)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the comparator for the query's ordering, or null if it has none
+     */
+    private static Comparator<Song> comparatorOf(SongQuery query) {
+        SongAttribute attribute = query.getOrderBy();
+        if (attribute == null) {
+            return null;
+        }
+        Comparator<Song> order;
+        if (attribute.isNumeric()) {
+            order = Comparator.comparingInt(attribute::intValueOf);
+        } else {
+            order = Comparator.comparing(song -> (String) attribute.valueOf(song),
+                                         Comparator.nullsLast(Comparator.naturalOrder()));
+        }
+        return query.isDescending() ? order.reversed() : order;
+    }
+
+    /**
+     * Collects the songs that fall within the most recent loudness range and
+     * pass the most recent BPM filter, ordered by their loudness, from the
+     * filter view when it is enabled.
+     * @return a new list of the matching songs
+     */
+    private List<Song> filteredSongs() {
+        if (filterView != null) {
+            return currentView().songs();
+        }
+        return computeFilteredSongs();
+    }
+
+    /**
+     * @return the filter view, first rebuilding it if the loudness range or
+     * BPM filter changed since it was built
+     */
+    private FilterView currentView() {
+        if (!filterView.covers(loudnessLow, loudnessHigh, bpmFilter)) {
+            enableFilterView();
+        }
+        return filterView;
+    }
+
+    /**
+     * Collects the songs that fall within the most recent loudness range and
+     * pass the most recent BPM filter, ordered by their loudness. An enabled
+     * range or bitmap index is used, otherwise the off-heap store, the year
+     * partitions whose ranges overlap the filters, or the tree is scanned.
+     * @return a new list of the matching songs
+     */
+    private List<Song> computeFilteredSongs() {
+        if (songStore != null) {
+            return filteredStoredSongs(songStore);
+        }
+        if (partitions != null) {
+            return partitions.select(null, null, loudnessLow, loudnessHigh, bpmFilter);
+        }
+        if (lazyFiles != null) {
+            // lazily loaded songs are only in their files, so nothing is indexed
+            List<Song> filteredSongs = filteredTreeSongs();
+            for (LazySongFile file : lazyFiles) {
+                filteredSongs.addAll(filteredStoredSongs(file));
+            }
+            filteredSongs.sort(Song.BY_LOUDNESS);
+            return filteredSongs;
+        }
+        if (rangeIndex != null && indexesCurrent()) {
+            return rangeIndex.query(loudnessLow, loudnessHigh, bpmFilter);
+        }
+        if (bitmapIndex != null && indexesCurrent()) {
+            return bitmapIndex.select(loudnessLow, loudnessHigh, bpmFilter, null, null, null);
+        }
+
+        List<Song> filteredSongs = filteredTreeSongs();
+        // The tree may be ordered by something else, so order by loudness here
+        filteredSongs.sort(Song.BY_LOUDNESS);
+        return filteredSongs;
+    }
+
+    /**
+     * Scans the tree for the songs that fall within the most recent loudness
+     * range and pass the most recent BPM filter.
+     * @return a new list of the matching songs, in the tree's order
+     */
+    private List<Song> filteredTreeSongs() {
+        List<Song> filteredSongs = new ArrayList<>();
         for (Song song : songTree) {
             boolean withinLowBound = (loudnessLow == null || song.getLoudness() >= loudnessLow);
             boolean withinHighBound = (loudnessHigh == null || song.getLoudness() <= loudnessHigh);
@@ -145,16 +1439,39 @@ public class Backend implements BackendInterface {
                 filteredSongs.add(song);
             }
         }
+        return filteredSongs;
+    }
 
-        // Sort songs by danceability and return the top 5 most danceable songs
-        filteredSongs.sort(Comparator.comparingInt(Song::getDanceability).reversed());
-
-        // Retrieve the titles of the top 5 (or fewer) most danceable songs and return them in a list
-        List<String> mostDanceableTitles = new ArrayList<>();
-        for (int i = 0; i < Math.min(5, filteredSongs.size()); i++) {
-            mostDanceableTitles.add(filteredSongs.get(i).getTitle());
+    /**
+     * Scans the records in an off-heap store or lazily loaded file, and
+     * creates Song objects only for the songs that pass the loudness range and
+     * BPM filter.
+     * @param columns the songs to scan
+     * @return a new list of the matching songs, ordered by loudness
+     */
+    private List<Song> filteredStoredSongs(SongColumns columns) {
+        int low = loudnessLow == null ? Integer.MIN_VALUE : loudnessLow;
+        int high = loudnessHigh == null ? Integer.MAX_VALUE : loudnessHigh;
+        List<Song> filteredSongs = new ArrayList<>();
+        for (int row = 0; row < columns.size(); row++) {
+            int loudness = columns.getLoudness(row);
+            if (loudness >= low && loudness <= high
+                && (bpmFilter == null || columns.getBPM(row) > bpmFilter)) {
+                filteredSongs.add(columns.toSong(row));
+            }
         }
+        filteredSongs.sort(Song.BY_LOUDNESS);
+        return filteredSongs;
+    }
 
-        return mostDanceableTitles;
+    /**
+     * @return the titles of the provided songs, in the same order
+     */
+    private static List<String> titlesOf(List<Song> songs) {
+        List<String> titles = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            titles.add(song.getTitle());
+        }
+        return titles;
     }
 }
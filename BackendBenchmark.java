@@ -0,0 +1,392 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class benchmarks the backends on a generated catalog. It is run from
+ * the command line, optionally with the number of songs as its first
+ * argument:
+ *
+ *     java BackendBenchmark 1000000
+ *
+ * The catalog is written once to a temporary CSV file in the same format as
+ * songs.csv, and every benchmark loads it with readData.
+ */
+public class BackendBenchmark {
+
+    // number of query rounds timed per configuration
+    private static final int QUERIES = 50;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File csv = File.createTempFile("benchmarkSongs", ".csv");
+        csv.deleteOnExit();
+        BackendLoadTest.writeRandomSongs(csv, n, 34);
+        System.out.println("Benchmarking with " + n + " songs");
+
+        benchmarkSharding(csv.getAbsolutePath());
+        benchmarkLazyIngest(csv.getAbsolutePath());
+        benchmarkDeduplication(csv.getAbsolutePath());
+        benchmarkTitleIndex(n);
+        benchmarkSimilarity(n);
+        benchmarkYearPartitions(n);
+        benchmarkHistograms(n);
+        benchmarkBatchQueries(n);
+    }
+
+    /**
+     * Reports ingest time and query time of a ShardedBackend as the number of
+     * shards grows, next to a single-tree Backend.
+     */
+    static void benchmarkSharding(String filename) throws IOException {
+        long start = System.nanoTime();
+        Backend single = new Backend(new RedBlackTree<>());
+        single.readData(filename);
+        long ingest = System.nanoTime() - start;
+        System.out.printf("Backend          ingest %8.1f ms   query %8.2f ms%n",
+                          ingest / 1e6, timeQueries(single) / 1e6);
+
+        for (int shards = 1; shards <= 8; shards *= 2) {
+            start = System.nanoTime();
+            ShardedBackend sharded = new ShardedBackend(shards, ShardedBackend.Partitioning.BY_TITLE_HASH);
+            sharded.readData(filename);
+            ingest = System.nanoTime() - start;
+            System.out.printf("Sharded x%-6d ingest %8.1f ms   query %8.2f ms%n",
+                              shards, ingest / 1e6, timeQueries(sharded) / 1e6);
+            sharded.shutdown();
+        }
+    }
+
+    /**
+     * Reports ingest time, heap retained and query time of a Backend that
+     * parses every row into a Song, next to one that loads the file lazily.
+     */
+    static void benchmarkLazyIngest(String filename) throws IOException {
+        for (boolean lazy : new boolean[] { false, true }) {
+            long before = TreeBenchmark.usedHeap();
+            long start = System.nanoTime();
+            Backend backend = new Backend(new RedBlackTree<>());
+            if (lazy) {
+                backend.useLazyIngest();
+            }
+            backend.readData(filename);
+            long ingest = System.nanoTime() - start;
+            long heap = TreeBenchmark.usedHeap() - before;
+            System.out.printf("%-16s ingest %8.1f ms   heap %7.1f MB   query %8.2f ms%n",
+                              lazy ? "Lazy ingest" : "Eager ingest", ingest / 1e6, heap / 1e6,
+                              timeQueries(backend) / 1e6);
+        }
+    }
+
+    /**
+     * Reports the time to load the catalog twice, as two overlapping exports
+     * would be, without a hash index, with one and with deduplication, and
+     * the time to look songs up by title and artist in the tree and in the
+     * hash index.
+     */
+    static void benchmarkDeduplication(String filename) throws IOException {
+        RedBlackTree<Song> tree = null;
+        Backend indexed = null;
+        for (int mode = 0; mode < 3; mode++) {
+            RedBlackTree<Song> songs = new RedBlackTree<>();
+            Backend backend = new Backend(songs);
+            if (mode > 0) {
+                backend.enableHashIndex(mode == 2);
+            }
+            long start = System.nanoTime();
+            backend.readData(filename);
+            backend.readData(filename);
+            long ingest = System.nanoTime() - start;
+            System.out.printf("%-16s ingest x2 %8.1f ms   songs %d%n",
+                              new String[] { "No hash index", "Hash index", "Deduplicated" }[mode],
+                              ingest / 1e6, songs.size());
+            if (mode == 2) {
+                tree = songs;
+                indexed = backend;
+            }
+        }
+
+        List<Song> probes = new ArrayList<>();
+        Random random = new Random(45);
+        List<Song> all = new ArrayList<>();
+        tree.forEach(all::add);
+        for (int i = 0; i < 100_000; i++) {
+            probes.add(all.get(random.nextInt(all.size())));
+        }
+        long start = System.nanoTime();
+        int found = 0;
+        for (Song probe : probes) {
+            found += tree.contains(probe) ? 1 : 0;
+        }
+        long treeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (Song probe : probes) {
+            found += indexed.containsSong(probe.getTitle(), probe.getArtist()) ? 1 : 0;
+        }
+        long hashNanos = System.nanoTime() - start;
+        System.out.printf("Lookup           tree %6.0f ns   hash index %6.0f ns   (%d found)%n",
+                          (double) treeNanos / probes.size(), (double) hashNanos / probes.size(), found);
+    }
+
+    /**
+     * Reports the build time and heap used by a TitleIndex over n titles made
+     * of random words, and the time of a top 10 prefix query with the index
+     * and with a scan over every title.
+     */
+    static void benchmarkTitleIndex(int n) {
+        String[] words = { "love", "night", "heart", "baby", "girl", "dance", "time", "fire",
+                           "dream", "summer", "light", "home", "wild", "gold", "rain", "blue",
+                           "young", "money", "river", "star", "lost", "free", "city", "ocean" };
+        Random random = new Random(38);
+        List<Song> songs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                + " " + words[random.nextInt(words.length)] + " " + random.nextInt(1000);
+            songs.add(new Song(title, "Artist", "pop", 2015, 100, 50, 50, -5, 10));
+        }
+        String[] prefixes = new String[1000];
+        for (int i = 0; i < prefixes.length; i++) {
+            String title = songs.get(random.nextInt(n)).getTitle();
+            prefixes[i] = title.substring(0, 2 + random.nextInt(title.length() - 2));
+        }
+
+        long before = TreeBenchmark.usedHeap();
+        long start = System.nanoTime();
+        TitleIndex index = new TitleIndex();
+        for (Song song : songs) {
+            index.add(song);
+        }
+        long build = System.nanoTime() - start;
+        long heap = TreeBenchmark.usedHeap() - before;
+
+        long checksum = 0;
+        start = System.nanoTime();
+        for (String prefix : prefixes) {
+            checksum += index.withPrefix(prefix, 10).size();
+        }
+        long indexed = (System.nanoTime() - start) / prefixes.length;
+
+        int scans = 20;
+        start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            for (Song song : songs) {
+                if (song.getTitle().regionMatches(true, 0, prefixes[i], 0, prefixes[i].length())) {
+                    checksum++;
+                }
+            }
+        }
+        long scanned = (System.nanoTime() - start) / scans;
+        System.out.printf("Title index      build %8.1f ms   heap %7.1f MB (%5.1f bytes/title)   "
+                          + "prefix %7.2f us   scan %8.2f ms   (%d)%n",
+                          build / 1e6, heap / 1e6, heap / (double) n, indexed / 1e3,
+                          scanned / 1e6, checksum);
+    }
+
+    /**
+     * Reports the time of a 10 nearest neighbor query on n random songs with
+     * a SimilarityIndex, including its one-time build, next to measuring the
+     * distance to every song.
+     */
+    static void benchmarkSimilarity(int n) {
+        Random random = new Random(40);
+        List<Song> songs = new ArrayList<>(n);
+        SimilarityIndex index = new SimilarityIndex();
+        for (int i = 0; i < n; i++) {
+            Song song = new Song("Song " + i, "Artist", "pop", 2015, 60 + random.nextInt(140),
+                                 random.nextInt(100), random.nextInt(100), -2 - random.nextInt(30),
+                                 random.nextInt(100));
+            songs.add(song);
+            index.add(song);
+        }
+
+        long checksum = 0;
+        long start = System.nanoTime();
+        checksum += index.nearest(songs.get(0), 10, song -> true).size();
+        long build = System.nanoTime() - start;
+
+        int queries = 1000;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            checksum += index.nearest(songs.get(random.nextInt(n)), 10, song -> true).size();
+        }
+        long indexed = (System.nanoTime() - start) / queries;
+
+        int scans = 10;
+        start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            checksum += SimilarityIndex.nearestByScan(songs, songs.get(random.nextInt(n)), 10,
+                                                      song -> true).size();
+        }
+        long scanned = (System.nanoTime() - start) / scans;
+        System.out.printf("Similarity index build %8.1f ms   query %8.2f us   brute force %8.2f ms   (%d)%n",
+                          build / 1e6, indexed / 1e3, scanned / 1e6, checksum);
+    }
+
+    /**
+     * Reports the time of a query over the last five years of n songs
+     * released from 1950 through 2019, from a Backend with a single tree and
+     * from one with a partition per decade, through both getRangeInYears and
+     * a planned query.
+     */
+    static void benchmarkYearPartitions(int n) {
+        Random random = new Random(48);
+        List<Song> songs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            songs.add(new Song("Song " + i, "Artist", "pop", 1950 + random.nextInt(70),
+                               60 + random.nextInt(140), random.nextInt(100), random.nextInt(100),
+                               -2 - random.nextInt(30), random.nextInt(100)));
+        }
+        SongQuery recent = new SongQuery().greaterThan(SongAttribute.YEAR, 2014)
+            .orderBy(SongAttribute.DANCEABILITY, true).limit(5);
+        for (boolean partitioned : new boolean[] { false, true }) {
+            Backend backend = new Backend(new RedBlackTree<>());
+            if (partitioned) {
+                backend.useYearPartitions(YearPartitionedCatalog.withYearsPerPartition(10));
+            }
+            for (int i = 0; i < n; i += Backend.BATCH_SIZE) {
+                backend.insertBatch(songs.subList(i, Math.min(n, i + Backend.BATCH_SIZE)));
+            }
+            backend.getRange(-20, -5);
+
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                checksum += backend.getRangeInYears(2015, 2019).size();
+            }
+            long range = (System.nanoTime() - start) / QUERIES;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                checksum += backend.query(recent).size();
+            }
+            long query = (System.nanoTime() - start) / QUERIES;
+            System.out.printf("%-16s years %8.2f ms   query %8.2f ms   (%d)%n",
+                              partitioned ? "Year partitions" : "Single tree", range / 1e6,
+                              query / 1e6, checksum);
+        }
+    }
+
+    /**
+     * Reports the time of a Loudness percentile and a BPM histogram on n
+     * random songs from enabled histograms, next to sorting every song's
+     * Loudness, and the time enabled histograms add to loading the songs.
+     */
+    static void benchmarkHistograms(int n) {
+        Random random = new Random(49);
+        List<Song> songs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            songs.add(new Song("Song " + i, "Artist", "pop", 1950 + random.nextInt(70),
+                               60 + random.nextInt(140), random.nextInt(100), random.nextInt(100),
+                               -2 - random.nextInt(30), random.nextInt(100)));
+        }
+        long[] ingest = new long[2];
+        Backend backend = null;
+        for (int mode = 0; mode < 2; mode++) {
+            backend = new Backend(new RedBlackTree<>());
+            if (mode == 1) {
+                backend.enableHistograms();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += Backend.BATCH_SIZE) {
+                backend.insertBatch(songs.subList(i, Math.min(n, i + Backend.BATCH_SIZE)));
+            }
+            ingest[mode] = System.nanoTime() - start;
+        }
+
+        long checksum = 0;
+        int queries = 10_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            checksum += backend.percentile(SongAttribute.LOUDNESS, i % 101);
+        }
+        long percentile = (System.nanoTime() - start) / queries;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            checksum += backend.histogram(SongAttribute.BPM, 10).size();
+        }
+        long histogram = (System.nanoTime() - start) / queries;
+
+        int sorts = 5;
+        start = System.nanoTime();
+        for (int i = 0; i < sorts; i++) {
+            int[] loudness = new int[n];
+            for (int j = 0; j < n; j++) {
+                loudness[j] = songs.get(j).getLoudness();
+            }
+            Arrays.sort(loudness);
+            checksum += loudness[(int) (0.9 * (n - 1))];
+        }
+        long sorted = (System.nanoTime() - start) / sorts;
+        System.out.printf("Histograms       percentile %6.2f us   histogram %6.2f us   sort %8.2f ms   "
+                          + "ingest %8.1f ms (%8.1f ms without)   (%d)%n",
+                          percentile / 1e3, histogram / 1e3, sorted / 1e6, ingest[1] / 1e6,
+                          ingest[0] / 1e6, checksum);
+    }
+
+    /**
+     * Reports the time to answer 1000 random loudness range and BPM filter
+     * queries, with their counts and five most danceable songs, one at a time
+     * through getRange, setFilter and fiveMost, and together through runBatch.
+     */
+    static void benchmarkBatchQueries(int n) {
+        Random random = new Random(50);
+        List<Song> songs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            songs.add(new Song("Song " + i, "Artist", "pop", 2015, 60 + random.nextInt(140),
+                               random.nextInt(100), random.nextInt(100), -2 - random.nextInt(30),
+                               random.nextInt(100)));
+        }
+        Backend backend = new Backend(new RedBlackTree<>());
+        for (int i = 0; i < n; i += Backend.BATCH_SIZE) {
+            backend.insertBatch(songs.subList(i, Math.min(n, i + Backend.BATCH_SIZE)));
+        }
+        int queries = 1000;
+        BatchQuery batch = new BatchQuery().collectFiveMost(true);
+        int[][] bounds = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            int low = -32 + random.nextInt(30);
+            bounds[i] = new int[] { low, low + random.nextInt(6), 60 + random.nextInt(140) };
+            batch.add(bounds[i][0], bounds[i][1], bounds[i][2]);
+        }
+
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int[] query : bounds) {
+            backend.getRange(query[0], query[1]);
+            checksum += backend.setFilter(query[2]).size();
+            checksum += backend.fiveMost().size();
+        }
+        long sequential = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (BatchQuery.Result result : backend.runBatch(batch)) {
+            checksum += result.getCount() + result.getFiveMost().size();
+        }
+        long batched = System.nanoTime() - start;
+        System.out.printf("Batch queries    %d queries one at a time %8.1f ms   in one sweep %8.1f ms   (%d)%n",
+                          queries, sequential / 1e6, batched / 1e6, checksum);
+    }
+
+    /**
+     * @return the mean time in nanoseconds of one round of getRange,
+     * setFilter and fiveMost calls on backend
+     */
+    static long timeQueries(BackendInterface backend) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            int low = -25 + i % 15;
+            checksum += backend.getRange(low, low + 4).size();
+            checksum += backend.setFilter(100 + i % 60).size();
+            checksum += backend.fiveMost().size();
+        }
+        long elapsed = System.nanoTime() - start;
+        backend.getRange(null, null);
+        backend.setFilter(null);
+        if (checksum < 0) {
+            System.out.println(checksum); // keeps the results from being optimized away
+        }
+        return elapsed / QUERIES;
+    }
+}
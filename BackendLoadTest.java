@@ -0,0 +1,135 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class load tests a BackendServer running on localhost. It loads a
+ * generated catalog into a Backend, starts a server for it, and then has a
+ * number of client threads send a mix of range, filter and fiveMost
+ * requests for a fixed duration, reporting the request rate and latency
+ * percentiles. It is run from the command line:
+ *
+ *     java BackendLoadTest [songs] [clients] [seconds]
+ */
+public class BackendLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int songs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        File csv = File.createTempFile("loadTestSongs", ".csv");
+        csv.deleteOnExit();
+        writeRandomSongs(csv, songs, 33);
+        Backend backend = new Backend(new RedBlackTree<>());
+        backend.readData(csv.getAbsolutePath());
+
+        BackendServer server = new BackendServer(backend, 0);
+        server.start();
+        String base = "http://127.0.0.1:" + server.getPort();
+        HttpClient client = HttpClient.newHttpClient();
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long[][] latencies = new long[clients][];
+        AtomicLong failures = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            final int id = c;
+            threads[c] = new Thread(() -> {
+                Random random = new Random(id);
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    String url = base + randomRequest(random);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(
+                            HttpRequest.newBuilder(URI.create(url)).build(),
+                            HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        failures.incrementAndGet();
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                latencies[id] = Arrays.copyOf(samples, count);
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        server.stop(0);
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d songs, %d clients, %d s: %.0f requests/s, %d failures%n",
+                          songs, clients, seconds, all.length / (double) seconds, failures.get());
+        System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                          percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99),
+                          percentile(all, 0.999), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+    }
+
+    /**
+     * @return the path and query of a random request, weighted towards the
+     * slider-driven range and filter requests
+     */
+    private static String randomRequest(Random random) {
+        int kind = random.nextInt(10);
+        if (kind < 5) {
+            int low = -30 + random.nextInt(25);
+            return "/range?low=" + low + "&high=" + (low + 1 + random.nextInt(6));
+        } else if (kind < 8) {
+            return "/filter?threshold=" + (80 + random.nextInt(100));
+        } else {
+            return "/fiveMost";
+        }
+    }
+
+    /**
+     * @return the value at quantile q of sorted nanosecond samples, in ms
+     */
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(q * sorted.length))] / 1e6;
+    }
+
+    /**
+     * Writes a CSV file in the same format as songs.csv, with n songs whose
+     * attributes are drawn at random from realistic ranges.
+     * @param file the file to write
+     * @param n the number of songs to write
+     * @param seed the seed for the random attributes
+     * @throws IOException if the file cannot be written
+     */
+    static void writeRandomSongs(File file, int n, long seed) throws IOException {
+        String[] genres = { "dance pop", "pop", "canadian pop", "boy band", "electropop",
+                            "barbadian pop", "big room", "permanent wave", "hip pop", "art pop" };
+        Random random = new Random(seed);
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\n");
+            for (int i = 0; i < n; i++) {
+                writer.write("Song " + i + ",Artist " + random.nextInt(Math.max(1, n / 20)) + ","
+                             + genres[random.nextInt(genres.length)] + ","
+                             + (2010 + random.nextInt(10)) + "," + (60 + random.nextInt(140)) + ","
+                             + random.nextInt(100) + "," + random.nextInt(100) + ","
+                             + (-random.nextInt(30) - 2) + "," + random.nextInt(100) + ","
+                             + "50,200,10,5,70\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class exposes a BackendInterface as JSON over HTTP, using the JDK's
+ * built-in HttpServer bound to the loopback address only. The endpoints are:
+ *
+ *     GET /range?low=-10&high=-2   titles from getRange (either bound optional)
+ *     GET /filter?threshold=120    titles from setFilter (omit to clear)
+ *     GET /fiveMost                titles from fiveMost
+ *     GET /metrics                 request counts and latencies per endpoint
+ *
+ * Titles are streamed into the response as a JSON array, without building
+ * the whole response body first. Requests are handled on a thread per
+ * request: virtual threads when the JVM supports them, and a cached pool of
+ * platform threads otherwise. Calls into the backend are serialized, since
+ * the backends are not thread-safe.
+ */
+public class BackendServer {
+
+    private static final String[] ENDPOINTS = { "/range", "/filter", "/fiveMost", "/metrics" };
+
+    private final BackendInterface backend;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // per endpoint: number of requests, total and maximum handling time
+    private final Map<String, LongAdder> requestCounts = new HashMap<>();
+    private final Map<String, LongAdder> totalNanos = new HashMap<>();
+    private final Map<String, AtomicLong> maxNanos = new HashMap<>();
+
+    /**
+     * Creates a server for backend on the loopback port, using the default
+     * thread per request executor.
+     * @param backend the backend to answer queries with
+     * @param port the port to listen on, or 0 to pick any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public BackendServer(BackendInterface backend, int port) throws IOException {
+        this(backend, port, defaultExecutor());
+    }
+
+    /**
+     * Creates a server for backend on the loopback port, handling requests
+     * on executor. The executor is shut down when the server is stopped.
+     * @param backend the backend to answer queries with
+     * @param port the port to listen on, or 0 to pick any free port
+     * @param executor the executor to handle requests on
+     * @throws IOException if the port cannot be bound
+     */
+    public BackendServer(BackendInterface backend, int port, ExecutorService executor)
+        throws IOException {
+        this.backend = backend;
+        this.executor = executor;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        for (String endpoint : ENDPOINTS) {
+            requestCounts.put(endpoint, new LongAdder());
+            totalNanos.put(endpoint, new LongAdder());
+            maxNanos.put(endpoint, new AtomicLong());
+            server.createContext(endpoint, exchange -> handle(endpoint, exchange));
+        }
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread for each task when
+     * the JVM supports virtual threads, or a cached pool of platform threads
+     * on JVMs that do not.
+     * @return a new thread per task executor
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to delaySeconds for requests that
+     * are being handled to finish, and shuts down the executor.
+     * @param delaySeconds the maximum number of seconds to wait
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answers one request to endpoint and records how long that took.
+     */
+    private void handle(String endpoint, HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            if (!endpoint.equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "Unknown endpoint " + exchange.getRequestURI().getPath());
+                return;
+            }
+            // only the arguments are checked here, so that an
+            // IllegalArgumentException from the backend is answered with a 500
+            Integer low = null;
+            Integer high = null;
+            Integer threshold = null;
+            try {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                if (endpoint.equals("/range")) {
+                    low = parseInteger(query.get("low"));
+                    high = parseInteger(query.get("high"));
+                } else if (endpoint.equals("/filter")) {
+                    threshold = parseInteger(query.get("threshold"));
+                }
+            } catch (NumberFormatException e) {
+                sendError(exchange, 400, "Invalid number: " + e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                // such as a malformed escape in the query string
+                sendError(exchange, 400, "Invalid request: " + e.getMessage());
+                return;
+            }
+            List<String> titles;
+            switch (endpoint) {
+            case "/range":
+                synchronized (backend) {
+                    titles = backend.getRange(low, high);
+                }
+                break;
+            case "/filter":
+                synchronized (backend) {
+                    titles = backend.setFilter(threshold);
+                }
+                break;
+            case "/fiveMost":
+                synchronized (backend) {
+                    titles = backend.fiveMost();
+                }
+                break;
+            default:
+                sendMetrics(exchange);
+                return;
+            }
+            sendTitles(exchange, titles);
+        } catch (RuntimeException e) {
+            // once titles are being streamed the status is already sent, and
+            // closing the exchange cuts the response short instead
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, "Internal error: " + e);
+            }
+        } finally {
+            exchange.close();
+            long elapsed = System.nanoTime() - start;
+            requestCounts.get(endpoint).increment();
+            totalNanos.get(endpoint).add(elapsed);
+            maxNanos.get(endpoint).accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * Streams titles to the client as a JSON array of strings.
+     */
+    private static void sendTitles(HttpExchange exchange, List<String> titles) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // 0 selects a chunked response
+        try (Writer out = new BufferedWriter(
+                 new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            out.write('[');
+            for (int i = 0; i < titles.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                writeJsonString(out, titles.get(i));
+            }
+            out.write(']');
+        }
+    }
+
+    /**
+     * Sends the number of requests, and their mean and maximum handling time
+     * in microseconds, for every endpoint.
+     */
+    private void sendMetrics(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (String endpoint : ENDPOINTS) {
+            long count = requestCounts.get(endpoint).sum();
+            long total = totalNanos.get(endpoint).sum();
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(endpoint.substring(1)).append("\":{")
+                .append("\"requests\":").append(count)
+                .append(",\"meanMicros\":").append(count == 0 ? 0 : total / count / 1000)
+                .append(",\"maxMicros\":").append(maxNanos.get(endpoint).get() / 1000)
+                .append('}');
+        }
+        json.append('}');
+        sendJson(exchange, 200, json.toString());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        writeJsonString(json, message);
+        sendJson(exchange, status, json.append('}').toString());
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Writes value as a quoted JSON string, escaping the characters that JSON
+     * does not allow unescaped.
+     */
+    static void writeJsonString(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * @return the decoded name=value pairs of a raw query string
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                      URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * @return the Integer in value, or null when value is null or empty
+     * @throws NumberFormatException if value is not an integer
+     */
+    private static Integer parseInteger(String value) {
+        return value == null || value.isEmpty() ? null : Integer.valueOf(value.trim());
+    }
+}
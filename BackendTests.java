@@ -4,7 +4,21 @@ import org.junit.jupiter.api.Test;
 import java.io.FileWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class BackendTests {
 
@@ -106,12 +120,978 @@ public class BackendTests {
         assertTrue(result.contains("A L I E N S"));  // Hardcoded song passes filter
     }
 
+    /**
+     * roleTest4: Tests that getRange, setFilter and fiveMost return the same
+     * songs, ordered by loudness, when answered from the loudness x bpm index.
+     */
+    @Test
+    public void roleTest4() {
+        try {
+            File tempFile = File.createTempFile("testSongs", ".csv");
+            FileWriter writer = new FileWriter(tempFile);
+            writer.write("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\n");
+            writer.write("Quiet,Artist,Pop,2015,90,50,60,-12,10,50,200,0.5,0.1,90\n");
+            writer.write("Loud,Artist,Pop,2016,140,80,70,-3,10,50,200,0.5,0.1,90\n");
+            writer.write("Middle,Artist,Pop,2017,125,60,80,-7,10,50,200,0.5,0.1,90\n");
+            writer.close();
 
+            Backend indexed = new Backend(new Tree_Placeholder());
+            indexed.enableRangeIndex();
+            indexed.readData(tempFile.getAbsolutePath());
+            tempFile.delete();
+
+            // the placeholder's three hardcoded songs (all -5 dB) are indexed as well
+            List<String> range = indexed.getRange(-8, -3);
+            assertEquals(5, range.size());
+            assertEquals("Middle", range.get(0));
+            assertEquals("Loud", range.get(4));
+
+            assertEquals(List.of("Middle", "A L I E N S", "Loud"), indexed.setFilter(120));
+            assertEquals(3, indexed.fiveMost().size());
+        } catch (IOException e) {
+            fail("IOException should not have been thrown: " + e.getMessage());
+        }
+    }
 
+    /**
+     * roleTest5: Tests that getMatching combines year, genre and artist with
+     * the loudness range and bpm filter when answered from the bitmap index.
+     */
+    @Test
+    public void roleTest5() {
+        Backend indexed = new Backend(new Tree_Placeholder());
+        indexed.enableBitmapIndex();
 
+        // the placeholder's three hardcoded songs are indexed
+        assertEquals(List.of("BO$$", "Cake By The Ocean"),
+                     indexed.getMatching(null, "Dance Pop", null));
+        assertEquals(List.of("A L I E N S"), indexed.getMatching(2017, null, "coldplay"));
 
+        indexed.setFilter(110);
+        assertEquals(List.of("Cake By The Ocean"), indexed.getMatching(null, "dance pop", null));
+        indexed.getRange(null, -6);
+        assertTrue(indexed.getMatching(null, null, null).isEmpty());
+    }
 
+    /**
+     * roleTest6: Tests that songs read into an off-heap store are queried the
+     * same way as songs in the tree.
+     */
+    @Test
+    public void roleTest6() {
+        try {
+            File tempFile = File.createTempFile("testSongs", ".csv");
+            FileWriter writer = new FileWriter(tempFile);
+            writer.write("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\n");
+            writer.write("Stored Song,Test Artist,Pop,2022,125,80,99,-4,10,50,200,0.5,0.1,90\n");
+            writer.close();
 
-}
+            SongStore store = new SongStore();
+            backend.useOffHeapStore(store);
+            backend.readData(tempFile.getAbsolutePath());
+            tempFile.delete();
+
+            // the placeholder's three hardcoded songs were copied into the store
+            assertEquals(4, store.size());
+            assertEquals("Stored Song", backend.getRange(-4, null).get(0));
+            backend.getRange(null, null);
+            assertEquals(List.of("A L I E N S", "Stored Song"), backend.setFilter(120));
+            assertEquals("Stored Song", backend.fiveMost().get(0));
+        } catch (IOException e) {
+            fail("IOException should not have been thrown: " + e.getMessage());
+        }
+    }
+
+    /**
+     * storeTest1: Tests that switching to an off-heap store leaves the tree
+     * as it was and stops using indexes built from it, so songs loaded into the
+     * store are matched and estimated like the songs copied from the tree.
+     */
+    @Test
+    public void storeTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        try (FileWriter writer = new FileWriter(tempFile)) {
+            writer.write("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\n");
+            writer.write("New,Adele,Pop,2016,125,80,99,-4,10,50,200,0.5,0.1,90\n");
+        }
+        RedBlackTree<Song> tree = new RedBlackTree<>();
+        tree.insert(new Song("Old", "Adele", "Pop", 2015, 120, 70, 60, -6, 10));
+        Backend stored = new Backend(tree);
+        stored.enableBitmapIndex();
+        stored.useOffHeapStore(new SongStore());
+        // the tree still belongs to the caller, and is left as it was
+        assertEquals(1, tree.size());
+        stored.readData(tempFile.getAbsolutePath());
+        tempFile.delete();
+
+        assertEquals(List.of("Old", "New"), stored.getRange(null, null));
+        assertEquals(List.of("Old", "New"), stored.getMatching(null, null, "Adele"));
+        assertTrue(stored.explain(new SongQuery().equalTo(SongAttribute.ARTIST, "Adele"))
+                   .startsWith("STORE_SCAN"));
+        assertEquals(2, stored.query(new SongQuery().equalTo(SongAttribute.ARTIST, "Adele")).size());
+    }
+
+    /**
+     * serverTest1: Tests that each BackendServer endpoint answers with the
+     * backend's results as JSON, that invalid arguments are rejected with a
+     * 400, and that a failing backend is answered with a 500.
+     */
+    @Test
+    public void serverTest1() throws IOException {
+        BackendServer server = new BackendServer(backend, 0);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getPort();
+            assertEquals("[\"A L I E N S\",\"BO$$\",\"Cake By The Ocean\"]", get(base + "/range?low=-6"));
+            assertEquals("[\"A L I E N S\"]", get(base + "/filter?threshold=120"));
+            assertEquals("[\"A L I E N S\"]", get(base + "/fiveMost"));
+            assertTrue(get(base + "/metrics").contains("\"range\":{\"requests\":1"));
+            HttpURLConnection connection =
+                (HttpURLConnection) URI.create(base + "/range?low=loud").toURL().openConnection();
+            assertEquals(400, connection.getResponseCode());
+            connection = (HttpURLConnection) new URL(base + "/range?low=%zz").openConnection();
+            assertEquals(400, connection.getResponseCode());
+        } finally {
+            server.stop(0);
+        }
+
+        // a backend failure is answered with a 500 rather than an empty reply
+        Backend failing = new Backend(placeholderTree) {
+            @Override
+            public List<String> getRange(Integer low, Integer high) {
+                throw new IllegalArgumentException("backend failed");
+            }
+
+            @Override
+            public List<String> fiveMost() {
+                throw new IllegalStateException("backend failed");
+            }
+        };
+        server = new BackendServer(failing, 0);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getPort();
+            HttpURLConnection connection =
+                (HttpURLConnection) URI.create(base + "/fiveMost").toURL().openConnection();
+            assertEquals(500, connection.getResponseCode());
+            // only invalid arguments are the client's fault
+            connection = (HttpURLConnection) URI.create(base + "/range?low=-5").toURL().openConnection();
+            assertEquals(500, connection.getResponseCode());
+            connection = (HttpURLConnection) URI.create(base + "/range?low=loud").toURL().openConnection();
+            assertEquals(400, connection.getResponseCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * queryTest1: Tests that a SongQuery returns the same songs whichever
+     * access path the planner chooses, and that the planner picks an index
+     * for a selective query and a full scan for an unselective one.
+     */
+    @Test
+    public void queryTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 3000, 36);
+        Backend scanned = new Backend(new RedBlackTree<>());
+        Backend ranged = new Backend(new RedBlackTree<>());
+        ranged.enableRangeIndex();
+        Backend bitmapped = new Backend(new RedBlackTree<>());
+        bitmapped.enableBitmapIndex();
+        for (Backend b : List.of(scanned, ranged, bitmapped)) {
+            b.readData(tempFile.getAbsolutePath());
+        }
+        tempFile.delete();
 
+        SongQuery selective = new SongQuery()
+            .between(SongAttribute.LOUDNESS, -6, -4)
+            .greaterThan(SongAttribute.BPM, 150)
+            .equalTo(SongAttribute.GENRE, " Dance Pop")
+            .greaterThan(SongAttribute.ENERGY, 20);
+        assertEquals(QueryPlan.Access.FULL_SCAN, scanned.plan(selective).getAccess());
+        assertEquals(QueryPlan.Access.RANGE_INDEX, ranged.plan(selective).getAccess());
+        assertEquals(QueryPlan.Access.BITMAP_INDEX, bitmapped.plan(selective).getAccess());
+        assertTrue(bitmapped.explain(selective).contains("filter [ENERGY > 20]"));
+        List<String> expected = sortedTitles(scanned.query(selective));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, sortedTitles(ranged.query(selective)));
+        assertEquals(expected, sortedTitles(bitmapped.query(selective)));
+
+        // an open loudness range matches nearly every song, so scanning wins
+        SongQuery unselective = new SongQuery().greaterThan(SongAttribute.LOUDNESS, -40);
+        assertEquals(QueryPlan.Access.FULL_SCAN, bitmapped.plan(unselective).getAccess());
+        assertEquals(3000, bitmapped.query(unselective).size());
+
+        // top-k by danceability agrees with sorting every match
+        SongQuery top = new SongQuery().equalTo(SongAttribute.YEAR, 2015)
+            .orderBy(SongAttribute.DANCEABILITY, true).limit(5);
+        assertEquals(QueryPlan.Order.TOP_K, bitmapped.plan(top).getOrder());
+        assertTrue(bitmapped.explain(top).contains("top-k heap k=5"));
+        List<Song> best = bitmapped.query(top);
+        List<Song> all = scanned.query(new SongQuery().equalTo(SongAttribute.YEAR, 2015)
+                                       .orderBy(SongAttribute.DANCEABILITY, true));
+        assertEquals(5, best.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(all.get(i).getDanceability(), best.get(i).getDanceability());
+        }
+
+        SongQuery loudest = new SongQuery().between(SongAttribute.LOUDNESS, -10, -2)
+            .orderBy(SongAttribute.LOUDNESS, false).limit(3);
+        assertEquals(QueryPlan.Order.INDEX_ORDER, ranged.plan(loudest).getOrder());
+        assertEquals(3, ranged.query(loudest).size());
+        assertEquals(-10, ranged.query(loudest).get(0).getLoudness());
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> new SongQuery().equalTo(SongAttribute.YEAR, "2015"));
+    }
+
+    /**
+     * @return a sorted copy of titles
+     */
+    private static List<String> sorted(List<String> titles) {
+        List<String> copy = new ArrayList<>(titles);
+        copy.sort(null);
+        return copy;
+    }
+
+    /**
+     * @return the titles of songs, sorted
+     */
+    private static List<String> sortedTitles(List<Song> songs) {
+        List<String> titles = new ArrayList<>();
+        for (Song song : songs) {
+            titles.add(song.getTitle());
+        }
+        titles.sort(null);
+        return titles;
+    }
+
+    /**
+     * searchTest1: Tests that search and getMatching return the same titles
+     * from the inverted index as from a scan, combined with the loudness
+     * range and bpm filter.
+     */
+    @Test
+    public void searchTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 3000, 40);
+        Backend scanned = new Backend(new RedBlackTree<>());
+        scanned.readData(tempFile.getAbsolutePath());
+        Backend indexed = new Backend(new RedBlackTree<>());
+        indexed.enableInvertedIndex();
+        indexed.readData(tempFile.getAbsolutePath());
+        tempFile.delete();
+
+        for (Backend b : List.of(scanned, indexed)) {
+            b.getRange(-20, -6);
+            b.setFilter(90);
+        }
+        String[][] queries = { { null, "pop" }, { null, "POP dance" }, { "artist 7", null },
+                               { "Artist 12", "big room" }, { "artist", "jazz" } };
+        for (String[] query : queries) {
+            assertEquals(sorted(scanned.search(query[0], query[1])),
+                         sorted(indexed.search(query[0], query[1])));
+        }
+        assertFalse(indexed.search(null, "dance pop").isEmpty());
+        assertTrue(indexed.search(null, "jazz").isEmpty());
+
+        assertFalse(indexed.getMatching(null, "Pop", null).isEmpty());
+        assertEquals(sorted(scanned.getMatching(null, "Pop", null)),
+                     sorted(indexed.getMatching(null, "Pop", null)));
+        assertEquals(sorted(scanned.getMatching(2012, "dance pop", "artist 3")),
+                     sorted(indexed.getMatching(2012, "dance pop", "artist 3")));
+    }
+
+    /**
+     * similarTest1: Tests that similar returns the same titles from the
+     * similarity index as from measuring every distance, and honors the
+     * loudness range and bpm filter.
+     */
+    @Test
+    public void similarTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 3000, 41);
+        Backend scanned = new Backend(new RedBlackTree<>());
+        scanned.readData(tempFile.getAbsolutePath());
+        Backend indexed = new Backend(new RedBlackTree<>());
+        indexed.enableSimilarityIndex();
+        indexed.readData(tempFile.getAbsolutePath());
+        tempFile.delete();
+
+        Song target = new Song("Target", "Artist", "pop", 2015, 128, 80, 75, -6, 12);
+        assertEquals(sorted(scanned.similar(target, 8)), sorted(indexed.similar(target, 8)));
+
+        for (Backend b : List.of(scanned, indexed)) {
+            b.getRange(-30, -20);
+            b.setFilter(150);
+        }
+        List<String> filtered = indexed.similar(target, 8);
+        assertEquals(8, filtered.size());
+        assertEquals(sorted(scanned.similar(target, 8)), sorted(filtered));
+        List<String> allowed = indexed.getRange(-30, -20);
+        assertTrue(allowed.containsAll(filtered));
+    }
+
+    /**
+     * batchTest1: Tests that a batch of queries returns the same titles,
+     * counts and five most danceable songs as running getRange, setFilter and
+     * fiveMost for each query, with and without a range index, and leaves the
+     * backend's own filters alone.
+     */
+    @Test
+    public void batchTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 3000, 50);
+        Backend scanned = new Backend(new RedBlackTree<>());
+        scanned.readData(tempFile.getAbsolutePath());
+        Backend indexed = new Backend(new RedBlackTree<>());
+        indexed.enableRangeIndex();
+        indexed.readData(tempFile.getAbsolutePath());
+        tempFile.delete();
+
+        Random random = new Random(50);
+        BatchQuery batch = new BatchQuery().collectTitles(true).collectFiveMost(true);
+        List<Integer[]> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Integer low = random.nextInt(4) == 0 ? null : -32 + random.nextInt(30);
+            Integer high = random.nextInt(4) == 0 ? null : -32 + random.nextInt(30);
+            Integer threshold = random.nextInt(4) == 0 ? null : 60 + random.nextInt(140);
+            batch.add(low, high, threshold);
+            queries.add(new Integer[] { low, high, threshold });
+        }
+        for (Backend b : List.of(scanned, indexed)) {
+            List<String> range = b.getRange(-10, -5);
+            List<BatchQuery.Result> results = b.runBatch(batch);
+            // the batch neither used nor changed the loudness range
+            assertEquals(range, b.setFilter(null));
+            for (int i = 0; i < queries.size(); i++) {
+                Integer[] query = queries.get(i);
+                b.getRange(query[0], query[1]);
+                List<String> titles = b.setFilter(query[2]);
+                assertEquals(titles, results.get(i).getTitles());
+                assertEquals(titles.size(), results.get(i).getCount());
+                assertEquals(b.fiveMost(), results.get(i).getFiveMost());
+            }
+        }
+    }
+
+    /**
+     * histogramTest1: Tests that enabled histograms answer percentiles and
+     * histograms the same as counting every song, that they follow songs
+     * loaded into an off-heap store, lazily or into year partitions, and that
+     * a percentile picks out the loudest 10% of songs.
+     */
+    @Test
+    public void histogramTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 2000, 49);
+        Backend scanned = new Backend(new RedBlackTree<>());
+        scanned.readData(tempFile.getAbsolutePath());
+        Backend counted = new Backend(new RedBlackTree<>());
+        counted.enableHistograms();
+        counted.readData(tempFile.getAbsolutePath());
+        Backend stored = new Backend(new RedBlackTree<>());
+        stored.enableHistograms();
+        stored.useOffHeapStore(new SongStore());
+        stored.readData(tempFile.getAbsolutePath());
+        Backend lazy = new Backend(new RedBlackTree<>());
+        lazy.enableHistograms();
+        lazy.useLazyIngest();
+        lazy.readData(tempFile.getAbsolutePath());
+        Backend partitioned = new Backend(new RedBlackTree<>());
+        partitioned.useYearPartitions(YearPartitionedCatalog.withYearsPerPartition(5));
+        partitioned.readData(tempFile.getAbsolutePath());
+        partitioned.enableHistograms();
+
+        for (Backend b : List.of(counted, stored, lazy, partitioned)) {
+            for (SongAttribute attribute : List.of(SongAttribute.YEAR, SongAttribute.BPM,
+                                                   SongAttribute.LOUDNESS, SongAttribute.LIVENESS)) {
+                for (double percent : new double[] { 0, 10, 50, 90, 100 }) {
+                    assertEquals(scanned.percentile(attribute, percent), b.percentile(attribute, percent));
+                }
+                assertEquals(scanned.histogram(attribute, 7), b.histogram(attribute, 7));
+            }
+        }
+
+        Integer loudest = counted.percentile(SongAttribute.LOUDNESS, 90);
+        int loud = counted.getRange(loudest, null).size();
+        int quieter = counted.getRange(null, loudest - 1).size();
+        assertTrue(quieter < 1800 && loud + quieter == 2000);
+
+        long dropped = partitioned.histogram(SongAttribute.YEAR, 5).get(2010);
+        assertEquals(dropped, partitioned.dropYears(2012));
+        assertEquals(2015, (int) partitioned.percentile(SongAttribute.YEAR, 0));
+        assertEquals(dropped, partitioned.reloadYears(2012, tempFile.getAbsolutePath()));
+        tempFile.delete();
+        assertEquals(scanned.histogram(SongAttribute.YEAR, 1), partitioned.histogram(SongAttribute.YEAR, 1));
+        assertNull(new Backend(new RedBlackTree<>()).percentile(SongAttribute.BPM, 50));
+        assertThrows(IllegalArgumentException.class, () -> counted.percentile(SongAttribute.GENRE, 50));
+    }
+
+    /**
+     * partitionTest1: Tests that a backend with year partitions answers
+     * ranges, year queries and planned queries the same as one with a single
+     * tree, that planned queries only count the partitions they can match,
+     * that a range of years can be dropped and reloaded on its own, and that
+     * partitions cannot be deduplicated.
+     */
+    @Test
+    public void partitionTest1() throws IOException {
+        File first = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(first, 1000, 48);
+        File second = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(second, 2000, 49);
+        Backend single = new Backend(new RedBlackTree<>());
+        single.readData(first.getAbsolutePath());
+        single.readData(second.getAbsolutePath());
+        RedBlackTree<Song> tree = new RedBlackTree<>();
+        Backend partitioned = new Backend(tree);
+        partitioned.readData(first.getAbsolutePath());
+        partitioned.useYearPartitions(YearPartitionedCatalog.withYearsPerPartition(2));
+        // the tree still belongs to the caller, and is left as it was
+        assertEquals(1000, tree.size());
+        partitioned.readData(second.getAbsolutePath());
+
+        for (Backend b : List.of(single, partitioned)) {
+            b.getRange(-20, -5);
+            b.setFilter(100);
+        }
+        assertEquals(sorted(single.getRange(-20, -5)), sorted(partitioned.getRange(-20, -5)));
+        assertEquals(sorted(single.getRangeInYears(2016, 2019)),
+                     sorted(partitioned.getRangeInYears(2016, 2019)));
+        assertEquals(sorted(single.getMatching(2013, null, null)),
+                     sorted(partitioned.getMatching(2013, null, null)));
+        assertEquals(sorted(single.getMatching(2013, "pop", null)),
+                     sorted(partitioned.getMatching(2013, "pop", null)));
+
+        SongQuery recent = new SongQuery().greaterThan(SongAttribute.YEAR, 2017)
+            .between(SongAttribute.LOUDNESS, -10, -2).orderBy(SongAttribute.DANCEABILITY, true);
+        assertEquals(sortedTitles(single.query(recent)), sortedTitles(partitioned.query(recent)));
+        QueryPlan plan = partitioned.plan(recent);
+        assertEquals(QueryPlan.Access.PARTITION_SCAN, plan.getAccess());
+        assertEquals(3000, plan.getTotalRows());
+        assertTrue(plan.getCosts().get(QueryPlan.Access.PARTITION_SCAN) < 1000);
+
+        List<String> before = sorted(partitioned.getRangeInYears(2012, 2013));
+        assertFalse(before.isEmpty());
+        assertEquals(before.size() + partitioned.getRangeInYears(null, 2011).size()
+                     + partitioned.getRangeInYears(2014, null).size(),
+                     partitioned.getRange(-20, -5).size());
+        assertTrue(partitioned.dropYears(2013) > 0);
+        assertTrue(partitioned.getRangeInYears(2012, 2013).isEmpty());
+        assertTrue(partitioned.getMatching(2012, null, null).isEmpty());
+        assertEquals(sorted(single.getRangeInYears(2014, null)),
+                     sorted(partitioned.getRangeInYears(2014, null)));
+        // reloading from the first file alone keeps only its songs from 2012
+        // and 2013, and leaves every other year as it was
+        Backend firstOnly = new Backend(new RedBlackTree<>());
+        firstOnly.readData(first.getAbsolutePath());
+        firstOnly.getRange(-20, -5);
+        firstOnly.setFilter(100);
+        int reloaded = partitioned.reloadYears(2012, first.getAbsolutePath());
+        assertTrue(reloaded > 0 && reloaded < 1000);
+        assertEquals(sorted(firstOnly.getRangeInYears(2012, 2013)),
+                     sorted(partitioned.getRangeInYears(2012, 2013)));
+        assertEquals(sorted(single.getRangeInYears(2014, null)),
+                     sorted(partitioned.getRangeInYears(2014, null)));
+        assertEquals(sorted(single.getRangeInYears(null, 2011)),
+                     sorted(partitioned.getRangeInYears(null, 2011)));
+        first.delete();
+        second.delete();
+        assertThrows(IllegalStateException.class, () -> single.dropYears(2013));
+        assertThrows(IllegalStateException.class, () -> partitioned.useLazyIngest());
+        // partitions cannot be deduplicated, rather than silently keeping duplicates
+        assertThrows(IllegalStateException.class, () -> partitioned.enableHashIndex(true));
+        Backend deduplicated = new Backend(new RedBlackTree<>());
+        deduplicated.enableHashIndex(true);
+        assertThrows(IllegalStateException.class,
+            () -> deduplicated.useYearPartitions(new YearPartitionedCatalog()));
+        // a tree that cannot be cleared can still be partitioned
+        Backend placeholder = new Backend(placeholderTree);
+        placeholder.enableRangeIndex();
+        placeholder.useYearPartitions(new YearPartitionedCatalog());
+        assertEquals(3, placeholder.getRange(null, null).size());
+    }
 
+    /**
+     * skipListTest1: Tests that a backend over a ConcurrentSkipList returns the
+     * same titles as one over a RedBlackTree.
+     */
+    @Test
+    public void skipListTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 2000, 47);
+        Backend tree = new Backend(new RedBlackTree<>());
+        Backend skipList = new Backend(new ConcurrentSkipList<>());
+        for (Backend b : List.of(tree, skipList)) {
+            b.readData(tempFile.getAbsolutePath());
+        }
+        tempFile.delete();
+        assertEquals(tree.getRange(-20, -8), skipList.getRange(-20, -8));
+        assertEquals(tree.setFilter(120), skipList.setFilter(120));
+        assertEquals(tree.fiveMost(), skipList.fiveMost());
+        assertEquals(tree.getMatching(2015, "pop", null), skipList.getMatching(2015, "pop", null));
+    }
+
+    /**
+     * hashTest1: Tests that a hash index finds songs by title and artist, and
+     * that loading overlapping files with deduplication keeps one copy of
+     * each song while loading them without it keeps both.
+     */
+    @Test
+    public void hashTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 1000, 45);
+        RedBlackTree<Song> tree = new RedBlackTree<>();
+        Backend scanned = new Backend(tree);
+        scanned.readData(tempFile.getAbsolutePath());
+        Backend kept = new Backend(new RedBlackTree<>());
+        kept.enableHashIndex(false);
+        Backend deduplicated = new Backend(new RedBlackTree<>());
+        deduplicated.enableHashIndex(true);
+        for (Backend b : List.of(kept, deduplicated)) {
+            b.readData(tempFile.getAbsolutePath());
+            b.readData(tempFile.getAbsolutePath());
+        }
+        tempFile.delete();
+
+        assertEquals(2 * scanned.getRange(null, null).size(), kept.getRange(null, null).size());
+        assertEquals(sorted(scanned.getRange(null, null)), sorted(deduplicated.getRange(null, null)));
+        for (Song song : tree) {
+            Song indexed = deduplicated.findSong(song.getTitle(), song.getArtist());
+            assertEquals(song.getLoudness(), indexed.getLoudness());
+            assertTrue(scanned.containsSong(song.getTitle(), song.getArtist()));
+            assertTrue(kept.containsSong(song.getTitle(), song.getArtist()));
+            assertFalse(deduplicated.containsSong(song.getTitle(), song.getArtist() + "x"));
+        }
+        assertFalse(scanned.containsSong("Song 1000", "Artist 0"));
+        assertFalse(deduplicated.containsSong("Song 1000", "Artist 0"));
+    }
+
+    /**
+     * packTest1: Tests that Song packs its numeric attributes losslessly at the
+     * ends of every field, rejects values that do not fit, and that the packed
+     * comparators agree with comparing the accessors.
+     */
+    @Test
+    public void packTest1() {
+        Song low = new Song("Low", "A", "pop", 0, 0, 0, 0, Song.MIN_LOUDNESS, 0);
+        Song high = new Song("High", "A", "pop", Song.MAX_YEAR, Song.MAX_BPM, Song.MAX_PERCENT,
+                             Song.MAX_PERCENT, Song.MAX_LOUDNESS, Song.MAX_PERCENT);
+        assertEquals(0, low.getYear());
+        assertEquals(Song.MIN_LOUDNESS, low.getLoudness());
+        assertEquals(Song.MAX_YEAR, high.getYear());
+        assertEquals(Song.MAX_BPM, high.getBPM());
+        assertEquals(Song.MAX_PERCENT, high.getEnergy());
+        assertEquals(Song.MAX_PERCENT, high.getDanceability());
+        assertEquals(Song.MAX_LOUDNESS, high.getLoudness());
+        assertEquals(Song.MAX_PERCENT, high.getLiveness());
+        assertThrows(IllegalArgumentException.class, () -> new Song("X", "A", "pop", 2015, 1024, 50, 50, -5, 10));
+        assertThrows(IllegalArgumentException.class, () -> new Song("X", "A", "pop", 2015, 120, 50, 50, -129, 10));
+        assertThrows(IllegalArgumentException.class, () -> new Song("X", "A", "pop", -1, 120, 50, 50, -5, 10));
+        assertThrows(IllegalArgumentException.class,
+                     () -> Backend.parseSong("X,A,pop,2015,120,50,300,-5,10,50,200,0.5,0.1,90", null));
+
+        Random random = new Random(43);
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            songs.add(new Song("S" + i, "A", "pop", random.nextInt(4096), random.nextInt(1024),
+                               random.nextInt(256), random.nextInt(256), random.nextInt(256) - 128,
+                               random.nextInt(256)));
+        }
+        SongStore store = new SongStore();
+        Song stored = new Song("Stored", "A", "pop", 2015, 120, 80, 60, -7, 12);
+        store.add(stored);
+        assertEquals(stored.getPackedAttributes(), store.view().getPackedAttributes());
+        for (Song a : songs) {
+            Song b = songs.get(random.nextInt(songs.size()));
+            assertEquals(Integer.signum(Integer.compare(a.getLoudness(), b.getLoudness())),
+                         Integer.signum(Song.BY_LOUDNESS.compare(a, b)));
+            assertEquals(Integer.signum(Integer.compare(a.getYear(), b.getYear())),
+                         Integer.signum(Song.BY_YEAR.compare(a, b)));
+            assertEquals(Integer.signum(Integer.compare(a.getBPM(), b.getBPM())),
+                         Integer.signum(Song.BY_BPM.compare(a, b)));
+            assertEquals(Integer.signum(Integer.compare(a.getDanceability(), b.getDanceability())),
+                         Integer.signum(Song.BY_DANCEABILITY.compare(a, b)));
+        }
+    }
+
+    /**
+     * exportTest1: Tests that export writes the same songs as getRange and
+     * setFilter return, in every format, to an Appendable and to a channel,
+     * and that the channel encoding survives characters split across buffers.
+     */
+    @Test
+    public void exportTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 2000, 42);
+        Backend b = new Backend(new RedBlackTree<>());
+        b.readData(tempFile.getAbsolutePath());
+        b.getRange(-15, -5);
+        List<String> expected = sorted(b.setFilter(110));
+
+        StringBuilder titles = new StringBuilder();
+        long count = b.export(SongExport.Format.TITLES, titles);
+        assertEquals(expected.size(), count);
+        assertEquals(expected, sorted(List.of(titles.toString().split("\n"))));
+
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            assertEquals(count, b.export(SongExport.Format.CSV, channel));
+        }
+        List<String> rows = Files.readAllLines(tempFile.toPath());
+        assertEquals("title,artist,top genre,year,bpm,nrgy,dnce,dB,live", rows.get(0));
+        assertEquals(count + 1, rows.size());
+        for (String row : rows.subList(1, rows.size())) {
+            String[] values = row.split(",");
+            int loudness = Integer.parseInt(values[7]);
+            assertTrue(loudness >= -15 && loudness <= -5 && Integer.parseInt(values[4]) > 110);
+        }
+
+        StringBuilder json = new StringBuilder();
+        SongExport.writeSong(SongExport.Format.NDJSON,
+                             new Song("Caf\u00e9 \"\ud83c\udfb5\"", "A, B", "pop", 2015, 120, 1, 2, -3, 4),
+                             json);
+        assertEquals("{\"title\":\"Caf\u00e9 \\\"\ud83c\udfb5\\\"\",\"artist\":\"A, B\",\"genre\":\"pop\","
+                     + "\"year\":2015,\"bpm\":120,\"energy\":1,\"danceability\":2,\"loudness\":-3,"
+                     + "\"liveness\":4}\n", json.toString());
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            SongExport.ChannelAppender out = new SongExport.ChannelAppender(channel, 3);
+            out.append(json);
+            out.flush();
+        }
+        assertEquals(json.toString(), Files.readString(tempFile.toPath()));
+        tempFile.delete();
+    }
+
+    /**
+     * viewTest1: Tests that a backend with a filter view returns the same
+     * titles in the same order as one without, as songs are loaded after the
+     * filters are set and as the filters change.
+     */
+    @Test
+    public void viewTest1() throws IOException {
+        File first = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(first, 2000, 42);
+        File second = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(second, 2000, 43);
+        File danceable = File.createTempFile("testSongs", ".csv");
+        FileWriter writer = new FileWriter(danceable);
+        writer.write("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\n");
+        writer.write("Third,Artist,Pop,2015,150,80,101,-8,10,50,200,0.5,0.1,90\n");
+        writer.write("First,Artist,Pop,2015,160,80,103,-9,10,50,200,0.5,0.1,90\n");
+        writer.write("Too Quiet,Artist,Pop,2015,160,80,110,-40,10,50,200,0.5,0.1,90\n");
+        writer.write("Second,Artist,Pop,2015,170,80,102,-7,10,50,200,0.5,0.1,90\n");
+        writer.close();
+
+        Backend scanned = new Backend(new RedBlackTree<>());
+        Backend viewed = new Backend(new RedBlackTree<>());
+        viewed.enableFilterView();
+        for (Backend b : List.of(scanned, viewed)) {
+            b.readData(first.getAbsolutePath());
+            b.getRange(-12, -4);
+            b.setFilter(120);
+            b.readData(second.getAbsolutePath());
+        }
+        // ties are broken the same way, so the lists are equal in order too
+        assertEquals(scanned.setFilter(120), viewed.setFilter(120));
+        assertEquals(scanned.fiveMost(), viewed.fiveMost());
+        assertEquals(scanned.getRange(-20, -15), viewed.getRange(-20, -15));
+        assertEquals(scanned.fiveMost(), viewed.fiveMost());
+        assertEquals(scanned.getMatching(null, "pop", null), viewed.getMatching(null, "pop", null));
+
+        for (Backend b : List.of(scanned, viewed)) {
+            b.getRange(-12, -4);
+            b.readData(danceable.getAbsolutePath());
+        }
+        List<String> top = viewed.fiveMost();
+        assertEquals(5, top.size());
+        assertEquals(List.of("First", "Second", "Third"), top.subList(0, 3));
+        assertEquals(scanned.fiveMost(), top);
+        assertEquals(scanned.getRange(-12, -4), viewed.getRange(-12, -4));
+        first.delete();
+        second.delete();
+        danceable.delete();
+    }
+
+    /**
+     * viewTest2: Tests that songs offered to a FilterView are filtered and
+     * ordered by loudness and then title, that ties among the most danceable
+     * go to the quieter song, and that the order does not depend on the order
+     * songs are offered in.
+     */
+    @Test
+    public void viewTest2() {
+        FilterView view = new FilterView(-10, -3, 100);
+        String[] titles = { "A", "B", "C", "D", "E", "F", "G", "H" };
+        int[] loudness = { -4, -8, -4, -12, -6, -3, -9, -5 };
+        int[] bpm = { 120, 130, 101, 140, 100, 150, 110, 125 };
+        int[] dance = { 70, 90, 70, 99, 80, 60, 90, 70 };
+        List<Song> offered = new ArrayList<>();
+        for (int i = 0; i < titles.length; i++) {
+            offered.add(new Song(titles[i], "Artist", "pop", 2015, bpm[i], 50, dance[i], loudness[i], 10));
+            view.offer(offered.get(i));
+        }
+        // D is too quiet and E is too slow
+        assertEquals(6, view.size());
+        List<String> ordered = new ArrayList<>();
+        for (Song song : view.songs()) {
+            ordered.add(song.getTitle());
+        }
+        assertEquals(List.of("G", "B", "H", "A", "C", "F"), ordered);
+
+        List<String> top = new ArrayList<>();
+        for (Song song : view.mostDanceable()) {
+            top.add(song.getTitle());
+        }
+        assertEquals(List.of("G", "B", "H", "A", "C"), top);
+
+        // offering the same songs in reverse gives the same order
+        FilterView reversed = new FilterView(-10, -3, 100);
+        for (int i = offered.size() - 1; i >= 0; i--) {
+            reversed.offer(offered.get(i));
+        }
+        assertEquals(view.songs(), reversed.songs());
+        assertEquals(view.mostDanceable(), reversed.mostDanceable());
+        assertTrue(view.covers(-10, -3, 100));
+        assertFalse(view.covers(-10, null, 100));
+    }
+
+    /**
+     * viewTest3: Tests that a FilterView with fewer than TOP_K songs returns
+     * them all.
+     */
+    @Test
+    public void viewTest3() {
+        FilterView view = new FilterView(null, null, null);
+        assertTrue(view.mostDanceable().isEmpty());
+        view.offer(new Song("Slow", "Artist", "pop", 2015, 60, 50, 20, -20, 10));
+        view.offer(new Song("Fast", "Artist", "pop", 2015, 180, 50, 40, -2, 10));
+        assertEquals(2, view.size());
+        assertEquals("Fast", view.mostDanceable().get(0).getTitle());
+        assertEquals("Slow", view.songs().get(0).getTitle());
+    }
+
+    /**
+     * titleTest1: Tests that titlesWithPrefix returns the same titles from the
+     * title index as from a scan, ignoring case.
+     */
+    @Test
+    public void titleTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 3000, 39);
+        Backend scanned = new Backend(new RedBlackTree<>());
+        scanned.readData(tempFile.getAbsolutePath());
+        Backend indexed = new Backend(new RedBlackTree<>());
+        indexed.readData(tempFile.getAbsolutePath());
+        // songs already in the tree are indexed, as well as those read later
+        indexed.enableTitleIndex();
+        indexed.readData(tempFile.getAbsolutePath());
+        scanned.readData(tempFile.getAbsolutePath());
+        tempFile.delete();
+
+        for (String prefix : new String[] { "song 12", "SONG 299", "Song 3000", "so", "x" }) {
+            assertEquals(scanned.titlesWithPrefix(prefix, 20), indexed.titlesWithPrefix(prefix, 20));
+        }
+        assertEquals(List.of("Song 1", "Song 1", "Song 10", "Song 10", "Song 100"),
+                     indexed.titlesWithPrefix("song 1", 5));
+        // Song 1, Song 10-19, Song 100-199 and Song 1000-1999, read twice
+        assertEquals(2 * 1111, indexed.titlesWithPrefix("Song 1", 5000).size());
+    }
+
+    /**
+     * lazyTest1: Tests that rows of a LazySongFile read back with the same
+     * attributes as parsed Songs,
+     * including rows on either side of a region boundary.
+     */
+    @Test
+    public void lazyTest1() throws IOException {
+        File file = File.createTempFile("lazySongs", ".csv");
+        BackendLoadTest.writeRandomSongs(file, 500, 37);
+        List<String> lines = Files.readAllLines(file.toPath());
+
+        // small regions so that many rows sit at the end of one
+        LazySongFile lazy = new LazySongFile(file.getAbsolutePath(), 4096);
+        file.delete();
+        assertEquals(500, lazy.size());
+        for (int row = 0; row < 500; row++) {
+            Song expected = Backend.parseSong(lines.get(row + 1), null);
+            Song song = lazy.toSong(row);
+            assertEquals(expected.getTitle(), song.getTitle());
+            assertEquals(expected.getArtist(), song.getArtist());
+            assertEquals(expected.getGenres(), song.getGenres());
+            assertEquals(expected.getYear(), song.getYear());
+            assertEquals(expected.getBPM(), lazy.getBPM(row));
+            assertEquals(expected.getDanceability(), song.getDanceability());
+            assertEquals(expected.getLoudness(), lazy.getLoudness(row));
+            assertEquals(expected.getLiveness(), song.getLiveness());
+        }
+    }
+
+    /**
+     * lazyTest2: Tests that a LazySongFile skips invalid rows, and that Windows line endings
+     * and a missing final newline are accepted.
+     */
+    @Test
+    public void lazyTest2() throws IOException {
+        File file = File.createTempFile("lazySongs", ".csv");
+        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\r\n");
+            writer.write("Caf\u00e9,Artist,pop,2015,120,80,90,-5,10,50,200,0.5,0.1,90\r\n");
+            writer.write("Short,Artist,pop,2015\r\n");
+            writer.write("Bad,Artist,pop,2015,fast,80,90,-5,10,50,200,0.5,0.1,90\r\n");
+            writer.write("\r\n");
+            writer.write("Last,Artist,rock,2016,+90,70,60,-12,20,50,200,0.5,0.1,90");
+        }
+        LazySongFile lazy = new LazySongFile(file.getAbsolutePath());
+        file.delete();
+        assertEquals(2, lazy.size());
+        assertEquals("Caf\u00e9", lazy.getTitle(0));
+        assertEquals(-5, lazy.getLoudness(0));
+        assertEquals("rock", lazy.getGenres(1));
+        assertEquals(90, lazy.getBPM(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> lazy.getYear(2));
+    }
+
+    /**
+     * lazyTest3: Tests that a backend in lazy mode returns the same titles as
+     * one that parses every row, including songs already in the tree.
+     */
+    @Test
+    public void lazyTest3() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 2000, 38);
+        RedBlackTree<Song> eagerTree = new RedBlackTree<>();
+        RedBlackTree<Song> lazyTree = new RedBlackTree<>();
+        for (RedBlackTree<Song> tree : List.of(eagerTree, lazyTree)) {
+            tree.insert(new Song("Already Here", "Artist 1", "pop", 2015, 170, 60, 100, -7, 10));
+        }
+        Backend eager = new Backend(eagerTree);
+        eager.readData(tempFile.getAbsolutePath());
+        Backend lazy = new Backend(lazyTree);
+        lazy.useLazyIngest();
+        lazy.readData(tempFile.getAbsolutePath());
+        tempFile.delete();
+
+        // songs of equal loudness may come back in a different order
+        assertEquals(sorted(eager.getRange(-9, -5)), sorted(lazy.getRange(-9, -5)));
+        assertEquals(sorted(eager.setFilter(150)), sorted(lazy.setFilter(150)));
+        assertEquals("Already Here", lazy.fiveMost().get(0));
+        assertEquals(5, lazy.fiveMost().size());
+        assertEquals(sorted(eager.getMatching(2015, "pop", null)),
+                     sorted(lazy.getMatching(2015, "pop", null)));
+
+        SongQuery query = new SongQuery().equalTo(SongAttribute.GENRE, "big room")
+            .orderBy(SongAttribute.ENERGY, true).limit(10);
+        assertEquals(QueryPlan.Access.LAZY_SCAN, lazy.plan(query).getAccess());
+        List<Song> expected = eager.query(query);
+        List<Song> actual = lazy.query(query);
+        assertEquals(10, actual.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(expected.get(i).getEnergy(), actual.get(i).getEnergy());
+            assertEquals("big room", actual.get(i).getGenres());
+        }
+        assertThrows(IllegalStateException.class, () -> lazy.useOffHeapStore(new SongStore()));
+    }
+
+    /**
+     * shardTest1: Tests that a ShardedBackend, partitioned either way, returns
+     * the same results in the same order as a single-tree Backend.
+     */
+    @Test
+    public void shardTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 2000, 34);
+        Backend single = new Backend(new RedBlackTree<>());
+        single.readData(tempFile.getAbsolutePath());
+        for (ShardedBackend.Partitioning partitioning : ShardedBackend.Partitioning.values()) {
+            ShardedBackend sharded = new ShardedBackend(4, partitioning);
+            sharded.readData(tempFile.getAbsolutePath());
+            int total = 0;
+            for (int size : sharded.shardSizes()) {
+                total += size;
+            }
+            assertEquals(2000, total);
+            assertEquals(single.getRange(-20, -8), sharded.getRange(-20, -8));
+            assertEquals(single.setFilter(150), sharded.setFilter(150));
+            assertEquals(single.fiveMost(), sharded.fiveMost());
+            single.getRange(null, null);
+            single.setFilter(null);
+            sharded.shutdown();
+        }
+        tempFile.delete();
+    }
+
+    /**
+     * asyncTest1: Tests that AsyncBackend loads a file in batches while
+     * reporting progress, answers queries through futures, and completes
+     * readData exceptionally for a missing file.
+     */
+    @Test
+    public void asyncTest1() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 25_000, 35);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AsyncBackend async = new AsyncBackend(new Backend(new RedBlackTree<>()), executor);
+            List<Long> progress = new CopyOnWriteArrayList<>();
+            async.readData(tempFile.getAbsolutePath(), progress::add).join();
+            assertEquals(List.of(10_000L, 20_000L, 25_000L), progress);
+            assertEquals(25_000, async.getRange(null, null).join().size());
+            assertEquals(5, async.fiveMost().join().size());
+
+            CompletionException thrown = assertThrows(CompletionException.class,
+                () -> async.readData(tempFile.getAbsolutePath() + ".missing").join());
+            assertTrue(thrown.getCause() instanceof IOException);
+        } finally {
+            executor.shutdown();
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * asyncTest2: Tests that AsyncBackend loads a file into a lazy, an
+     * off-heap and a year-partitioned backend the same way readData does.
+     */
+    @Test
+    public void asyncTest2() throws IOException {
+        File tempFile = File.createTempFile("testSongs", ".csv");
+        BackendLoadTest.writeRandomSongs(tempFile, 12_000, 36);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Backend direct = new Backend(new RedBlackTree<>());
+            direct.readData(tempFile.getAbsolutePath());
+            List<String> expected = direct.getRange(-10, -4);
+
+            RedBlackTree<Song> lazyTree = new RedBlackTree<>();
+            Backend lazy = new Backend(lazyTree);
+            lazy.useLazyIngest();
+            Backend stored = new Backend(new RedBlackTree<>());
+            stored.useOffHeapStore(new SongStore());
+            Backend partitioned = new Backend(new RedBlackTree<>());
+            partitioned.useYearPartitions(YearPartitionedCatalog.withYearsPerPartition(5));
+            for (Backend backend : List.of(lazy, stored, partitioned)) {
+                AsyncBackend async = new AsyncBackend(backend, executor);
+                List<Long> progress = new CopyOnWriteArrayList<>();
+                async.readData(tempFile.getAbsolutePath(), progress::add).join();
+                assertEquals(12_000L, (long) progress.get(progress.size() - 1));
+                assertEquals(expected.size(), async.getRange(-10, -4).join().size());
+            }
+            // the lazy backend mapped the file rather than parsing it into its tree
+            assertEquals(0, lazyTree.size());
+        } finally {
+            executor.shutdown();
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * @return the body of the response to a GET request for url
+     */
+    private static String get(String url) throws IOException {
+        try (InputStream in = URI.create(url).toURL().openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class describes many loudness range and BPM filter queries that are
+ * answered together, in one sweep over the songs in order of loudness,
+ * rather than with one scan per query. It is built by chaining calls, and
+ * run with Backend.runBatch:
+ *
+ *     BatchQuery batch = new BatchQuery().collectFiveMost(true)
+ *         .add(-10, -2, 120)
+ *         .add(null, -20, null);
+ *
+ * Each query is the same as a call to getRange(low, high) followed by
+ * setFilter(threshold). Its Result always holds the number of matching
+ * songs, and optionally their titles and the titles of the five most
+ * danceable, in the same order as getRange and fiveMost would return them.
+ *
+ * The sweep walks the songs from quietest to loudest. A query becomes active
+ * at the first song in its loudness range and inactive after the last, and
+ * the active queries are kept ordered by their BPM threshold, so each song
+ * only visits the queries it matches. Answering q queries over n songs takes
+ * O(n + q log q) time plus the time to produce the results, instead of
+ * O(n * q) for q separate scans.
+ */
+public class BatchQuery {
+
+    /**
+     * The answer to one query of a batch.
+     */
+    public static class Result {
+        private long count = 0;
+        private final List<String> titles;
+        // the five most danceable matches so far, most danceable first
+        private final List<Song> mostDanceable;
+
+        private Result(boolean titles, boolean fiveMost) {
+            this.titles = titles ? new ArrayList<>() : null;
+            this.mostDanceable = fiveMost ? new ArrayList<>(6) : null;
+        }
+
+        /**
+         * @return the number of matching songs
+         */
+        public long getCount() { return count; }
+
+        /**
+         * @return the titles of the matching songs ordered by loudness, or
+         * null if titles were not collected
+         */
+        public List<String> getTitles() { return titles; }
+
+        /**
+         * @return the titles of the five most danceable matching songs, most
+         * danceable first, or null if they were not collected
+         */
+        public List<String> getFiveMost() {
+            if (mostDanceable == null) {
+                return null;
+            }
+            List<String> five = new ArrayList<>(mostDanceable.size());
+            for (Song song : mostDanceable) {
+                five.add(song.getTitle());
+            }
+            return five;
+        }
+
+        private void offer(Song song) {
+            count++;
+            if (titles != null) {
+                titles.add(song.getTitle());
+            }
+            if (mostDanceable != null) {
+                // songs arrive by loudness, so an earlier song wins a tie, the
+                // same as the stable sort in fiveMost
+                int danceability = song.getDanceability();
+                int i = mostDanceable.size();
+                while (i > 0 && mostDanceable.get(i - 1).getDanceability() < danceability) {
+                    i--;
+                }
+                if (i < 5) {
+                    mostDanceable.add(i, song);
+                    if (mostDanceable.size() > 5) {
+                        mostDanceable.remove(5);
+                    }
+                }
+            }
+        }
+    }
+
+    // each query as {loudness low, loudness high, BPM threshold}, with open
+    // ends and a missing threshold widened to the int range
+    private final List<int[]> queries = new ArrayList<>();
+    private boolean titles = false;
+    private boolean fiveMost = false;
+
+    /**
+     * Adds a query for the songs with a Loudness from low through high and a
+     * BPM above threshold.
+     * @param low the smallest Loudness, or null for no minimum
+     * @param high the largest Loudness, or null for no maximum
+     * @param threshold the BPM that songs must be above, or null for any BPM
+     * @return this batch
+     */
+    public BatchQuery add(Integer low, Integer high, Integer threshold) {
+        queries.add(new int[] { low == null ? Integer.MIN_VALUE : low,
+                                high == null ? Integer.MAX_VALUE : high,
+                                threshold == null ? Integer.MIN_VALUE : threshold });
+        return this;
+    }
+
+    /**
+     * Chooses whether each Result holds the titles of every matching song.
+     * @return this batch
+     */
+    public BatchQuery collectTitles(boolean titles) {
+        this.titles = titles;
+        return this;
+    }
+
+    /**
+     * Chooses whether each Result holds the titles of the five most
+     * danceable matching songs.
+     * @return this batch
+     */
+    public BatchQuery collectFiveMost(boolean fiveMost) {
+        this.fiveMost = fiveMost;
+        return this;
+    }
+
+    /**
+     * @return the number of queries in this batch
+     */
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * Answers every query in this batch in one pass over songs.
+     * @param songsByLoudness every song, ordered by loudness
+     * @return the result of each query, in the order the queries were added
+     */
+    public List<Result> evaluate(Iterable<Song> songsByLoudness) {
+        List<Result> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            results.add(new Result(titles, fiveMost));
+        }
+        // queries in the order they become active
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            starts.add(i);
+        }
+        starts.sort(Comparator.comparingInt(i -> queries.get(i)[0]));
+        // active queries by the Loudness after which they become inactive
+        PriorityQueue<Integer> ends = new PriorityQueue<>(
+            Math.max(1, queries.size()), Comparator.comparingInt(i -> queries.get(i)[1]));
+        // active queries by BPM threshold, so a song only visits those it passes
+        TreeSet<Integer> active = new TreeSet<>(
+            Comparator.<Integer>comparingInt(i -> queries.get(i)[2]).thenComparingInt(i -> i));
+
+        int next = 0;
+        for (Song song : songsByLoudness) {
+            int loudness = song.getLoudness();
+            while (next < starts.size() && queries.get(starts.get(next))[0] <= loudness) {
+                int query = starts.get(next++);
+                active.add(query);
+                ends.add(query);
+            }
+            while (!ends.isEmpty() && queries.get(ends.peek())[1] < loudness) {
+                active.remove(ends.poll());
+            }
+            int bpm = song.getBPM();
+            for (int query : active) {
+                if (queries.get(query)[2] >= bpm) {
+                    break;
+                }
+                results.get(query).offer(song);
+            }
+        }
+        return results;
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that every query in a batch, including open and empty ranges
+     * and missing thresholds, is answered the same as a scan of its own.
+     */
+    @Test
+    public void testMatchesSeparateScans() {
+        Random random = new Random(50);
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            songs.add(new Song("Song " + i, "Artist", "pop", 2015, 60 + random.nextInt(140),
+                               50, random.nextInt(100), -2 - random.nextInt(30), 10));
+        }
+        songs.sort(Song.BY_LOUDNESS);
+        BatchQuery batch = new BatchQuery().collectTitles(true).collectFiveMost(true);
+        List<Integer[]> queries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Integer low = random.nextInt(5) == 0 ? null : -35 + random.nextInt(35);
+            Integer high = random.nextInt(5) == 0 ? null : -35 + random.nextInt(35);
+            Integer threshold = random.nextInt(5) == 0 ? null : 50 + random.nextInt(160);
+            batch.add(low, high, threshold);
+            queries.add(new Integer[] { low, high, threshold });
+        }
+        assertEquals(300, batch.size());
+        List<Result> results = batch.evaluate(songs);
+
+        for (int i = 0; i < queries.size(); i++) {
+            Integer[] query = queries.get(i);
+            List<Song> matches = new ArrayList<>();
+            for (Song song : songs) {
+                if ((query[0] == null || song.getLoudness() >= query[0])
+                    && (query[1] == null || song.getLoudness() <= query[1])
+                    && (query[2] == null || song.getBPM() > query[2])) {
+                    matches.add(song);
+                }
+            }
+            List<String> titles = new ArrayList<>();
+            matches.forEach(song -> titles.add(song.getTitle()));
+            matches.sort(Song.BY_DANCEABILITY.reversed());
+            List<String> five = new ArrayList<>();
+            matches.subList(0, Math.min(5, matches.size())).forEach(song -> five.add(song.getTitle()));
+
+            assertEquals(matches.size(), results.get(i).getCount());
+            assertEquals(titles, results.get(i).getTitles());
+            assertEquals(five, results.get(i).getFiveMost());
+        }
+
+        List<Result> counts = new BatchQuery().add(-10, -5, null).add(-5, -10, null)
+            .evaluate(songs);
+        assertNull(counts.get(0).getTitles());
+        assertNull(counts.get(0).getFiveMost());
+        assertEquals(0, counts.get(1).getCount());
+        assertTrue(new BatchQuery().evaluate(songs).isEmpty());
+        assertEquals(0, new BatchQuery().add(null, null, null)
+                         .evaluate(Collections.emptyList()).get(0).getCount());
+    }
+}
@@ -0,0 +1,325 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * This class is a compressed bitmap over non-negative int values, organized
+ * the same way as a roaring bitmap: values are grouped by their high 16 bits
+ * into containers, and each container stores the low 16 bits either as a
+ * sorted array (while sparse) or as a 65536 bit bitmap (once dense). This
+ * keeps sparse sets small while making intersections of dense sets a matter
+ * of AND-ing long words together.
+ */
+public class CompressedBitmap {
+
+    // containers switch from array to bitmap storage above this cardinality
+    private static final int ARRAY_LIMIT = 4096;
+
+    // sorted high 16 bit keys, and the container holding each key's values
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int containerCount = 0;
+
+    /**
+     * Adds value to this bitmap. Adding values in increasing order, as when
+     * row ids are assigned sequentially, only ever appends.
+     * @param value the non-negative value to add
+     * @throws IllegalArgumentException if value is negative
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Cannot add negative values");
+        }
+        char high = (char) (value >>> 16);
+        int index;
+        if (containerCount > 0 && keys[containerCount - 1] == high) {
+            index = containerCount - 1; // common case: appending to the last container
+        } else {
+            index = Arrays.binarySearch(keys, 0, containerCount, high);
+            if (index < 0) {
+                index = -index - 1;
+                insertContainer(index, high, new ArrayContainer());
+            }
+        }
+        containers[index] = containers[index].add((char) value);
+    }
+
+    /**
+     * @param value the value to look for
+     * @return true if value has been added to this bitmap, false otherwise
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, containerCount, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * @return the number of values in this bitmap
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < containerCount; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    /**
+     * Passes every value in this bitmap to action, in increasing order.
+     * @param action the consumer to call with each value
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < containerCount; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * @return a new bitmap containing the values that are in both a and b
+     */
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount && j < b.containerCount) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Container both = a.containers[i].and(b.containers[j]);
+                if (both.cardinality() > 0) {
+                    result.insertContainer(result.containerCount, a.keys[i], both);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new bitmap containing the values that are in a, b, or both
+     */
+    public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount || j < b.containerCount) {
+            if (j == b.containerCount || (i < a.containerCount && a.keys[i] < b.keys[j])) {
+                result.insertContainer(result.containerCount, a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.containerCount || a.keys[i] > b.keys[j]) {
+                result.insertContainer(result.containerCount, b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.insertContainer(result.containerCount, a.keys[i],
+                                       a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inserts a container for key at position index, shifting later
+     * containers back by one.
+     */
+    private void insertContainer(int index, char key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    /**
+     * Holds the low 16 bits of the values that share one high 16 bit key.
+     */
+    private abstract static class Container {
+        // returns the container to use from now on, which is either this one
+        // or a converted copy when the storage format has to change
+        abstract Container add(char low);
+        abstract boolean contains(char low);
+        abstract int cardinality();
+        abstract void forEach(int base, IntConsumer action);
+        abstract Container and(Container other);
+        abstract Container or(Container other);
+        abstract Container copy();
+    }
+
+    /**
+     * Sparse container that keeps its values in a sorted char array.
+     */
+    private static class ArrayContainer extends Container {
+        char[] values = new char[4];
+        int size = 0;
+
+        @Override
+        Container add(char low) {
+            int index;
+            if (size == 0 || values[size - 1] < low) {
+                index = size;
+            } else {
+                index = Arrays.binarySearch(values, 0, size, low);
+                if (index >= 0) {
+                    return this; // already present
+                }
+                index = -index - 1;
+            }
+            if (size == ARRAY_LIMIT) {
+                return toBitmap().add(low);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(size * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, size)];
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) {
+                    result.values[result.size++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        Container or(Container other) {
+            Container result = other.copy();
+            for (int i = 0; i < size; i++) {
+                result = result.add(values[i]);
+            }
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer result = new ArrayContainer();
+            result.values = Arrays.copyOf(values, Math.max(1, size));
+            result.size = size;
+            return result;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Dense container that keeps one bit for each of the 65536 low values.
+     */
+    private static class BitmapContainer extends Container {
+        long[] words = new long[1024];
+        int cardinality = 0;
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer result = new BitmapContainer();
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int w = 0; w < words.length; w++) {
+                result.words[w] = words[w] & otherWords[w];
+                result.cardinality += Long.bitCount(result.words[w]);
+            }
+            return result.cardinality <= ARRAY_LIMIT ? result.toArray() : result;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.or(this);
+            }
+            BitmapContainer result = new BitmapContainer();
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int w = 0; w < words.length; w++) {
+                result.words[w] = words[w] | otherWords[w];
+                result.cardinality += Long.bitCount(result.words[w]);
+            }
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer result = new BitmapContainer();
+            result.words = words.clone();
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(1, cardinality)];
+            forEach(0, value -> array.values[array.size++] = (char) value);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class implements IterableSortedCollection as a lock-free skip list,
+ * so that any number of threads can insert and query at once without a
+ * global lock. Every node is linked into the bottom level, which holds every
+ * value in order, and into each level above with probability 1/4, so that a
+ * search skips over most nodes and takes O(log n) expected steps. Nodes
+ * average 1.33 links, which keeps them small.
+ *
+ * A value is inserted by finding its predecessor and successor on every
+ * level, and then linking the new node in with a compare-and-set on each
+ * predecessor, bottom level first. The value is in the collection once the
+ * bottom level CAS succeeds; a failed CAS means another thread linked a node
+ * in the same place, and the search is repeated. Since values are never
+ * removed, a linked node stays linked, which keeps the algorithm simple.
+ *
+ * Equal values are kept in the order they were inserted. Iterators are
+ * weakly consistent: they never throw ConcurrentModificationException, and
+ * they return every value inserted before they were created that is within
+ * their bounds, and may or may not return values inserted since. A clear
+ * that races with inserts may lose those inserts.
+ */
+public class ConcurrentSkipList<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    // enough levels for 4^16 values
+    private static final int MAX_LEVEL = 16;
+
+    /**
+     * A node with a value and its successor on each level it is linked into.
+     */
+    private static class Node<T> {
+        private final T value;
+        // read and written through NEXT, so that links are volatile
+        private final Node<?>[] next;
+
+        private Node(T value, int levels) {
+            this.value = value;
+            this.next = new Node<?>[levels];
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<T> next(int level) {
+            return (Node<T>) NEXT.getAcquire(next, level);
+        }
+
+        private void setNext(int level, Node<T> node) {
+            NEXT.setRelease(next, level, node);
+        }
+
+        private boolean casNext(int level, Node<T> expected, Node<T> node) {
+            return NEXT.compareAndSet(next, level, expected, node);
+        }
+    }
+
+    private static final VarHandle NEXT = MethodHandles.arrayElementVarHandle(Node[].class);
+
+    // replaced as a whole by clear
+    private volatile Node<T> head = new Node<>(null, MAX_LEVEL);
+    // the highest level any node is linked into, so searches skip empty levels
+    private final AtomicInteger levels = new AtomicInteger(1);
+    private final LongAdder size = new LongAdder();
+
+    // bounds applied to every iterator created by this list, null when unbounded
+    private volatile Comparable<T> iteratorMin = null;
+    private volatile Comparable<T> iteratorMax = null;
+
+    /**
+     * Inserts data after every value already in the list that is equal to it.
+     * @param data the value to insert
+     * @throws NullPointerException if data is null
+     */
+    @Override
+    public void insert(T data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert null values");
+        }
+        int height = randomHeight();
+        levels.accumulateAndGet(height, Math::max);
+        Node<T> node = new Node<>(data, height);
+        Node<T> start = head;
+        @SuppressWarnings("unchecked")
+        Node<T>[] preds = (Node<T>[]) new Node<?>[MAX_LEVEL];
+        @SuppressWarnings("unchecked")
+        Node<T>[] succs = (Node<T>[]) new Node<?>[MAX_LEVEL];
+
+        for (int level = 0; level < height; level++) {
+            while (true) {
+                if (level == 0 || preds[level] == null) {
+                    findInsertionPoint(start, data, preds, succs);
+                }
+                node.setNext(level, succs[level]);
+                if (preds[level].casNext(level, succs[level], node)) {
+                    break;
+                }
+                // another node was linked here first, so search again
+                preds[level] = null;
+            }
+        }
+        size.increment();
+    }
+
+    /**
+     * Finds, on every level, the last node whose value is not greater than
+     * value, and the node after it.
+     */
+    private void findInsertionPoint(Node<T> start, T value, Node<T>[] preds, Node<T>[] succs) {
+        Node<T> pred = start;
+        for (int level = levels.get() - 1; level >= 0; level--) {
+            Node<T> succ = pred.next(level);
+            while (succ != null && succ.value.compareTo(value) <= 0) {
+                pred = succ;
+                succ = pred.next(level);
+            }
+            preds[level] = pred;
+            succs[level] = succ;
+        }
+    }
+
+    /**
+     * @return the first node on the bottom level whose value is not below
+     * bound, or null if there is none
+     */
+    private Node<T> firstAtLeast(Comparable<T> bound) {
+        Node<T> pred = head;
+        for (int level = levels.get() - 1; level >= 0; level--) {
+            Node<T> succ = pred.next(level);
+            while (succ != null && bound != null && bound.compareTo(succ.value) > 0) {
+                pred = succ;
+                succ = pred.next(level);
+            }
+        }
+        return pred.next(0);
+    }
+
+    /**
+     * @return a level count where each level is a quarter as likely as the
+     * one below
+     */
+    private static int randomHeight() {
+        int bits = ThreadLocalRandom.current().nextInt() | (1 << 31);
+        // the lowest set bit is at position k with probability 1 / 2^(k + 1),
+        // so every two trailing zeros add a level
+        return Math.min(Integer.numberOfTrailingZeros(bits) / 2 + 1, MAX_LEVEL);
+    }
+
+    @Override
+    public boolean contains(Comparable<T> data) {
+        Node<T> node = firstAtLeast(data);
+        return node != null && data.compareTo(node.value) == 0;
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.next(0) == null;
+    }
+
+    @Override
+    public void clear() {
+        head = new Node<>(null, MAX_LEVEL);
+        levels.set(1);
+        size.reset();
+    }
+
+    /**
+     * Sets the minimum value for iterators created by this list.
+     * @param min the smallest value to iterate over, or null to clear the minimum
+     */
+    @Override
+    public void setIteratorMin(Comparable<T> min) { this.iteratorMin = min; }
+
+    /**
+     * Sets the maximum value for iterators created by this list.
+     * @param max the largest value to iterate over, or null to clear the maximum
+     */
+    @Override
+    public void setIteratorMax(Comparable<T> max) { this.iteratorMax = max; }
+
+    /**
+     * Returns a weakly consistent in-order iterator over the values between
+     * the current iterator min and max. Finding the first value takes
+     * O(log n) expected time, and each call to next takes constant time.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        Comparable<T> max = iteratorMax;
+        Node<T> first = firstAtLeast(iteratorMin);
+        return new Iterator<T>() {
+            private Node<T> next = first;
+
+            @Override
+            public boolean hasNext() {
+                return next != null && (max == null || max.compareTo(next.value) >= 0);
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T value = next.value;
+                next = next.next(0);
+                return value;
+            }
+        };
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that the list iterates, bounds and counts values the same way
+     * as a RedBlackTree, including duplicates in insertion order.
+     */
+    @Test
+    public void testMatchesRedBlackTree() {
+        ConcurrentSkipList<String> list = new ConcurrentSkipList<>();
+        RedBlackTree<String> tree = new RedBlackTree<>();
+        Random random = new Random(47);
+        for (int i = 0; i < 5000; i++) {
+            String value = "v" + random.nextInt(1000);
+            list.insert(value);
+            tree.insert(value);
+        }
+        assertEquals(tree.size(), list.size());
+        List<String> expected = new ArrayList<>();
+        tree.forEach(expected::add);
+        List<String> actual = new ArrayList<>();
+        list.forEach(actual::add);
+        assertEquals(expected, actual);
+
+        for (Comparable<String> min : new String[] { null, "v2", "v55", "z" }) {
+            for (Comparable<String> max : new String[] { null, "v3", "v555", "a" }) {
+                list.setIteratorMin(min);
+                list.setIteratorMax(max);
+                tree.setIteratorMin(min);
+                tree.setIteratorMax(max);
+                expected.clear();
+                tree.forEach(expected::add);
+                actual.clear();
+                list.forEach(actual::add);
+                assertEquals(expected, actual);
+            }
+        }
+        assertTrue(list.contains("v999") == tree.contains("v999"));
+        assertFalse(list.contains("v1000"));
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(0, list.size());
+        assertThrows(NullPointerException.class, () -> list.insert(null));
+    }
+
+    /**
+     * Checks that values inserted by many threads at once are all present
+     * and in order, with equal values inserted by one thread kept in order.
+     */
+    @Test
+    public void testConcurrentInserts() throws InterruptedException {
+        ConcurrentSkipList<Stamp> list = new ConcurrentSkipList<>();
+        int threads = 8;
+        int perThread = 20_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                for (int i = 0; i < perThread; i++) {
+                    list.insert(new Stamp(random.nextInt(500), id, i));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread, list.size());
+        Stamp previous = null;
+        int count = 0;
+        int[] last = new int[threads * 500];
+        Arrays.fill(last, -1);
+        for (Stamp stamp : list) {
+            if (previous != null) {
+                assertTrue(previous.compareTo(stamp) <= 0);
+            }
+            // within one key, each thread's values must be in insertion order
+            int slot = stamp.key * threads + stamp.thread;
+            assertTrue(last[slot] < stamp.sequence);
+            last[slot] = stamp.sequence;
+            previous = stamp;
+            count++;
+        }
+        assertEquals(threads * perThread, count);
+        assertTrue(list.contains(new Stamp(0, 0, 0)));
+    }
+
+    /**
+     * Test value ordered only by its key.
+     */
+    private static class Stamp implements Comparable<Stamp> {
+        private final int key;
+        private final int thread;
+        private final int sequence;
+        Stamp(int key, int thread, int sequence) {
+            this.key = key;
+            this.thread = thread;
+            this.sequence = sequence;
+        }
+        @Override
+        public int compareTo(Stamp other) { return Integer.compare(key, other.key); }
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class is a materialized view of the songs that pass one loudness
+ * range and BPM filter. Songs are offered to the view as they are loaded,
+ * and the ones that pass are added to a bucket for their loudness and, when
+ * danceable enough, to the TOP_K most danceable songs. Reading the songs
+ * ordered by loudness then takes time proportional to the number of songs
+ * returned, and reading the most danceable songs takes constant time.
+ *
+ * Songs with equal loudness are kept in their natural (tree) order, and
+ * songs with equal danceability among the most danceable are ordered by
+ * loudness and then in tree order, so the view returns the same songs in the
+ * same order as Backend's scan of the tree, whatever order they are offered
+ * in. Songs that are equal in all of these keep the order they were offered.
+ */
+public class FilterView {
+
+    // number of most danceable songs kept
+    public static final int TOP_K = 5;
+
+    private final Integer loudnessLow;
+    private final Integer loudnessHigh;
+    private final Integer bpmThreshold;
+
+    // the order of the most danceable songs: the scan sorts the songs in
+    // loudness and then tree order by danceability, with a stable sort
+    private static final Comparator<Song> DANCEABLE_FIRST = Song.BY_DANCEABILITY.reversed()
+        .thenComparing(Song.BY_LOUDNESS).thenComparing(Comparator.naturalOrder());
+
+    // matching songs by loudness, each bucket in tree order except for the
+    // buckets in unsorted, which are sorted the next time they are read
+    private final TreeMap<Integer, List<Song>> byLoudness = new TreeMap<>();
+    private final Set<Integer> unsorted = new HashSet<>();
+    private int size = 0;
+    // the most danceable matching songs, most danceable first
+    private final Song[] top = new Song[TOP_K];
+    private int topSize = 0;
+
+    /**
+     * Creates an empty view of the songs that pass a loudness range and BPM
+     * filter, where a null bound is not applied.
+     * @param loudnessLow the minimum Loudness, or null for no minimum
+     * @param loudnessHigh the maximum Loudness, or null for no maximum
+     * @param bpmThreshold the exclusive minimum BPM, or null for no minimum
+     */
+    public FilterView(Integer loudnessLow, Integer loudnessHigh, Integer bpmThreshold) {
+        this.loudnessLow = loudnessLow;
+        this.loudnessHigh = loudnessHigh;
+        this.bpmThreshold = bpmThreshold;
+    }
+
+    /**
+     * @return true if this view holds the songs for exactly these bounds
+     */
+    public boolean covers(Integer loudnessLow, Integer loudnessHigh, Integer bpmThreshold) {
+        return Objects.equals(this.loudnessLow, loudnessLow)
+            && Objects.equals(this.loudnessHigh, loudnessHigh)
+            && Objects.equals(this.bpmThreshold, bpmThreshold);
+    }
+
+    /**
+     * Adds song to this view if it passes the view's filters.
+     * @param song the newly loaded song
+     * @return true if song was added
+     */
+    public boolean offer(Song song) {
+        int loudness = song.getLoudness();
+        if ((loudnessLow != null && loudness < loudnessLow)
+            || (loudnessHigh != null && loudness > loudnessHigh)
+            || (bpmThreshold != null && song.getBPM() <= bpmThreshold)) {
+            return false;
+        }
+        List<Song> bucket = byLoudness.computeIfAbsent(loudness, k -> new ArrayList<>());
+        if (!bucket.isEmpty() && song.compareTo(bucket.get(bucket.size() - 1)) < 0) {
+            // sorting once when the bucket is read is cheaper than inserting
+            // every song offered out of order in its place
+            unsorted.add(loudness);
+        }
+        bucket.add(song);
+        size++;
+
+        // later songs lose ties, so they go after every song that is not
+        // ordered after them
+        if (topSize < TOP_K || DANCEABLE_FIRST.compare(song, top[TOP_K - 1]) < 0) {
+            int position = Math.min(topSize, TOP_K - 1);
+            while (position > 0 && DANCEABLE_FIRST.compare(song, top[position - 1]) < 0) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = song;
+            topSize = Math.min(topSize + 1, TOP_K);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of songs in this view
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a new list of the songs in this view, ordered by loudness
+     */
+    public List<Song> songs() {
+        for (Integer loudness : unsorted) {
+            // a stable sort keeps songs with equal titles in the order offered
+            byLoudness.get(loudness).sort(Comparator.naturalOrder());
+        }
+        unsorted.clear();
+        List<Song> songs = new ArrayList<>(size);
+        for (List<Song> bucket : byLoudness.values()) {
+            songs.addAll(bucket);
+        }
+        return songs;
+    }
+
+    /**
+     * @return a new list of the TOP_K (or fewer) most danceable songs in this
+     * view, most danceable first
+     */
+    public List<Song> mostDanceable() {
+        List<Song> songs = new ArrayList<>(topSize);
+        for (int i = 0; i < topSize; i++) {
+            songs.add(top[i]);
+        }
+        return songs;
+    }
+}
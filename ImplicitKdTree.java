@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class keeps songs in an implicit k-d tree, for LoudnessBpmIndex and
+ * SimilarityIndex. The songs are held in one array, and the middle element
+ * of every [lo, hi) slice of it is the node of that subtree, split on axis
+ * depth % the number of axes. Songs are appended as they are added, and the
+ * tree is rebuilt lazily, the next time it is queried, so that bulk loads
+ * only pay for one build.
+ */
+class ImplicitKdTree {
+
+    // the orderings that subtrees are split on, by depth
+    private final List<Comparator<Song>> axes;
+
+    private Song[] points = new Song[16];
+    private int size = 0;
+    // true when songs were added since the tree was last built
+    private boolean dirty = false;
+
+    /**
+     * Creates an empty tree.
+     * @param axes the orderings that nodes at each depth split on, repeating
+     *     from the first after the last
+     */
+    ImplicitKdTree(List<Comparator<Song>> axes) {
+        this.axes = List.copyOf(axes);
+    }
+
+    /**
+     * Appends a song, which is placed in the tree when it is next built.
+     */
+    void add(Song song) {
+        if (size == points.length) {
+            points = Arrays.copyOf(points, size * 2);
+        }
+        points[size++] = song;
+        dirty = true;
+    }
+
+    /**
+     * @return the song at index, which is the node of every [lo, hi) slice
+     * that index is the middle of, once the tree is built
+     */
+    Song get(int index) {
+        return points[index];
+    }
+
+    /**
+     * @return the number of songs in the tree
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return a view of the songs, in the order of the tree once it is built
+     */
+    List<Song> songs() {
+        return Arrays.asList(points).subList(0, size);
+    }
+
+    /**
+     * Removes every song.
+     */
+    void clear() {
+        points = new Song[16];
+        size = 0;
+        dirty = false;
+    }
+
+    /**
+     * Builds the tree if songs were added since it was last built.
+     * @return true if the tree was rebuilt, so that anything kept by the
+     *     position of its songs must be rebuilt as well
+     */
+    boolean build() {
+        if (!dirty) {
+            return false;
+        }
+        build(0, size, 0);
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Arranges points[lo, hi) into a k-d subtree: the median along the axis
+     * for this depth is placed in the middle and both halves are built
+     * recursively on the next axis.
+     */
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        Arrays.sort(points, lo, hi, axes.get(depth % axes.size()));
+        int mid = (lo + hi) >>> 1;
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class maintains an inverted index from the words in song artists and
+ * genres to the songs that contain them. Every added song is given the next
+ * row id, and its id is appended to the posting list of each of its artist
+ * and genre tokens. Since ids only grow, each posting list is kept sorted
+ * and stored as the differences between consecutive ids, encoded as varints,
+ * which takes one byte per entry for all but the rarest tokens.
+ *
+ * A query for several tokens intersects their posting lists, starting from
+ * the shortest, and only looks up the songs that contain every token.
+ */
+public class InvertedIndex {
+
+    /**
+     * A sorted list of row ids, delta and varint encoded.
+     */
+    static class PostingList {
+        private byte[] bytes = new byte[4];
+        private int length = 0;
+        private int count = 0;
+        private int last = 0;
+
+        /**
+         * Appends id, which must not be smaller than the last id appended.
+         * Appending the last id again has no effect.
+         */
+        void add(int id) {
+            if (count > 0 && id == last) {
+                return;
+            }
+            int delta = id - last;
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            // seven bits per byte, low bits first, high bit set on all but the last
+            while ((delta & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            last = id;
+            count++;
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * @return every id in this list, in increasing order
+         */
+        int[] toArray() {
+            int[] ids = new int[count];
+            int position = 0;
+            int id = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += delta;
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        /**
+         * Keeps the ids of candidates[0, size) that are also in this list.
+         * @return the number of ids kept, which are moved to the front of
+         *     candidates in the same order
+         */
+        int retainAll(int[] candidates, int size) {
+            int kept = 0;
+            int position = 0;
+            int id = 0;
+            int read = 0;
+            for (int i = 0; i < size && read < count; ) {
+                if (read == 0 || id < candidates[i]) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[position++];
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    id += delta;
+                    read++;
+                }
+                while (i < size && candidates[i] < id) {
+                    i++;
+                }
+                if (i < size && candidates[i] == id) {
+                    candidates[kept++] = id;
+                    i++;
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * @return the number of bytes used by the encoded ids
+         */
+        int encodedBytes() {
+            return length;
+        }
+    }
+
+    // songs by row id
+    private List<Song> rows = new ArrayList<>();
+    private Map<String, PostingList> artists = new HashMap<>();
+    private Map<String, PostingList> genres = new HashMap<>();
+
+    /**
+     * Assigns song the next row id and adds it to the posting list of every
+     * token of its artist and genre.
+     * @param song the song to index
+     * @throws NullPointerException if song is null
+     */
+    public void add(Song song) {
+        if (song == null) {
+            throw new NullPointerException("Cannot index null values");
+        }
+        int row = rows.size();
+        rows.add(song);
+        for (String token : tokens(song.getArtist())) {
+            artists.computeIfAbsent(token, k -> new PostingList()).add(row);
+        }
+        for (String token : tokens(song.getGenres())) {
+            genres.computeIfAbsent(token, k -> new PostingList()).add(row);
+        }
+    }
+
+    /**
+     * @return the number of songs that have been indexed
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Finds the songs whose artist contains every token of artistTerms, and
+     * whose genre contains every token of genreTerms, that also fall within
+     * a Loudness range and pass a BPM filter.
+     * @param artistTerms words that must all be in the artist, or null
+     * @param genreTerms words that must all be in the genre, or null
+     * @param loudnessLow the minimum Loudness, or null for no minimum
+     * @param loudnessHigh the maximum Loudness, or null for no maximum
+     * @param bpmThreshold the exclusive minimum BPM, or null for no minimum
+     * @return the matching songs, ordered by Loudness
+     */
+    public List<Song> search(String artistTerms, String genreTerms, Integer loudnessLow,
+                             Integer loudnessHigh, Integer bpmThreshold) {
+        List<PostingList> lists = new ArrayList<>();
+        if (!collect(artists, artistTerms, lists) || !collect(genres, genreTerms, lists)) {
+            return new ArrayList<>();
+        }
+
+        List<Song> matches = new ArrayList<>();
+        if (lists.isEmpty()) {
+            matches.addAll(rows);
+        } else {
+            // intersect the shortest lists first, so few candidates are left
+            lists.sort(Comparator.comparingInt(PostingList::size));
+            int[] candidates = lists.get(0).toArray();
+            int size = candidates.length;
+            for (int i = 1; i < lists.size() && size > 0; i++) {
+                size = lists.get(i).retainAll(candidates, size);
+            }
+            for (int i = 0; i < size; i++) {
+                matches.add(rows.get(candidates[i]));
+            }
+        }
+
+        matches.removeIf(song -> (loudnessLow != null && song.getLoudness() < loudnessLow)
+                         || (loudnessHigh != null && song.getLoudness() > loudnessHigh)
+                         || (bpmThreshold != null && song.getBPM() <= bpmThreshold));
+        matches.sort(Song.BY_LOUDNESS);
+        return matches;
+    }
+
+    /**
+     * Adds the posting list of every token in terms to lists.
+     * @return false if some token is not in the index, so nothing can match
+     */
+    private static boolean collect(Map<String, PostingList> postings, String terms,
+                                   List<PostingList> lists) {
+        for (String token : tokens(terms)) {
+            PostingList list = postings.get(token);
+            if (list == null) {
+                return false;
+            }
+            lists.add(list);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes used by the encoded posting lists
+     */
+    public long encodedBytes() {
+        long bytes = 0;
+        for (PostingList list : artists.values()) {
+            bytes += list.encodedBytes();
+        }
+        for (PostingList list : genres.values()) {
+            bytes += list.encodedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     * @param text the text to split, or null
+     * @return the distinct words of text, in order
+     */
+    static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that posting lists decode to the ids that were added, across
+     * one, two and three byte deltas, and that intersection keeps only the
+     * shared ids.
+     */
+    @Test
+    public void testPostingLists() {
+        PostingList list = new PostingList();
+        int[] ids = { 0, 1, 5, 5, 130, 20000, 20001, 3000000 };
+        for (int id : ids) {
+            list.add(id);
+        }
+        assertEquals(7, list.size());
+        int[] decoded = list.toArray();
+        assertEquals(7, decoded.length);
+        assertEquals(130, decoded[3]);
+        assertEquals(3000000, decoded[6]);
+
+        int[] candidates = { 1, 2, 130, 19999, 3000000, 3000001 };
+        int kept = list.retainAll(candidates, candidates.length);
+        assertEquals(3, kept);
+        assertEquals(1, candidates[0]);
+        assertEquals(130, candidates[1]);
+        assertEquals(3000000, candidates[2]);
+    }
+
+    /**
+     * Checks that searches for several artist and genre words match a scan
+     * of every song.
+     */
+    @Test
+    public void testSearchMatchesScan() {
+        String[] artists = { "Taylor Swift", "The Weeknd", "Swift & Co", "Weeknd Taylor" };
+        String[] genres = { "dance pop", "pop", "canadian pop", "big room" };
+        Random random = new Random(39);
+        InvertedIndex index = new InvertedIndex();
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Song song = new Song("Song " + i, artists[random.nextInt(artists.length)],
+                                 genres[random.nextInt(genres.length)], 2015,
+                                 60 + random.nextInt(140), 50, 50, -random.nextInt(30), 10);
+            songs.add(song);
+            index.add(song);
+        }
+
+        String[][] queries = { { "taylor", null }, { "SWIFT taylor", "pop" }, { null, "Pop Dance" },
+                               { "weeknd", "canadian" }, { "nobody", null }, { null, null } };
+        for (String[] query : queries) {
+            List<Song> result = index.search(query[0], query[1], -20, -5, 100);
+            int expected = 0;
+            for (Song song : songs) {
+                if (tokens(song.getArtist()).containsAll(tokens(query[0]))
+                    && tokens(song.getGenres()).containsAll(tokens(query[1]))
+                    && song.getLoudness() >= -20 && song.getLoudness() <= -5 && song.getBPM() > 100) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, result.size());
+            for (int i = 1; i < result.size(); i++) {
+                assertTrue(result.get(i - 1).getLoudness() <= result.get(i).getLoudness());
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class loads a songs CSV file lazily. The file is memory-mapped, and
+ * loading only parses the numeric columns that queries sort and filter by
+ * into int arrays, along with the byte offset of each row. The title, artist
+ * and genre of a row are decoded from the mapped file when they are read,
+ * so no Strings are created for the rows a query does not return.
+ *
+ * Files larger than REGION_BYTES are mapped as several regions. Each region
+ * starts at the beginning of a row, so every row lies within one region.
+ */
+public class LazySongFile implements SongColumns {
+
+    // largest part of a file that is mapped at once
+    public static final int REGION_BYTES = 1 << 30;
+
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    // file offset of the first byte of each region
+    private long[] regionStarts = new long[0];
+
+    // file offset of the first byte of each row, and its numeric columns
+    private long[] offsets = new long[1024];
+    private int[] years = new int[1024];
+    private int[] bpms = new int[1024];
+    private int[] energies = new int[1024];
+    private int[] danceabilities = new int[1024];
+    private int[] loudnesses = new int[1024];
+    private int[] livenesses = new int[1024];
+    private int size = 0;
+
+    /**
+     * Maps filename and indexes its rows, skipping the header row. Rows that
+     * do not have 14 columns or have a non-integer numeric column are
+     * reported on System.err and skipped, the same as Backend.readData.
+     * @param filename the CSV file to load
+     * @throws IOException if the file cannot be read
+     */
+    public LazySongFile(String filename) throws IOException {
+        this(filename, REGION_BYTES);
+    }
+
+    /**
+     * Loads filename, mapping at most regionBytes at once.
+     * @throws IOException if the file cannot be read, or has a row longer
+     *     than regionBytes
+     */
+    LazySongFile(String filename, int regionBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long start = 0;
+            boolean header = true;
+            while (start < fileSize) {
+                int length = (int) Math.min(regionBytes, fileSize - start);
+                boolean last = start + length == fileSize;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                regions.add(region);
+                regionStarts = Arrays.copyOf(regionStarts, regions.size());
+                regionStarts[regions.size() - 1] = start;
+
+                int lineStart = 0;
+                while (lineStart < length) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < length && region.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    if (lineEnd == length && !last) {
+                        break; // this row continues past the region, so map it again next time
+                    }
+                    if (header) {
+                        header = false;
+                    } else {
+                        indexRow(region, start, lineStart, lineEnd);
+                    }
+                    lineStart = lineEnd + 1;
+                }
+                if (last) {
+                    break;
+                }
+                if (lineStart == 0) {
+                    throw new IOException("Row at byte " + start + " is longer than " + regionBytes + " bytes");
+                }
+                start += lineStart;
+            }
+        }
+    }
+
+    /**
+     * Parses the numeric columns of the row in region[from, to) and appends it.
+     */
+    private void indexRow(ByteBuffer region, long regionStart, int from, int to) {
+        if (to > from && region.get(to - 1) == '\r') {
+            to--;
+        }
+        // the offset of each of the 13 commas between the 14 columns
+        int[] commas = new int[13];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (region.get(i) == ',') {
+                if (count < commas.length) {
+                    commas[count] = i;
+                }
+                count++;
+            }
+        }
+        if (count != commas.length) {
+            System.err.println("Invalid row: " + decode(region, from, to));
+            return;
+        }
+        int[] numbers = new int[6];
+        try {
+            for (int column = 3; column <= 8; column++) {
+                numbers[column - 3] = parseInt(region, commas[column - 1] + 1, commas[column]);
+            }
+            // reject rows whose values would not fit in a Song
+            Song.pack(numbers[0], numbers[1], numbers[2], numbers[3], numbers[4], numbers[5]);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid data in row: " + decode(region, from, to));
+            return;
+        }
+
+        if (size == offsets.length) {
+            int capacity = size + (size >> 1);
+            offsets = Arrays.copyOf(offsets, capacity);
+            years = Arrays.copyOf(years, capacity);
+            bpms = Arrays.copyOf(bpms, capacity);
+            energies = Arrays.copyOf(energies, capacity);
+            danceabilities = Arrays.copyOf(danceabilities, capacity);
+            loudnesses = Arrays.copyOf(loudnesses, capacity);
+            livenesses = Arrays.copyOf(livenesses, capacity);
+        }
+        offsets[size] = regionStart + from;
+        years[size] = numbers[0];
+        bpms[size] = numbers[1];
+        energies[size] = numbers[2];
+        danceabilities[size] = numbers[3];
+        loudnesses[size] = numbers[4];
+        livenesses[size] = numbers[5];
+        size++;
+    }
+
+    /**
+     * Parses the ASCII decimal integer in region[from, to), accepting the same
+     * text as Integer.parseInt.
+     * @throws NumberFormatException if the text is not an int
+     */
+    private static int parseInt(ByteBuffer region, int from, int to) {
+        int i = from;
+        boolean negative = i < to && region.get(i) == '-';
+        if (i < to && (region.get(i) == '-' || region.get(i) == '+')) {
+            i++;
+        }
+        if (i == to) {
+            throw new NumberFormatException();
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = region.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException();
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException();
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException();
+        }
+        return (int) value;
+    }
+
+    private static String decode(ByteBuffer region, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        region.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override public int getYear(int row) { return years[check(row)]; }
+    @Override public int getBPM(int row) { return bpms[check(row)]; }
+    @Override public int getEnergy(int row) { return energies[check(row)]; }
+    @Override public int getDanceability(int row) { return danceabilities[check(row)]; }
+    @Override public int getLoudness(int row) { return loudnesses[check(row)]; }
+    @Override public int getLiveness(int row) { return livenesses[check(row)]; }
+
+    public String getTitle(int row) { return readColumn(row, 0); }
+    public String getArtist(int row) { return readColumn(row, 1); }
+    public String getGenres(int row) { return readColumn(row, 2); }
+
+    /**
+     * @param row the row id of the song
+     * @return a LazySong for row, which decodes its strings when first read
+     */
+    @Override
+    public Song toSong(int row) {
+        return new LazySong(check(row));
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return row;
+    }
+
+    /**
+     * Decodes one of the first three columns of a row from the mapped file.
+     */
+    private String readColumn(int row, int column) {
+        long offset = offsets[check(row)];
+        int index = Arrays.binarySearch(regionStarts, offset);
+        if (index < 0) {
+            index = -index - 2; // the last region starting before offset
+        }
+        ByteBuffer region = regions.get(index);
+        int from = (int) (offset - regionStarts[index]);
+        for (int skipped = 0; skipped < column; from++) {
+            if (region.get(from) == ',') {
+                skipped++;
+            }
+        }
+        int to = from;
+        while (region.get(to) != ',') {
+            to++;
+        }
+        return decode(region, from, to);
+    }
+
+    /**
+     * A Song for one row of the file. Its numeric attributes are copied from
+     * the loaded columns, and its title, artist and genre are decoded from
+     * the mapped file the first time they are read.
+     */
+    public class LazySong extends Song {
+        private final int row;
+        private String title;
+        private String artist;
+        private String genres;
+
+        private LazySong(int row) {
+            super(null, null, null, years[row], bpms[row], energies[row],
+                  danceabilities[row], loudnesses[row], livenesses[row]);
+            this.row = row;
+        }
+
+        /**
+         * @return the row id of this song in its file
+         */
+        public int getRow() { return row; }
+
+        @Override
+        public String getTitle() {
+            if (title == null) {
+                title = LazySongFile.this.getTitle(row);
+            }
+            return title;
+        }
+
+        @Override
+        public String getArtist() {
+            if (artist == null) {
+                artist = LazySongFile.this.getArtist(row);
+            }
+            return artist;
+        }
+
+        @Override
+        public String getGenres() {
+            if (genres == null) {
+                genres = LazySongFile.this.getGenres(row);
+            }
+            return genres;
+        }
+    }
+}
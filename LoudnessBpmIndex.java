@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is a two-dimensional k-d tree over the Loudness and BPM of songs.
+ * It answers the combined query used by Backend (a Loudness range together
+ * with a "BPM greater than" threshold) by pruning whole subtrees on both
+ * dimensions, which takes O(sqrt(n) + k) time instead of scanning every song.
+ *
+ * Iteration follows the same bounded contract as IterableSortedCollection:
+ * the Loudness range and BPM threshold bound every iterator that is created
+ * (null clears a bound), as do the optional min and max values that are
+ * compared against the songs' natural ordering. Songs are returned ordered
+ * by their Loudness.
+ */
+public class LoudnessBpmIndex implements IterableSortedCollection<Song> {
+
+    // orders songs by loudness, which is the order iterators return them in
+    private static final Comparator<Song> BY_LOUDNESS = Song.BY_LOUDNESS;
+    private static final Comparator<Song> BY_BPM = Song.BY_BPM;
+
+    // songs arranged as an implicit k-d tree, split on loudness at even
+    // depths and on bpm at odd depths
+    private final ImplicitKdTree tree = new ImplicitKdTree(List.of(BY_LOUDNESS, BY_BPM));
+
+    private Integer loudnessLow = null;
+    private Integer loudnessHigh = null;
+    private Integer bpmThreshold = null;
+    private Comparable<Song> min = null;
+    private Comparable<Song> max = null;
+
+    /**
+     * Adds a song to the index. The tree is rebuilt lazily, the next time
+     * it is queried, so that bulk loads only pay for one build.
+     * @param data the song to add
+     * @throws NullPointerException if data is null
+     */
+    @Override
+    public void insert(Song data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert null values");
+        }
+        tree.add(data);
+    }
+
+    @Override
+    public boolean contains(Comparable<Song> data) {
+        for (Song song : tree.songs()) {
+            if (data.compareTo(song) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+    }
+
+    @Override
+    public void setIteratorMin(Comparable<Song> min) { this.min = min; }
+
+    @Override
+    public void setIteratorMax(Comparable<Song> max) { this.max = max; }
+
+    /**
+     * Bounds future iterators to songs within this Loudness range.
+     * @param low the minimum Loudness to include, or null for no minimum
+     * @param high the maximum Loudness to include, or null for no maximum
+     */
+    public void setLoudnessRange(Integer low, Integer high) {
+        this.loudnessLow = low;
+        this.loudnessHigh = high;
+    }
+
+    /**
+     * Bounds future iterators to songs with a BPM larger than threshold.
+     * @param threshold the exclusive minimum BPM, or null to clear the filter
+     */
+    public void setBpmThreshold(Integer threshold) {
+        this.bpmThreshold = threshold;
+    }
+
+    /**
+     * Returns an iterator over the songs that fall within all of the bounds
+     * that are currently set, ordered by their Loudness.
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        return query(loudnessLow, loudnessHigh, bpmThreshold).iterator();
+    }
+
+    /**
+     * Collects the songs with a Loudness in [low, high] and a BPM larger than
+     * threshold, ordered by their Loudness. The natural ordering bounds set
+     * through setIteratorMin and setIteratorMax are applied as well.
+     * @param low the minimum Loudness, or null for no minimum
+     * @param high the maximum Loudness, or null for no maximum
+     * @param threshold the exclusive minimum BPM, or null for no minimum
+     * @return the matching songs ordered by Loudness
+     */
+    public List<Song> query(Integer low, Integer high, Integer threshold) {
+        tree.build();
+        // turn the nullable bounds into a closed box of primitive values
+        int loudLo = low == null ? Integer.MIN_VALUE : low;
+        int loudHi = high == null ? Integer.MAX_VALUE : high;
+        int bpmLo = threshold == null ? Integer.MIN_VALUE
+            : (threshold == Integer.MAX_VALUE ? Integer.MAX_VALUE : threshold + 1);
+        List<Song> matches = new ArrayList<>();
+        if (loudLo <= loudHi && (threshold == null || threshold < Integer.MAX_VALUE)) {
+            search(0, tree.size(), 0, loudLo, loudHi, bpmLo, matches);
+        }
+        matches.sort(BY_LOUDNESS);
+        return matches;
+    }
+
+    /**
+     * Visits the subtree stored in tree[lo, hi) and adds every song inside
+     * the box to matches, skipping halves that lie entirely outside of it.
+     */
+    private void search(int lo, int hi, int depth, int loudLo, int loudHi,
+                        int bpmLo, List<Song> matches) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Song song = tree.get(mid);
+            int loudness = song.getLoudness();
+            int bpm = song.getBPM();
+            if (loudness >= loudLo && loudness <= loudHi && bpm >= bpmLo
+                && (min == null || min.compareTo(song) <= 0)
+                && (max == null || max.compareTo(song) >= 0)) {
+                matches.add(song);
+            }
+            // equal keys can end up on both sides of the median after sorting,
+            // so a half is only skipped when it is strictly outside the box
+            boolean goLeft;
+            boolean goRight;
+            if (depth % 2 == 0) {
+                goLeft = loudness >= loudLo;
+                goRight = loudness <= loudHi;
+            } else {
+                goLeft = bpm >= bpmLo;
+                goRight = true;
+            }
+            if (goLeft && goRight) {
+                search(lo, mid, depth + 1, loudLo, loudHi, bpmLo, matches);
+                lo = mid + 1;
+            } else if (goLeft) {
+                hi = mid;
+            } else if (goRight) {
+                lo = mid + 1;
+            } else {
+                return;
+            }
+            depth++;
+        }
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that combined loudness and bpm bounds return exactly the songs a
+     * full scan would, ordered by loudness.
+     */
+    @Test
+    public void testQueryMatchesScan() {
+        LoudnessBpmIndex index = new LoudnessBpmIndex();
+        List<Song> all = new ArrayList<>();
+        java.util.Random random = new java.util.Random(26);
+        for (int i = 0; i < 2000; i++) {
+            Song song = new Song("S" + i, "A", "G", 2000, 60 + random.nextInt(140),
+                                 50, random.nextInt(100), -random.nextInt(60), 10);
+            index.insert(song);
+            all.add(song);
+        }
+        List<Song> result = index.query(-30, -10, 120);
+        int expected = 0;
+        for (Song song : all) {
+            if (song.getLoudness() >= -30 && song.getLoudness() <= -10 && song.getBPM() > 120) {
+                expected++;
+                assertTrue(result.contains(song));
+            }
+        }
+        assertEquals(expected, result.size());
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).getLoudness() <= result.get(i).getLoudness());
+        }
+    }
+
+    /**
+     * Checks that the bounds set on the index apply to its iterators and that
+     * null clears them.
+     */
+    @Test
+    public void testIteratorBounds() {
+        LoudnessBpmIndex index = new LoudnessBpmIndex();
+        index.insert(new Song("Quiet", "A", "G", 2000, 90, 50, 50, -20, 10));
+        index.insert(new Song("Loud", "A", "G", 2000, 140, 50, 50, -3, 10));
+        index.insert(new Song("Fast", "A", "G", 2000, 180, 50, 50, -8, 10));
+        index.setLoudnessRange(-10, null);
+        index.setBpmThreshold(150);
+        Iterator<Song> it = index.iterator();
+        assertEquals("Fast", it.next().getTitle());
+        assertFalse(it.hasNext());
+        index.setLoudnessRange(null, null);
+        index.setBpmThreshold(null);
+        int count = 0;
+        for (Song song : index) {
+            count++;
+        }
+        assertEquals(3, count);
+    }
+}
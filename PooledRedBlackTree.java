@@ -0,0 +1,382 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is a storage variant of RedBlackTree that keeps its nodes in a
+ * pool of parallel arrays instead of one RBTNode object per value. A node is
+ * identified by its index in the pool: left, right and up hold the indexes
+ * of its children and parent (NIL when absent), data holds its value, and
+ * its color is one bit of the red bitset. This removes the object header
+ * and three references per node, and leaves the garbage collector only a
+ * handful of large arrays to mark. Insertion follows the same steps as
+ * RedBlackTree: a binary search tree insert that sends duplicates right,
+ * followed by the same ensureRedProperty repair cases.
+ */
+public class PooledRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    // index used in place of a null node reference
+    protected static final int NIL = -1;
+
+    protected Object[] data;
+    protected int[] left;
+    protected int[] right;
+    protected int[] up;
+    // one bit per node, set when the node is red
+    protected long[] red;
+    protected int root = NIL;
+    // number of nodes in use; node ids are 0 to size - 1
+    protected int size = 0;
+
+    // bounds applied to every iterator created by this tree, null when unbounded
+    protected Comparable<T> iteratorMin = null;
+    protected Comparable<T> iteratorMax = null;
+
+    /**
+     * Creates an empty tree with room for 16 nodes before the pool grows.
+     */
+    public PooledRedBlackTree() {
+        allocate(16);
+    }
+
+    /**
+     * Creates an empty tree whose pool starts with room for capacity nodes.
+     * @param capacity the initial number of nodes in the pool
+     * @return a new, empty tree
+     */
+    public static <T extends Comparable<T>> PooledRedBlackTree<T> withCapacity(int capacity) {
+        PooledRedBlackTree<T> tree = new PooledRedBlackTree<>();
+        tree.allocate(Math.max(1, capacity));
+        return tree;
+    }
+
+    /**
+     * Inserts a new value into the tree and repairs any red property
+     * violation that this causes.
+     * @param value the new value to be inserted into the tree
+     * @throws NullPointerException if value is null
+     */
+    @Override
+    public void insert(T value) throws NullPointerException {
+        if (value == null) {
+            throw new NullPointerException("Cannot insert null values");
+        }
+        if (size == data.length) {
+            grow();
+        }
+        int node = size++;
+        data[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        up[node] = NIL;
+        setRed(node, true);
+
+        if (root == NIL) {
+            root = node;
+        } else {
+            // iterative version of BinarySearchTree.insertHelper
+            int subtree = root;
+            while (true) {
+                if (value.compareTo(value(subtree)) < 0) {
+                    if (left[subtree] == NIL) {
+                        left[subtree] = node;
+                        break;
+                    }
+                    subtree = left[subtree];
+                } else { // Insert duplicates to the right subtree
+                    if (right[subtree] == NIL) {
+                        right[subtree] = node;
+                        break;
+                    }
+                    subtree = right[subtree];
+                }
+            }
+            up[node] = subtree;
+        }
+
+        ensureRedProperty(node);
+    }
+
+    /**
+     * Repairs red property violations caused by a red node with a red parent,
+     * using the same recoloring and rotation cases as RedBlackTree.
+     * @param newRedNode a newly inserted red node, or a node turned red by previous repair
+     */
+    protected void ensureRedProperty(int newRedNode) {
+        while (newRedNode != root && isRed(up[newRedNode])) {
+            int parent = up[newRedNode];
+            int grandparent = up[parent];
+
+            // Case A: Parent is a left child of the grandparent
+            if (parent == left[grandparent]) {
+                int uncle = right[grandparent];
+                if (uncle != NIL && isRed(uncle)) {
+                    // Case 1: recolor and move the violation up
+                    setRed(parent, false);
+                    setRed(uncle, false);
+                    setRed(grandparent, true);
+                    newRedNode = grandparent;
+                } else {
+                    // Case 2a: New node is a right child, perform left rotation
+                    if (newRedNode == right[parent]) {
+                        rotate(newRedNode, parent);
+                        newRedNode = parent;
+                        parent = up[newRedNode];
+                    }
+                    // Case 2b: perform right rotation on the grandparent
+                    setRed(parent, false);
+                    setRed(grandparent, true);
+                    rotate(parent, grandparent);
+                }
+            }
+            // Case B: Parent is a right child of the grandparent (mirror of Case A)
+            else {
+                int uncle = left[grandparent];
+                if (uncle != NIL && isRed(uncle)) {
+                    setRed(parent, false);
+                    setRed(uncle, false);
+                    setRed(grandparent, true);
+                    newRedNode = grandparent;
+                } else {
+                    if (newRedNode == left[parent]) {
+                        rotate(newRedNode, parent);
+                        newRedNode = parent;
+                        parent = up[newRedNode];
+                    }
+                    setRed(parent, false);
+                    setRed(grandparent, true);
+                    rotate(parent, grandparent);
+                }
+            }
+        }
+
+        // Ensure the root is always black
+        setRed(root, false);
+    }
+
+    /**
+     * Rotates child above parent: a right rotation when child is the left
+     * child of parent, and a left rotation when it is the right child.
+     * @throws IllegalArgumentException when the nodes are not related this way
+     */
+    protected void rotate(int child, int parent) throws IllegalArgumentException {
+        int grandparent = up[parent];
+        if (left[parent] == child) {
+            left[parent] = right[child];
+            if (right[child] != NIL) {
+                up[right[child]] = parent;
+            }
+            right[child] = parent;
+        } else if (right[parent] == child) {
+            right[parent] = left[child];
+            if (left[child] != NIL) {
+                up[left[child]] = parent;
+            }
+            left[child] = parent;
+        } else {
+            throw new IllegalArgumentException("Child and parent are not related properly");
+        }
+        up[child] = grandparent;
+        if (grandparent == NIL) {
+            root = child;
+        } else if (left[grandparent] == parent) {
+            left[grandparent] = child;
+        } else {
+            right[grandparent] = child;
+        }
+        up[parent] = child;
+    }
+
+    @Override
+    public boolean contains(Comparable<T> value) {
+        int node = root;
+        while (node != NIL) {
+            int comparison = value.compareTo(value(node));
+            if (comparison == 0) {
+                return true;
+            }
+            node = comparison < 0 ? left[node] : right[node];
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values, and shrinks the pool back to its initial size.
+     */
+    @Override
+    public void clear() {
+        allocate(16);
+        root = NIL;
+        size = 0;
+    }
+
+    @Override
+    public void setIteratorMin(Comparable<T> min) { this.iteratorMin = min; }
+
+    @Override
+    public void setIteratorMax(Comparable<T> max) { this.iteratorMax = max; }
+
+    /**
+     * Returns an in-order iterator over the values between the current
+     * iterator min and max. The pending nodes are kept on an int stack.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        final Comparable<T> min = iteratorMin;
+        final Comparable<T> max = iteratorMax;
+        return new Iterator<T>() {
+            // a red-black tree of up to 2^31 nodes is at most 62 levels deep
+            private final int[] stack = new int[64];
+            private int depth = 0;
+
+            {
+                pushLeftPath(root);
+            }
+
+            // pushes node and its left descendants, skipping nodes below min
+            private void pushLeftPath(int node) {
+                while (node != NIL) {
+                    if (min != null && min.compareTo(value(node)) > 0) {
+                        node = right[node];
+                    } else {
+                        stack[depth++] = node;
+                        node = left[node];
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return depth > 0 && (max == null || max.compareTo(value(stack[depth - 1])) >= 0);
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int node = stack[--depth];
+                pushLeftPath(right[node]);
+                return value(node);
+            }
+        };
+    }
+
+    /**
+     * Performs a level-order traversal of the tree, in the same format as
+     * RBTNode's toLevelOrderString.
+     * @return a string of node values and colors in level-order
+     */
+    public String toLevelOrderString() {
+        if (root == NIL) {
+            return "[  ]";
+        }
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        StringBuilder sb = new StringBuilder("[ ");
+        while (head < tail) {
+            int node = queue[head++];
+            if (left[node] != NIL) queue[tail++] = left[node];
+            if (right[node] != NIL) queue[tail++] = right[node];
+            sb.append(value(node)).append(isRed(node) ? "(r)" : "(b)");
+            sb.append(head == tail ? " ]" : ", ");
+        }
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected T value(int node) {
+        return (T) data[node];
+    }
+
+    protected boolean isRed(int node) {
+        return (red[node >>> 6] & (1L << node)) != 0;
+    }
+
+    protected void setRed(int node, boolean isRed) {
+        if (isRed) {
+            red[node >>> 6] |= 1L << node;
+        } else {
+            red[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    /**
+     * Replaces the pool with empty arrays for capacity nodes.
+     */
+    private void allocate(int capacity) {
+        data = new Object[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        up = new int[capacity];
+        red = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Grows the pool by half of its current capacity.
+     */
+    private void grow() {
+        int capacity = data.length + Math.max(16, data.length >> 1);
+        data = Arrays.copyOf(data, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        up = Arrays.copyOf(up, capacity);
+        red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that the pooled tree ends up with exactly the same shape and
+     * colors as RedBlackTree after the same sequence of inserts.
+     */
+    @Test
+    public void testSameShapeAsRedBlackTree() {
+        PooledRedBlackTree<Integer> pooled = PooledRedBlackTree.withCapacity(1);
+        RedBlackTree<Integer> linked = new RedBlackTree<>();
+        Random random = new Random(29);
+        for (int i = 0; i < 500; i++) {
+            int value = random.nextInt(200);
+            pooled.insert(value);
+            linked.insert(value);
+        }
+        assertEquals(linked.root.toLevelOrderString(), pooled.toLevelOrderString());
+        assertEquals(500, pooled.size());
+        assertTrue(pooled.contains(linked.root.getData()));
+        assertFalse(pooled.contains(200));
+    }
+
+    /**
+     * Checks that iteration is in order and honors the iterator bounds.
+     */
+    @Test
+    public void testBoundedIteration() {
+        PooledRedBlackTree<String> tree = new PooledRedBlackTree<>();
+        for (String value : new String[] { "d", "b", "f", "a", "c", "e", "g", "c" }) {
+            tree.insert(value);
+        }
+        tree.setIteratorMin("b");
+        tree.setIteratorMax("e");
+        StringBuilder sb = new StringBuilder();
+        for (String value : tree) {
+            sb.append(value);
+        }
+        assertEquals("bccde", sb.toString());
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class describes how a Backend will run a SongQuery: the access path
+ * that produces candidate songs, the predicates that path answers, the
+ * predicates left to check on each candidate, and how the results are
+ * ordered. Plans are made by Backend.plan, which estimates the cost of every
+ * access path that can answer the query and keeps the cheapest.
+ */
+public class QueryPlan {
+
+    /**
+     * The ways a Backend can produce candidate songs.
+     */
+    public enum Access {
+        FULL_SCAN,    // every song in the tree
+        STORE_SCAN,   // every record in the off-heap store
+        LAZY_SCAN,    // every song in the tree, then every row of the lazily loaded files
+        PARTITION_SCAN, // every song in the year partitions whose attribute ranges may match
+        RANGE_INDEX,  // the Loudness x BPM k-d tree
+        BITMAP_INDEX  // intersected attribute bitmaps
+    }
+
+    /**
+     * The ways a Backend can order results.
+     */
+    public enum Order {
+        NONE,         // the query has no ordering
+        INDEX_ORDER,  // the access path already returns songs in the requested order
+        SORT,         // every match is sorted
+        TOP_K         // only the best limit matches are kept, in a bounded heap
+    }
+
+    private final SongQuery query;
+    private final Access access;
+    private final List<SongQuery.Predicate> indexed;
+    private final List<SongQuery.Predicate> residual;
+    private final Order order;
+    private final long totalRows;
+    private final long estimatedRows;
+    private final Map<Access, Long> costs;
+
+    QueryPlan(SongQuery query, Access access, List<SongQuery.Predicate> indexed,
+              List<SongQuery.Predicate> residual, Order order, long totalRows,
+              long estimatedRows, Map<Access, Long> costs) {
+        this.query = query;
+        this.access = access;
+        this.indexed = Collections.unmodifiableList(indexed);
+        this.residual = Collections.unmodifiableList(residual);
+        this.order = order;
+        this.totalRows = totalRows;
+        this.estimatedRows = estimatedRows;
+        this.costs = Collections.unmodifiableMap(new EnumMap<>(costs));
+    }
+
+    public SongQuery getQuery() { return query; }
+    public Access getAccess() { return access; }
+    // the predicates answered by the access path
+    public List<SongQuery.Predicate> getIndexedPredicates() { return indexed; }
+    // the predicates checked on every candidate the access path produces
+    public List<SongQuery.Predicate> getResidualPredicates() { return residual; }
+    public Order getOrder() { return order; }
+    public long getTotalRows() { return totalRows; }
+    public long getEstimatedRows() { return estimatedRows; }
+    // the estimated cost of every access path that was considered
+    public Map<Access, Long> getCosts() { return costs; }
+
+    /**
+     * @return a readable description of this plan, one step per line
+     */
+    public String explain() {
+        StringBuilder text = new StringBuilder();
+        text.append(access);
+        if (!indexed.isEmpty()) {
+            text.append(' ').append(indexed);
+        }
+        text.append(" (cost ").append(costs.get(access)).append(")\n");
+        if (!residual.isEmpty()) {
+            text.append("  filter ").append(residual).append('\n');
+        }
+        String direction = query.isDescending() ? " desc" : " asc";
+        switch (order) {
+        case INDEX_ORDER:
+            text.append("  order by ").append(query.getOrderBy()).append(direction)
+                .append(" from index\n");
+            break;
+        case SORT:
+            text.append("  sort by ").append(query.getOrderBy()).append(direction).append('\n');
+            break;
+        case TOP_K:
+            text.append("  top-k heap k=").append(query.getLimit()).append(" by ")
+                .append(query.getOrderBy()).append(direction).append('\n');
+            break;
+        default:
+            break;
+        }
+        if (query.getLimit() >= 0 && order != Order.TOP_K) {
+            text.append("  limit ").append(query.getLimit()).append('\n');
+        }
+        text.append("  estimated rows ").append(estimatedRows).append(" of ").append(totalRows)
+            .append('\n');
+        text.append("  considered ").append(costs);
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+}
@@ -6,6 +6,11 @@ public class RBTNode<T> extends BSTNode<T> {
     // store whether this is a red or black node
     protected boolean isRed = true;
 
+    // values that compare equal to data, in insertion order, when the tree
+    // stores one node per distinct key; null until the first one is added
+    protected Object[] duplicates = null;
+    protected int duplicateCount = 0;
+
     /**
      * Constructor that creates a new node with the value data.
      * Both parent and child references of the new node are initialized to null.
@@ -56,6 +61,39 @@ public class RBTNode<T> extends BSTNode<T> {
         this.isRed = !this.isRed;
     }
 
+    /**
+     * Adds a value that compares equal to this node's data to its bucket.
+     * @param value the equal value to store with this node
+     */
+    public void addDuplicate(T value) {
+        if (duplicates == null) {
+            duplicates = new Object[2];
+        } else if (duplicateCount == duplicates.length) {
+            duplicates = java.util.Arrays.copyOf(duplicates, duplicateCount * 2);
+        }
+        duplicates[duplicateCount++] = value;
+    }
+
+    /**
+     * @return the number of values stored in this node's bucket, not
+     * counting the node's own data
+     */
+    public int getDuplicateCount() {
+        return this.duplicateCount;
+    }
+
+    /**
+     * @param index the position of the value within the bucket
+     * @return the index-th value added to this node's bucket
+     */
+    @SuppressWarnings("unchecked")
+    public T getDuplicate(int index) {
+        if (index < 0 || index >= duplicateCount) {
+            throw new IndexOutOfBoundsException("Duplicate " + index + " of " + duplicateCount);
+        }
+        return (T) duplicates[index];
+    }
+
     /**
      * Returns a string representation for this node.
      * @return a string representation of the node's value and color
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class follows a range of a RedBlackTree as its bounds move, and
+ * reports only the values that entered or left the range with each move.
+ * Bounds are given the same way as to setIteratorMin and setIteratorMax, so
+ * songs in a tree ordered by loudness can be bounded by loudness alone.
+ *
+ * A move finds where each old and new bound falls in the tree, in O(log n)
+ * steps, and then only walks the values between the old and new minimum and
+ * between the old and new maximum. When consecutive ranges overlap, as they
+ * do when a slider is dragged, a move takes O(log n + changed values) time
+ * rather than the O(log n + range size) of iterating the new range.
+ *
+ * The cursor only remembers its bounds, so values inserted into the tree
+ * between moves are reported only if a later move brings them into range.
+ */
+public class RangeCursor<T extends Comparable<T>> {
+
+    /**
+     * The values that entered and left the range in one move, each in tree
+     * order.
+     */
+    public static class Delta<T> {
+        private final List<T> added;
+        private final List<T> removed;
+
+        private Delta(List<T> added, List<T> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        public List<T> getAdded() { return added; }
+        public List<T> getRemoved() { return removed; }
+    }
+
+    private final RedBlackTree<T> tree;
+    private Comparable<T> min = null;
+    private Comparable<T> max = null;
+    // false until the first move, when the range is still empty
+    private boolean positioned = false;
+
+    /**
+     * Creates a cursor over tree whose range is empty until the first move.
+     * @param tree the tree to follow
+     */
+    public RangeCursor(RedBlackTree<T> tree) {
+        this.tree = tree;
+    }
+
+    public Comparable<T> getMin() { return min; }
+    public Comparable<T> getMax() { return max; }
+
+    /**
+     * Moves the range to [min, max], and reports the values that entered
+     * and left it. The first move reports every value in the range as added.
+     * @param min the smallest value in the new range, or null for no minimum
+     * @param max the largest value in the new range, or null for no maximum
+     * @return the values added to and removed from the range
+     */
+    public Delta<T> moveTo(Comparable<T> min, Comparable<T> max) {
+        List<T> added = new ArrayList<>();
+        List<T> removed = new ArrayList<>();
+        if (!positioned) {
+            tree.iterator(min, max).forEachRemaining(added::add);
+            positioned = true;
+        } else {
+            Comparable<T> oldMin = this.min;
+            Comparable<T> oldMax = this.max;
+            // values between the old and new minimum
+            BSTNode<T> from = firstAbove(oldMin, true);
+            BSTNode<T> to = firstAbove(min, true);
+            if (from != to) {
+                if (from == null || (to != null && !atOrAbove(oldMin, true, to.data))) {
+                    BSTNode<T> swap = from;
+                    from = to;
+                    to = swap;
+                }
+                collect(from, to, oldMin, oldMax, min, max, null, null, added, removed);
+            }
+            // values between the old and new maximum, skipping those that
+            // were already walked above
+            from = firstAbove(oldMax, false);
+            to = firstAbove(max, false);
+            if (from != to) {
+                if (from == null || (to != null && !atOrAbove(oldMax, false, to.data))) {
+                    BSTNode<T> swap = from;
+                    from = to;
+                    to = swap;
+                }
+                collect(from, to, oldMin, oldMax, min, max, oldMin, min, added, removed);
+            }
+        }
+        this.min = min;
+        this.max = max;
+        return new Delta<>(added, removed);
+    }
+
+    /**
+     * Walks the nodes from first up to, but not including, end (or to the end
+     * of the tree when end is null), adding values that are only in the new
+     * range to added and values only in the old range to removed. Values
+     * between the two skip bounds, given as minimums, are not reported.
+     */
+    private void collect(BSTNode<T> first, BSTNode<T> end,
+                         Comparable<T> oldMin, Comparable<T> oldMax,
+                         Comparable<T> newMin, Comparable<T> newMax,
+                         Comparable<T> skipA, Comparable<T> skipB,
+                         List<T> added, List<T> removed) {
+        for (BSTNode<T> node = first; node != null && node != end; node = successor(node)) {
+            T value = node.data;
+            if (skipA != skipB && atOrAbove(skipA, true, value) != atOrAbove(skipB, true, value)) {
+                continue;
+            }
+            boolean inOld = atOrAbove(oldMin, true, value) && !atOrAbove(oldMax, false, value);
+            boolean inNew = atOrAbove(newMin, true, value) && !atOrAbove(newMax, false, value);
+            List<T> into = inNew && !inOld ? added : inOld && !inNew ? removed : null;
+            if (into != null) {
+                into.add(value);
+                if (node instanceof RBTNode) {
+                    RBTNode<T> bucket = (RBTNode<T>) node;
+                    for (int i = 0; i < bucket.getDuplicateCount(); i++) {
+                        into.add(bucket.getDuplicate(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks which side of a bound value falls on. For a minimum, values
+     * at or above it are on its upper side; for a maximum, only the values
+     * strictly above it are. A null bound has every value on its upper side
+     * as a minimum, and none as a maximum.
+     */
+    private static <T> boolean atOrAbove(Comparable<T> bound, boolean isMin, T value) {
+        if (bound == null) {
+            return isMin;
+        }
+        int comparison = bound.compareTo(value);
+        return isMin ? comparison <= 0 : comparison < 0;
+    }
+
+    /**
+     * @return the first node on the upper side of bound, or null if there
+     * is none
+     */
+    private BSTNode<T> firstAbove(Comparable<T> bound, boolean isMin) {
+        BSTNode<T> first = null;
+        BSTNode<T> node = tree.root;
+        while (node != null) {
+            if (atOrAbove(bound, isMin, node.data)) {
+                first = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return the node after node in order, or null if node is the last
+     */
+    private static <T> BSTNode<T> successor(BSTNode<T> node) {
+        if (node.right != null) {
+            node = node.right;
+            while (node.left != null) {
+                node = node.left;
+            }
+            return node;
+        }
+        while (node.up != null && node.up.right == node) {
+            node = node.up;
+        }
+        return node.up;
+    }
+}
@@ -1,3 +1,10 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -6,7 +13,44 @@ import static org.junit.jupiter.api.Assertions.*;
  * the BSTRotation class. It also includes JUnit test methods to verify
  * the correctness of the insertion and red property enforcement.
  */
-public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
+public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T>
+    implements IterableSortedCollection<T> {
+
+    // bounds applied to every iterator created by this tree, null when unbounded
+    protected Comparable<T> iteratorMin = null;
+    protected Comparable<T> iteratorMax = null;
+
+    // when true, values equal to an existing node are added to its bucket
+    // instead of being inserted as new nodes
+    protected boolean bucketDuplicates = false;
+    // number of values in the tree, including those stored in buckets, so
+    // that size() does not have to walk the tree
+    protected int count = 0;
+    // black height of the subtree last returned by merge or join, which
+    // return the subtree itself
+    private int mergedHeight;
+
+    /**
+     * Creates an empty tree that stores every value in its own node.
+     */
+    public RedBlackTree() {
+    }
+
+    /**
+     * Creates an empty tree that keeps one node per distinct key and stores
+     * values that compare equal to an existing node in that node's bucket.
+     * For orderings with few distinct keys, such as songs ordered by
+     * loudness, this keeps the tree as shallow as the number of distinct keys
+     * allows and avoids rebalancing for every duplicate. Iteration, size and
+     * contains behave the same as for an unbucketed tree, and equal values
+     * are still iterated in the order they were inserted.
+     * @return a new, empty bucketed tree
+     */
+    public static <T extends Comparable<T>> RedBlackTree<T> bucketed() {
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        tree.bucketDuplicates = true;
+        return tree;
+    }
 
     /**
      * Overrides the insert method to ensure nodes are inserted according to
@@ -19,6 +63,12 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
         if (data == null) {
             throw new NullPointerException("Cannot insert null values");
         }
+        count++;
+
+        if (bucketDuplicates && root != null) {
+            insertBucketed(data);
+            return;
+        }
 
         // Insert the new node using BinarySearchTree's insertHelper
         RBTNode<T> newNode = new RBTNode<>(data); // Ensure the new node is red by default
@@ -35,6 +85,367 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
         ((RBTNode<T>) this.root).isRed = false;
     }
 
+    /**
+     * Inserts data into a non-empty tree that buckets duplicates: one descent
+     * either finds the node with an equal key, and adds data to its bucket,
+     * or finds where to attach a new red node.
+     * @param data the new value to be inserted into the tree
+     */
+    private void insertBucketed(T data) {
+        BSTNode<T> subtree = root;
+        while (true) {
+            int comparison = data.compareTo(subtree.data);
+            if (comparison == 0) {
+                ((RBTNode<T>) subtree).addDuplicate(data);
+                return;
+            }
+            BSTNode<T> next = comparison < 0 ? subtree.left : subtree.right;
+            if (next == null) {
+                break;
+            }
+            subtree = next;
+        }
+        RBTNode<T> newNode = new RBTNode<>(data);
+        newNode.up = subtree;
+        if (data.compareTo(subtree.data) < 0) {
+            subtree.left = newNode;
+        } else {
+            subtree.right = newNode;
+        }
+        ensureRedProperty(newNode);
+    }
+
+    /**
+     * Inserts a batch of values. The batch is sorted (the sort is stable)
+     * and then merged into the tree in one of two ways, neither of which
+     * repairs the tree after every value:
+     *
+     * When the batch is small compared to the tree, it is split around the
+     * root's value, each part is merged into one child recursively, and the
+     * two results are joined back with the root between them. A join only
+     * walks down the spine of the taller side to the black height of the
+     * shorter one and repairs that one spot, so this only visits the regions
+     * of the tree that the batch lands in, and takes O(m log(n / m + 1)) time
+     * for m values merged into n.
+     *
+     * Otherwise the batch is merged with the values already in the tree and
+     * the whole tree is rebuilt as a balanced red-black tree in O(n + m log m)
+     * time, reusing the existing nodes.
+     *
+     * Either way, equal values end up in the same order as if they were
+     * inserted one at a time: values already in the tree first, then the
+     * batch in its order.
+     * @param data the new values to be inserted into the tree
+     * @throws NullPointerException if data, or any value in it, is null
+     */
+    @Override
+    public void insertAll(Collection<? extends T> data) throws NullPointerException {
+        List<T> batch = new ArrayList<>(data);
+        for (T value : batch) {
+            if (value == null) {
+                throw new NullPointerException("Cannot insert null values");
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.sort(null);
+        int existing = size();
+        if (batch.size() < existing / 8) {
+            RBTNode<T> merged = merge((RBTNode<T>) root, blackHeightOf((RBTNode<T>) root),
+                                      batch, 0, batch.size());
+            merged.up = null;
+            merged.isRed = false;
+            root = merged;
+            count += batch.size();
+            return;
+        }
+
+        // collect the tree's nodes in order, so they can be relinked as is
+        List<RBTNode<T>> current = new ArrayList<>(existing);
+        ArrayDeque<BSTNode<T>> stack = new ArrayDeque<>();
+        BSTNode<T> node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            current.add((RBTNode<T>) node);
+            node = node.right;
+        }
+
+        // merge the batch with the tree's nodes, creating nodes only for the
+        // new values; equal new values join the previous node's bucket when
+        // duplicates are bucketed
+        List<RBTNode<T>> nodes = new ArrayList<>(current.size() + batch.size());
+        int next = 0;
+        for (T value : batch) {
+            while (next < current.size() && current.get(next).data.compareTo(value) <= 0) {
+                nodes.add(current.get(next++));
+            }
+            addNode(nodes, value);
+        }
+        while (next < current.size()) {
+            nodes.add(current.get(next++));
+        }
+        root = buildBalanced(nodes);
+        count += batch.size();
+    }
+
+    /**
+     * Merges the sorted values batch[lo, hi) into the subtree rooted at node,
+     * by splitting them around node's value, merging each part into one of
+     * node's children, and joining the results with node between them.
+     * Subtrees that no value lands in are returned as they are. Black
+     * heights are passed down rather than counted again for every join.
+     * @param height the black height of the subtree
+     * @return the root of the merged subtree, which may be red; its black
+     *     height once the root is made black is left in mergedHeight
+     */
+    private RBTNode<T> merge(RBTNode<T> node, int height, List<T> batch, int lo, int hi) {
+        if (lo >= hi) {
+            mergedHeight = node != null && node.isRed ? height + 1 : height;
+            return node;
+        }
+        if (node == null && hi - lo == 1) {
+            mergedHeight = 1;
+            RBTNode<T> leaf = new RBTNode<>(batch.get(lo));
+            leaf.isRed = false;
+            return leaf;
+        }
+        if (node == null) {
+            List<RBTNode<T>> nodes = new ArrayList<>(hi - lo);
+            for (T value : batch.subList(lo, hi)) {
+                addNode(nodes, value);
+            }
+            RBTNode<T> built = buildBalanced(nodes);
+            mergedHeight = blackHeightOf(built);
+            return built;
+        }
+        // values equal to node go after it, into its bucket or right subtree
+        int less = boundary(batch, lo, hi, node.data, false);
+        int notAbove = less;
+        if (bucketDuplicates) {
+            notAbove = boundary(batch, less, hi, node.data, true);
+            for (T value : batch.subList(less, notAbove)) {
+                node.addDuplicate(value);
+            }
+        }
+        int childHeight = node.isRed ? height : height - 1;
+        RBTNode<T> left = merge(node.getLeft(), childHeight, batch, lo, less);
+        int leftHeight = mergedHeight;
+        RBTNode<T> right = merge(node.getRight(), childHeight, batch, notAbove, hi);
+        return join(left, leftHeight, node, right, mergedHeight);
+    }
+
+    /**
+     * @return the first index in the sorted batch[lo, hi) whose value is
+     * above pivot, or at least pivot when inclusive is false
+     */
+    private int boundary(List<T> batch, int lo, int hi, T pivot, boolean inclusive) {
+        // deep in the tree most slices lie wholly on one side of the pivot
+        if (lo < hi && isAbove(batch.get(lo), pivot, inclusive)) {
+            return lo;
+        }
+        if (lo < hi && !isAbove(batch.get(hi - 1), pivot, inclusive)) {
+            return hi;
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (isAbove(batch.get(mid), pivot, inclusive)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return true if value is above pivot, or at least pivot when
+     * inclusive is false
+     */
+    private boolean isAbove(T value, T pivot, boolean inclusive) {
+        int comparison = value.compareTo(pivot);
+        return comparison > 0 || (!inclusive && comparison == 0);
+    }
+
+    /**
+     * Joins two red-black trees and a node whose value lies between them
+     * into one red-black tree. The roots of both trees are made black, then
+     * middle is linked in as a red node in place of the black node on the
+     * facing spine of the taller tree that has the shorter tree's black
+     * height, and ensureRedProperty repairs a red parent from there up. This
+     * takes time proportional to the difference in black height.
+     * @param left the tree of values before middle, or null
+     * @param leftHeight the black height of left once its root is black
+     * @param middle the node to join them with, whose children are replaced
+     * @param right the tree of values after middle, or null
+     * @param rightHeight the black height of right once its root is black
+     * @return the root of the joined tree, which is black; its black height
+     *     is left in mergedHeight
+     */
+    private RBTNode<T> join(RBTNode<T> left, int leftHeight, RBTNode<T> middle,
+                            RBTNode<T> right, int rightHeight) {
+        makeRoot(left);
+        makeRoot(right);
+        middle.up = null;
+        if (leftHeight == rightHeight) {
+            link(middle, left, right);
+            middle.isRed = false;
+            mergedHeight = leftHeight + 1;
+            return middle;
+        }
+
+        // the node on the spine whose black height matches the shorter tree
+        boolean tallerLeft = leftHeight > rightHeight;
+        int target = Math.min(leftHeight, rightHeight);
+        int height = Math.max(leftHeight, rightHeight);
+        RBTNode<T> parent = null;
+        RBTNode<T> spine = tallerLeft ? left : right;
+        while (height > target || (spine != null && spine.isRed)) {
+            if (!spine.isRed) {
+                height--;
+            }
+            parent = spine;
+            spine = tallerLeft ? spine.getRight() : spine.getLeft();
+        }
+        middle.isRed = true;
+        middle.up = parent;
+        if (tallerLeft) {
+            link(middle, spine, right);
+            parent.right = middle;
+        } else {
+            link(middle, left, spine);
+            parent.left = middle;
+        }
+        // the repair rotates within the taller tree, so it is made the root
+        // while the repair runs
+        root = tallerLeft ? left : right;
+        ensureRedProperty(middle);
+
+        // the repair may have added a black node above the shorter tree, so
+        // its black height is counted on the path from there to the root
+        RBTNode<T> shorter = tallerLeft ? right : left;
+        mergedHeight = shorter == null ? 0 : target;
+        for (BSTNode<T> node = shorter == null ? middle : shorter.up; node != null; node = node.up) {
+            if (!((RBTNode<T>) node).isRed) {
+                mergedHeight++;
+            }
+        }
+        return (RBTNode<T>) root;
+    }
+
+    /**
+     * @return the number of black nodes on the path from node down its left
+     * children, which is the same on every path in a red-black tree
+     */
+    private int blackHeightOf(RBTNode<T> node) {
+        int height = 0;
+        for (; node != null; node = node.getLeft()) {
+            if (!node.isRed) {
+                height++;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Detaches node from its parent and colors it black, so that it is the
+     * root of a red-black tree of its own.
+     */
+    private void makeRoot(RBTNode<T> node) {
+        if (node != null) {
+            node.up = null;
+            node.isRed = false;
+        }
+    }
+
+    /**
+     * Makes left and right the children of node.
+     */
+    private void link(RBTNode<T> node, RBTNode<T> left, RBTNode<T> right) {
+        node.left = left;
+        node.right = right;
+        if (left != null) {
+            left.up = node;
+        }
+        if (right != null) {
+            right.up = node;
+        }
+    }
+
+    /**
+     * Appends a new node for value to nodes, which are in order and end with
+     * the values before value, or adds value to the last node's bucket when
+     * duplicates are bucketed and it is equal.
+     */
+    private void addNode(List<RBTNode<T>> nodes, T value) {
+        RBTNode<T> last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+        if (bucketDuplicates && last != null && value.compareTo(last.data) == 0) {
+            last.addDuplicate(value);
+        } else {
+            nodes.add(new RBTNode<>(value));
+        }
+    }
+
+    /**
+     * Links nodes into a balanced red-black tree. Every level above the
+     * deepest is complete, so coloring only the deepest level red gives every
+     * path the same number of black nodes.
+     * @return the black root of the tree, or null when nodes is empty
+     */
+    private RBTNode<T> buildBalanced(List<RBTNode<T>> nodes) {
+        int deepest = 31 - Integer.numberOfLeadingZeros(Math.max(1, nodes.size()));
+        boolean perfect = Integer.bitCount(nodes.size() + 1) == 1;
+        return buildBalanced(nodes, 0, nodes.size(), 0, perfect ? -1 : deepest);
+    }
+
+    /**
+     * Links nodes[lo, hi) into a balanced subtree rooted at its middle node.
+     * @param depth the depth of the subtree's root within the whole tree
+     * @param redDepth the depth whose nodes are colored red, or -1 for none
+     * @return the root of the subtree, or null when it is empty
+     */
+    private RBTNode<T> buildBalanced(List<RBTNode<T>> nodes, int lo, int hi, int depth, int redDepth) {
+        if (lo >= hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        RBTNode<T> node = nodes.get(mid);
+        node.isRed = depth == redDepth;
+        node.up = null;
+        node.left = buildBalanced(nodes, lo, mid, depth + 1, redDepth);
+        node.right = buildBalanced(nodes, mid + 1, hi, depth + 1, redDepth);
+        if (node.left != null) {
+            node.left.up = node;
+        }
+        if (node.right != null) {
+            node.right.up = node;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the number of values in the tree, including those stored in
+     * buckets, in constant time.
+     * @return the number of values in the collection, including duplicates
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Removes all values and duplicates from the collection.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        count = 0;
+    }
+
     /**
      * Checks if a new red node in the RedBlackTree causes a red property violation
      * by having a red parent. If this is not the case, the method terminates without
@@ -111,6 +522,99 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
         ((RBTNode<T>) this.root).isRed = false;
     }
 
+    /**
+     * Sets the minimum value for iterators created by this tree.
+     * @param min the smallest value to iterate over, or null to clear the minimum
+     */
+    @Override
+    public void setIteratorMin(Comparable<T> min) { this.iteratorMin = min; }
+
+    /**
+     * Sets the maximum value for iterators created by this tree.
+     * @param max the largest value to iterate over, or null to clear the maximum
+     */
+    @Override
+    public void setIteratorMax(Comparable<T> max) { this.iteratorMax = max; }
+
+    /**
+     * Returns an in-order iterator over the values between the current
+     * iterator min and max.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(iteratorMin, iteratorMax);
+    }
+
+    /**
+     * Returns an in-order iterator over the values in [min, max], without
+     * changing the bounds used by iterator(). Subtrees that lie entirely
+     * below min are never visited, so creating the iterator takes O(log n)
+     * time and each call to next takes amortized constant time.
+     * @param min the smallest value to return, or null for no minimum
+     * @param max the largest value to return, or null for no maximum
+     * @return the bounded iterator
+     */
+    protected Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+        return new BoundedIterator(min, max);
+    }
+
+    /**
+     * Iterates over the tree in order, keeping the path of unvisited
+     * ancestors on an explicit stack. The values in a node's bucket are
+     * returned right after the node's own data.
+     */
+    private class BoundedIterator implements Iterator<T> {
+        private final ArrayDeque<BSTNode<T>> stack = new ArrayDeque<>();
+        private final Comparable<T> min;
+        private final Comparable<T> max;
+        // node whose bucket is being returned, and the next position in it
+        private RBTNode<T> bucketNode = null;
+        private int bucketIndex = 0;
+
+        BoundedIterator(Comparable<T> min, Comparable<T> max) {
+            this.min = min;
+            this.max = max;
+            pushLeftPath(root);
+        }
+
+        // pushes node and its left descendants, skipping nodes below min
+        private void pushLeftPath(BSTNode<T> node) {
+            while (node != null) {
+                if (min != null && min.compareTo(node.data) > 0) {
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    node = node.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (bucketNode != null && bucketIndex < bucketNode.getDuplicateCount()) {
+                return true;
+            }
+            return !stack.isEmpty() && (max == null || max.compareTo(stack.peek().data) >= 0);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (bucketNode != null && bucketIndex < bucketNode.getDuplicateCount()) {
+                return bucketNode.getDuplicate(bucketIndex++);
+            }
+            BSTNode<T> node = stack.pop();
+            pushLeftPath(node.right);
+            if (bucketDuplicates && node instanceof RBTNode) {
+                bucketNode = (RBTNode<T>) node;
+                bucketIndex = 0;
+            }
+            return node.data;
+        }
+    }
+
     // ================= JUnit Test Methods ====================
 
     /**
@@ -170,4 +674,195 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
         assertEquals(1, tree.root.getLeft().getData()); // Left child should be 1
         assertEquals(10, tree.root.getRight().getData()); // Right child should be 10
     }
+
+    /**
+     * Test case for bounded iteration, checking that values are returned in
+     * order, including duplicates, and only between the iterator min and max.
+     */
+    @Test
+    public void testBoundedIteration() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int value : new int[] { 8, 3, 10, 1, 6, 14, 4, 7, 13, 6 }) {
+            tree.insert(value);
+        }
+        tree.setIteratorMin(4);
+        tree.setIteratorMax(10);
+        StringBuilder sb = new StringBuilder();
+        for (int value : tree) {
+            sb.append(value).append(' ');
+        }
+        assertEquals("4 6 6 7 8 10 ", sb.toString());
+    }
+
+    /**
+     * Test case for bucketing duplicates, checking that equal keys share one
+     * node while size, contains and iteration order are unchanged.
+     */
+    @Test
+    public void testBucketedDuplicates() {
+        // compare on the first character only, so many values share a key
+        String[] values = { "b1", "a1", "b2", "c1", "b3", "a2", "c2", "b4", "d1" };
+        RedBlackTree<Key> keys = RedBlackTree.bucketed();
+        for (String value : values) {
+            keys.insert(new Key(value));
+        }
+        assertEquals(9, keys.size());
+        assertEquals("[ b1(b), a1(b), c1(b), d1(r) ]", keys.root.toLevelOrderString());
+        StringBuilder sb = new StringBuilder();
+        for (Key key : keys) {
+            sb.append(key).append(' ');
+        }
+        assertEquals("a1 a2 b1 b2 b3 b4 c1 c2 d1 ", sb.toString());
+        assertTrue(keys.contains(new Key("c9")));
+        keys.setIteratorMin(new Key("b"));
+        keys.setIteratorMax(new Key("b"));
+        int count = 0;
+        for (Key key : keys) {
+            count++;
+        }
+        assertEquals(4, count);
+    }
+
+    /**
+     * Test value ordered only by the first character of its string.
+     */
+    private static class Key implements Comparable<Key> {
+        private final String value;
+        Key(String value) { this.value = value; }
+        @Override
+        public int compareTo(Key other) { return value.charAt(0) - other.value.charAt(0); }
+        @Override
+        public String toString() { return value; }
+    }
+
+    /**
+     * Test case for batch inserts, checking that values inserted through
+     * insertAll are iterated in the same order as values inserted one at a
+     * time, and that the rebuilt tree is still a valid red-black tree.
+     */
+    @Test
+    public void testInsertAll() {
+        RedBlackTree<Integer> batched = new RedBlackTree<>();
+        RedBlackTree<Integer> single = new RedBlackTree<>();
+        java.util.Random random = new java.util.Random(32);
+        for (int round = 0; round < 5; round++) {
+            List<Integer> batch = new ArrayList<>();
+            for (int i = 0; i < 100 + round * 37; i++) {
+                batch.add(random.nextInt(300));
+            }
+            batched.insertAll(batch);
+            for (int value : batch) {
+                single.insert(value);
+            }
+            assertTrue(blackHeight((RBTNode<Integer>) batched.root) > 0);
+            assertFalse(((RBTNode<Integer>) batched.root).isRed());
+        }
+        assertEquals(single.size(), batched.size());
+        List<Integer> expected = new ArrayList<>();
+        single.forEach(expected::add);
+        List<Integer> actual = new ArrayList<>();
+        batched.forEach(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Test case for batches that are small compared to the tree, which are
+     * joined into it rather than rebuilding it, checking that the tree stays
+     * a valid red-black tree and holds the same values in the same order as
+     * inserting them one at a time, with and without bucketed duplicates.
+     */
+    @Test
+    public void testInsertAllIntoLargeTree() {
+        java.util.Random random = new java.util.Random(32);
+        for (boolean bucketed : new boolean[] { false, true }) {
+            RedBlackTree<Integer> batched = bucketed ? RedBlackTree.bucketed() : new RedBlackTree<>();
+            RedBlackTree<Integer> single = bucketed ? RedBlackTree.bucketed() : new RedBlackTree<>();
+            List<Integer> initial = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                initial.add(random.nextInt(bucketed ? 500 : 1_000_000));
+            }
+            batched.insertAll(initial);
+            initial.forEach(single::insert);
+            for (int round = 0; round < 40; round++) {
+                List<Integer> batch = new ArrayList<>();
+                int size = 1 + random.nextInt(round % 2 == 0 ? 20 : 2000);
+                // some batches cluster in one region of the tree
+                int from = random.nextInt(900_000);
+                for (int i = 0; i < size; i++) {
+                    batch.add(round % 4 == 1 ? from + random.nextInt(1000)
+                              : random.nextInt(bucketed ? 600 : 1_100_000));
+                }
+                batched.insertAll(batch);
+                batch.forEach(single::insert);
+                assertTrue(blackHeight((RBTNode<Integer>) batched.root) > 0);
+                assertFalse(((RBTNode<Integer>) batched.root).isRed());
+                assertNull(batched.root.up);
+            }
+            assertEquals(single.size(), batched.size());
+            List<Integer> expected = new ArrayList<>();
+            single.forEach(expected::add);
+            List<Integer> actual = new ArrayList<>();
+            batched.forEach(actual::add);
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Test case for range cursors, checking over random slider moves, jumps
+     * and unbounded ends that applying each delta to the previous range gives
+     * exactly the new range, with and without bucketed duplicates.
+     */
+    @Test
+    public void testRangeCursor() {
+        java.util.Random random = new java.util.Random(44);
+        for (boolean bucketed : new boolean[] { false, true }) {
+            RedBlackTree<Integer> tree = bucketed ? RedBlackTree.bucketed() : new RedBlackTree<>();
+            for (int i = 0; i < 2000; i++) {
+                tree.insert(random.nextInt(500));
+            }
+            RangeCursor<Integer> cursor = new RangeCursor<>(tree);
+            List<Integer> range = new ArrayList<>(cursor.moveTo(100, 200).getAdded());
+            Integer low = 100;
+            Integer high = 200;
+            for (int move = 0; move < 300; move++) {
+                if (move % 50 == 49) {
+                    // jump somewhere else entirely, sometimes unbounded
+                    low = random.nextBoolean() ? null : random.nextInt(500);
+                    high = random.nextBoolean() ? null : random.nextInt(500);
+                } else {
+                    low = (low == null ? 0 : low) + random.nextInt(11) - 5;
+                    high = (high == null ? 499 : high) + random.nextInt(11) - 5;
+                }
+                RangeCursor.Delta<Integer> delta = cursor.moveTo(low, high);
+                for (Integer value : delta.getRemoved()) {
+                    assertTrue(range.remove(value));
+                }
+                range.addAll(delta.getAdded());
+                List<Integer> expected = new ArrayList<>();
+                tree.iterator(low, high).forEachRemaining(expected::add);
+                range.sort(null);
+                assertEquals(expected, range);
+            }
+        }
+    }
+
+    /**
+     * @return the number of black nodes on every path from node down to a
+     * null child, or -1 if paths differ or a red node has a red child
+     */
+    private static int blackHeight(RBTNode<Integer> node) {
+        if (node == null) {
+            return 1;
+        }
+        if (node.isRed() && ((node.getLeft() != null && node.getLeft().isRed())
+                             || (node.getRight() != null && node.getRight().isRed()))) {
+            return -1;
+        }
+        int left = blackHeight(node.getLeft());
+        int right = blackHeight(node.getRight());
+        if (left < 0 || left != right) {
+            return -1;
+        }
+        return left + (node.isRed() ? 0 : 1);
+    }
 }
@@ -0,0 +1,310 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class implements BackendInterface over a catalog that is partitioned
+ * across several RedBlackTree shards, each ordered by Loudness. Rows are
+ * assigned to shards by a hash of their title or by their year, and each
+ * shard parses and inserts its rows on its own thread, so ingest scales with
+ * the number of shards. Queries fan out to every shard in parallel, and the
+ * Loudness ordered results of the shards are combined with a k-way merge
+ * (or, for fiveMost, by merging each shard's own top five).
+ */
+public class ShardedBackend implements BackendInterface {
+
+    /**
+     * How rows are assigned to shards.
+     */
+    public enum Partitioning {
+        // by the hash code of the song's title, which spreads rows evenly
+        BY_TITLE_HASH,
+        // by the song's year, so songs of one year are stored together
+        BY_YEAR
+    }
+
+    // the order of songs in each shard: by loudness, then by title
+    static final Comparator<Song> LOUDNESS_ORDER =
+        Song.BY_LOUDNESS.thenComparing(Song::getTitle);
+    // the order of fiveMost results: most danceable first, ties in loudness order
+    private static final Comparator<Song> DANCEABILITY_ORDER =
+        Song.BY_DANCEABILITY.reversed().thenComparing(LOUDNESS_ORDER);
+    // number of rows a shard parses and inserts as one task
+    private static final int BATCH_SIZE = 10_000;
+
+    private final List<RedBlackTree<Song>> shards = new ArrayList<>();
+    private final Partitioning partitioning;
+    private final ExecutorService executor;
+    private Integer loudnessLow = null;
+    private Integer loudnessHigh = null;
+    private Integer bpmFilter = null;
+
+    /**
+     * Creates a backend with shardCount empty shards, and one daemon thread
+     * per shard to ingest and query them.
+     * @param shardCount the number of shards to partition songs across
+     * @param partitioning how rows are assigned to shards
+     * @throws IllegalArgumentException if shardCount is less than 1
+     */
+    public ShardedBackend(int shardCount, Partitioning partitioning) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new RedBlackTree<>());
+        }
+        this.partitioning = partitioning;
+        this.executor = Executors.newFixedThreadPool(shardCount, task -> {
+            Thread thread = new Thread(task, "shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the number of songs stored in each shard
+     */
+    public int[] shardSizes() {
+        int[] sizes = new int[shards.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = shards.get(i).size();
+        }
+        return sizes;
+    }
+
+    /**
+     * Stops the threads used by this backend. No other methods can be called
+     * afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Reads the songs in filename, routing each row to its shard by a cheap
+     * look at its title or year column. Every shard's rows are parsed and
+     * inserted in batches on the shard's own thread, in file order, while
+     * this thread keeps reading.
+     * @param filename the name of the csv file to load data from
+     * @throws IOException when there is trouble finding or reading the file
+     */
+    @Override
+    public void readData(String filename) throws IOException {
+        int shardCount = shards.size();
+        List<List<String>> pending = new ArrayList<>();
+        List<CompletableFuture<Void>> tails = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            pending.add(new ArrayList<>());
+            tails.add(CompletableFuture.completedFuture(null));
+        }
+        IOException readFailure = null;
+        RuntimeException failure = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            reader.readLine(); // Skip the header row
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int shard = shardOf(line);
+                List<String> rows = pending.get(shard);
+                rows.add(line);
+                if (rows.size() == BATCH_SIZE) {
+                    tails.set(shard, submitBatch(tails.get(shard), shard, rows));
+                    pending.set(shard, new ArrayList<>());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filename);
+            readFailure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        // the rows read so far are still inserted, and every shard is waited
+        // for, even when reading failed part way through the file
+        for (int shard = 0; shard < shardCount; shard++) {
+            tails.set(shard, submitBatch(tails.get(shard), shard, pending.get(shard)));
+        }
+        try {
+            CompletableFuture.allOf(tails.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            Exception primary = readFailure != null ? readFailure : failure;
+            if (primary == null) {
+                throw e;
+            }
+            primary.addSuppressed(cause);
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Chains a task that parses rows and inserts them into a shard after the
+     * shard's previous task, so that each shard is only changed by one
+     * thread at a time.
+     */
+    private CompletableFuture<Void> submitBatch(CompletableFuture<Void> previous, int shard,
+                                                List<String> rows) {
+        if (rows.isEmpty()) {
+            return previous;
+        }
+        return previous.thenRunAsync(() -> {
+            List<Song> songs = new ArrayList<>(rows.size());
+            for (String row : rows) {
+                try {
+                    songs.add(Backend.parseSong(row, LOUDNESS_ORDER));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+            shards.get(shard).insertAll(songs);
+        }, executor);
+    }
+
+    /**
+     * @return the shard that the song in row belongs to
+     */
+    private int shardOf(String row) {
+        int firstComma = row.indexOf(',');
+        if (partitioning == Partitioning.BY_TITLE_HASH || firstComma < 0) {
+            String title = firstComma < 0 ? row : row.substring(0, firstComma);
+            return Math.floorMod(title.hashCode(), shards.size());
+        }
+        // the year is the fourth column
+        int start = firstComma;
+        for (int column = 1; column < 3 && start >= 0; column++) {
+            start = row.indexOf(',', start + 1);
+        }
+        int end = start < 0 ? -1 : row.indexOf(',', start + 1);
+        if (end < 0) {
+            return 0; // malformed rows are reported by the shard that parses them
+        }
+        try {
+            return Math.floorMod(Integer.parseInt(row.substring(start + 1, end).trim()), shards.size());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public List<String> getRange(Integer low, Integer high) {
+        this.loudnessLow = low;
+        this.loudnessHigh = high;
+        return titlesOf(mergeByLoudness(fanOut()));
+    }
+
+    @Override
+    public List<String> setFilter(Integer threshold) {
+        this.bpmFilter = threshold;
+        return titlesOf(mergeByLoudness(fanOut()));
+    }
+
+    /**
+     * Merges the five most danceable songs of each shard into the five most
+     * danceable songs overall.
+     * @return the titles of the five most danceable matching songs
+     */
+    @Override
+    public List<String> fiveMost() {
+        PriorityQueue<Song> best = new PriorityQueue<>(DANCEABILITY_ORDER.reversed());
+        for (List<Song> shardResult : fanOut()) {
+            for (Song song : shardResult) {
+                best.add(song);
+                if (best.size() > 5) {
+                    best.poll(); // drop the least danceable
+                }
+            }
+        }
+        List<Song> top = new ArrayList<>(best);
+        top.sort(DANCEABILITY_ORDER);
+        return titlesOf(top);
+    }
+
+    /**
+     * Queries every shard in parallel for the songs within the current
+     * loudness range that pass the current BPM filter.
+     * @return each shard's matching songs, in loudness order
+     */
+    private List<List<Song>> fanOut() {
+        final Integer low = loudnessLow;
+        final Integer high = loudnessHigh;
+        final Integer threshold = bpmFilter;
+        List<Future<List<Song>>> futures = new ArrayList<>();
+        for (RedBlackTree<Song> shard : shards) {
+            futures.add(executor.submit(() -> {
+                List<Song> matches = new ArrayList<>();
+                // bounds that compare against loudness only, so the iterator
+                // skips straight to the range within the shard
+                Comparable<Song> min = low == null ? null : song -> Integer.compare(low, song.getLoudness());
+                Comparable<Song> max = high == null ? null : song -> Integer.compare(high, song.getLoudness());
+                java.util.Iterator<Song> iterator = shard.iterator(min, max);
+                while (iterator.hasNext()) {
+                    Song song = iterator.next();
+                    if (threshold == null || song.getBPM() > threshold) {
+                        matches.add(song);
+                    }
+                }
+                return matches;
+            }));
+        }
+        List<List<Song>> results = new ArrayList<>();
+        for (Future<List<Song>> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while querying shards", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Querying a shard failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merges lists that are each in loudness order into one list in
+     * loudness order, using a heap holding the head of every list.
+     */
+    private static List<Song> mergeByLoudness(List<List<Song>> sortedLists) {
+        int total = 0;
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) ->
+            LOUDNESS_ORDER.compare(sortedLists.get(a[0]).get(a[1]), sortedLists.get(b[0]).get(b[1])));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            total += sortedLists.get(i).size();
+            if (!sortedLists.get(i).isEmpty()) {
+                heads.add(new int[] { i, 0 });
+            }
+        }
+        List<Song> merged = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Song> list = sortedLists.get(head[0]);
+            merged.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private static List<String> titlesOf(List<Song> songs) {
+        List<String> titles = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            titles.add(song.getTitle());
+        }
+        return titles;
+    }
+}
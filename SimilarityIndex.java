@@ -0,0 +1,300 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class finds the songs most similar to a given song, as the nearest
+ * neighbors of its BPM, energy, danceability, loudness and liveness. Each
+ * feature is normalized to a z-score over the indexed songs, so that every
+ * feature counts the same, and similarity is the Euclidean distance between
+ * normalized feature vectors.
+ *
+ * Songs are kept in a five-dimensional ImplicitKdTree, which is rebuilt
+ * lazily after songs are added, the same as for LoudnessBpmIndex. A query
+ * visits the half of each subtree that holds the target first, and skips
+ * the other half when it cannot hold anything closer than the k nearest
+ * songs found so far.
+ */
+public class SimilarityIndex {
+
+    // the features songs are compared by
+    private static final List<ToIntFunction<Song>> FEATURES = List.of(
+        Song::getBPM, Song::getEnergy, Song::getDanceability, Song::getLoudness,
+        Song::getLiveness);
+    private static final int DIMENSIONS = FEATURES.size();
+
+    // songs arranged as an implicit k-d tree, split on feature depth % 5
+    private final ImplicitKdTree tree = new ImplicitKdTree(byFeature());
+
+    // normalized features of the songs in tree order, DIMENSIONS values per song
+    private double[] coordinates = new double[0];
+    // the mean and 1 / standard deviation of each feature
+    private double[] means = new double[DIMENSIONS];
+    private double[] scales = new double[DIMENSIONS];
+
+    /**
+     * A song found by a query, and its distance from the target.
+     */
+    private static class Neighbor {
+        private final Song song;
+        private final double distance;
+
+        private Neighbor(Song song, double distance) {
+            this.song = song;
+            this.distance = distance;
+        }
+    }
+
+    // the furthest neighbor first, so it is the one replaced by a closer song
+    private static final Comparator<Neighbor> FURTHEST_FIRST =
+        (a, b) -> Double.compare(b.distance, a.distance);
+
+    /**
+     * Adds a song to the index. The tree is rebuilt lazily, the next time it
+     * is queried, so that bulk loads only pay for one build.
+     * @param song the song to add
+     * @throws NullPointerException if song is null
+     */
+    public void add(Song song) {
+        if (song == null) {
+            throw new NullPointerException("Cannot index null values");
+        }
+        tree.add(song);
+    }
+
+    /**
+     * @return the number of indexed songs
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Finds the k indexed songs closest to target that pass filter. Target
+     * itself is never returned, though other songs with the same features
+     * are. Target does not need to be indexed.
+     * @param target the song to find similar songs to
+     * @param k the largest number of songs to return
+     * @param filter the condition returned songs must satisfy
+     * @return up to k songs, the most similar first
+     */
+    public List<Song> nearest(Song target, int k, Predicate<Song> filter) {
+        if (tree.build()) {
+            normalize(tree.songs(), means, scales);
+            coordinates = new double[tree.size() * DIMENSIONS];
+            for (int i = 0; i < tree.size(); i++) {
+                project(tree.get(i), coordinates, i * DIMENSIONS);
+            }
+        }
+        double[] query = new double[DIMENSIONS];
+        project(target, query, 0);
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(FURTHEST_FIRST);
+        if (k > 0) {
+            search(0, tree.size(), 0, query, target, k, filter, best);
+        }
+        return closestFirst(best);
+    }
+
+    /**
+     * Finds the k songs closest to target by computing the distance to every
+     * one of songs, normalizing features over all of songs. This gives the
+     * same distances as an index holding songs, and is what nearest is
+     * measured against.
+     * @return up to k songs, the most similar first
+     */
+    public static List<Song> nearestByScan(List<Song> songs, Song target, int k,
+                                           Predicate<Song> filter) {
+        double[] means = new double[DIMENSIONS];
+        double[] scales = new double[DIMENSIONS];
+        normalize(songs, means, scales);
+        double[] query = new double[DIMENSIONS];
+        double[] point = new double[DIMENSIONS];
+        projectWith(target, query, 0, means, scales);
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(FURTHEST_FIRST);
+        for (Song song : songs) {
+            if (song == target || !filter.test(song) || k <= 0) {
+                continue;
+            }
+            projectWith(song, point, 0, means, scales);
+            offer(best, k, song, distance(point, 0, query));
+        }
+        return closestFirst(best);
+    }
+
+    /**
+     * Computes the mean and 1 / standard deviation of every feature over
+     * songs. A feature that does not vary is given a scale of 1.
+     */
+    private static void normalize(List<Song> songs, double[] means, double[] scales) {
+        int size = songs.size();
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double sum = 0;
+            double squares = 0;
+            for (Song song : songs) {
+                double value = FEATURES.get(d).applyAsInt(song);
+                sum += value;
+                squares += value * value;
+            }
+            double mean = size == 0 ? 0 : sum / size;
+            double variance = size == 0 ? 0 : squares / size - mean * mean;
+            means[d] = mean;
+            scales[d] = variance > 1e-9 ? 1 / Math.sqrt(variance) : 1;
+        }
+    }
+
+    private void project(Song song, double[] into, int offset) {
+        projectWith(song, into, offset, means, scales);
+    }
+
+    private static void projectWith(Song song, double[] into, int offset,
+                                    double[] means, double[] scales) {
+        for (int d = 0; d < DIMENSIONS; d++) {
+            into[offset + d] = (FEATURES.get(d).applyAsInt(song) - means[d]) * scales[d];
+        }
+    }
+
+    /**
+     * @return the squared distance between the point at coordinates[offset]
+     * and query
+     */
+    private static double distance(double[] coordinates, int offset, double[] query) {
+        double sum = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double difference = coordinates[offset + d] - query[d];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    /**
+     * Adds song to best if it is one of the k closest seen so far.
+     */
+    private static void offer(PriorityQueue<Neighbor> best, int k, Song song, double distance) {
+        if (best.size() < k) {
+            best.add(new Neighbor(song, distance));
+        } else if (distance < best.peek().distance) {
+            best.poll();
+            best.add(new Neighbor(song, distance));
+        }
+    }
+
+    private static List<Song> closestFirst(PriorityQueue<Neighbor> best) {
+        List<Neighbor> neighbors = new ArrayList<>(best);
+        neighbors.sort(FURTHEST_FIRST.reversed());
+        List<Song> songs = new ArrayList<>(neighbors.size());
+        for (Neighbor neighbor : neighbors) {
+            songs.add(neighbor.song);
+        }
+        return songs;
+    }
+
+    /**
+     * @return an ordering of songs by each feature, for the axes of the tree
+     */
+    private static List<Comparator<Song>> byFeature() {
+        List<Comparator<Song>> axes = new ArrayList<>(DIMENSIONS);
+        for (ToIntFunction<Song> feature : FEATURES) {
+            axes.add(Comparator.comparingInt(feature));
+        }
+        return axes;
+    }
+
+    /**
+     * Visits the subtree stored in tree[lo, hi), adding songs closer than
+     * the furthest of the k best found so far to best.
+     */
+    private void search(int lo, int hi, int depth, double[] query, Song target, int k,
+                        Predicate<Song> filter, PriorityQueue<Neighbor> best) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Song song = tree.get(mid);
+            if (song != target && filter.test(song)) {
+                offer(best, k, song, distance(coordinates, mid * DIMENSIONS, query));
+            }
+            // songs left of the median are no larger on this feature, and
+            // those to its right no smaller, so the far side is at least this
+            // far away on this feature alone
+            int axis = depth % DIMENSIONS;
+            double difference = query[axis] - coordinates[mid * DIMENSIONS + axis];
+            if (difference < 0) {
+                search(lo, mid, depth + 1, query, target, k, filter, best);
+                lo = mid + 1;
+            } else {
+                search(mid + 1, hi, depth + 1, query, target, k, filter, best);
+                hi = mid;
+            }
+            if (best.size() == k && difference * difference > best.peek().distance) {
+                return;
+            }
+            depth++;
+        }
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that the index finds songs at the same distances as a scan, with
+     * and without a filter.
+     */
+    @Test
+    public void testNearestMatchesScan() {
+        Random random = new Random(40);
+        SimilarityIndex index = new SimilarityIndex();
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Song song = new Song("Song " + i, "Artist", "pop", 2015, 60 + random.nextInt(140),
+                                 random.nextInt(100), random.nextInt(100), -2 - random.nextInt(30),
+                                 random.nextInt(100));
+            songs.add(song);
+            index.add(song);
+        }
+        Predicate<Song> loud = song -> song.getLoudness() > -10;
+        for (int q = 0; q < 50; q++) {
+            Song target = songs.get(random.nextInt(songs.size()));
+            for (Predicate<Song> filter : List.<Predicate<Song>>of(song -> true, loud)) {
+                List<Song> expected = nearestByScan(songs, target, 10, filter);
+                List<Song> actual = index.nearest(target, 10, filter);
+                assertEquals(10, actual.size());
+                double[] query = new double[DIMENSIONS];
+                double[] point = new double[DIMENSIONS];
+                index.project(target, query, 0);
+                for (int i = 0; i < 10; i++) {
+                    assertTrue(actual.get(i) != target && filter.test(actual.get(i)));
+                    index.project(expected.get(i), point, 0);
+                    double expectedDistance = distance(point, 0, query);
+                    index.project(actual.get(i), point, 0);
+                    assertTrue(Math.abs(expectedDistance - distance(point, 0, query)) < 1e-9);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that songs added after a query are found by the next query, and
+     * that fewer than k songs are returned when fewer pass the filter.
+     */
+    @Test
+    public void testAddAfterQuery() {
+        SimilarityIndex index = new SimilarityIndex();
+        Song first = new Song("First", "A", "pop", 2015, 120, 50, 50, -5, 10);
+        Song far = new Song("Far", "A", "pop", 2015, 60, 0, 0, -30, 90);
+        index.add(first);
+        index.add(far);
+        assertTrue(index.nearest(first, 3, song -> true).get(0) == far);
+
+        Song twin = new Song("Twin", "B", "rock", 2016, 121, 50, 50, -5, 10);
+        index.add(twin);
+        List<Song> nearest = index.nearest(first, 3, song -> true);
+        assertEquals(2, nearest.size());
+        assertTrue(nearest.get(0) == twin);
+        assertTrue(index.nearest(first, 3, song -> song.getBPM() > 200).isEmpty());
+        assertThrows(NullPointerException.class, () -> index.add(null));
+    }
+}
@@ -4,6 +4,13 @@ import java.util.Comparator;
  * This class represents the data contained within a single song.
  * A comparator can be provided to each Song as the basis for it's compareTo,
  * otherwise songs will be ordered by their title.
+ *
+ * The six numeric attributes are packed into the bit fields of one long,
+ * which keeps each Song small. From the most significant bits down, the
+ * fields are loudness (8 bits, stored with a bias of 128 so that it sorts as
+ * unsigned), year (12 bits), BPM (10 bits), and energy, danceability and
+ * liveness (8 bits each). The comparators below compare the packed fields
+ * directly, without calling any accessors.
  */
 public class Song implements Comparable<Song> {
 
@@ -12,13 +19,36 @@ public class Song implements Comparable<Song> {
     private String title;
     private String artist;
     private String genres;
-    private int year;
-    private int bpm;
-    private int energy;
-    private int danceability;
-    private int loudness;
-    private int liveness;
+    private long attributes;
     private Comparator<Song> comparator;
+
+    // bit fields of the packed attributes, from the least significant bit
+    private static final int LIVENESS_SHIFT = 0;
+    private static final int DANCEABILITY_SHIFT = 8;
+    private static final int ENERGY_SHIFT = 16;
+    private static final int BPM_SHIFT = 24;
+    private static final int YEAR_SHIFT = 34;
+    private static final int LOUDNESS_SHIFT = 46;
+    private static final int LOUDNESS_BIAS = 128;
+
+    public static final int MAX_YEAR = (1 << 12) - 1;
+    public static final int MAX_BPM = (1 << 10) - 1;
+    public static final int MAX_PERCENT = (1 << 8) - 1; // energy, danceability and liveness
+    public static final int MIN_LOUDNESS = -LOUDNESS_BIAS;
+    public static final int MAX_LOUDNESS = LOUDNESS_BIAS - 1;
+
+    // orders songs by one attribute, comparing packed fields
+    public static final Comparator<Song> BY_LOUDNESS = (a, b) ->
+        Long.compare(a.getPackedAttributes() >>> LOUDNESS_SHIFT, b.getPackedAttributes() >>> LOUDNESS_SHIFT);
+    public static final Comparator<Song> BY_YEAR = (a, b) ->
+        Integer.compare(field(a.getPackedAttributes(), YEAR_SHIFT, 12),
+                        field(b.getPackedAttributes(), YEAR_SHIFT, 12));
+    public static final Comparator<Song> BY_BPM = (a, b) ->
+        Integer.compare(field(a.getPackedAttributes(), BPM_SHIFT, 10),
+                        field(b.getPackedAttributes(), BPM_SHIFT, 10));
+    public static final Comparator<Song> BY_DANCEABILITY = (a, b) ->
+        Integer.compare(field(a.getPackedAttributes(), DANCEABILITY_SHIFT, 8),
+                        field(b.getPackedAttributes(), DANCEABILITY_SHIFT, 8));
     
     // constructors
     
@@ -34,13 +64,8 @@ public class Song implements Comparable<Song> {
                 Comparator<Song> comparator) {
         this.title = title;
         this.artist = artist;
-        this.genres = genres;
-        this.year = year;
-        this.bpm = bpm;
-        this.energy = energy;
-        this.danceability = danceability;
-        this.loudness = loudness;
-        this.liveness = liveness;
+        this.genres = genre;
+        this.attributes = pack(year, bpm, energy, danceability, loudness, liveness);
         this.comparator = comparator;
     }
     
@@ -70,12 +95,52 @@ public class Song implements Comparable<Song> {
     public String getTitle() { return title; } 
     public String getArtist() { return artist; } 
     public String getGenres() { return genres; } 
-    public int getYear() { return year; } 
-    public int getBPM() { return bpm; } 
-    public int getEnergy() { return energy; } 
-    public int getDanceability() { return danceability; } 
-    public int getLoudness() { return loudness; } 
-    public int getLiveness() { return liveness; }
+    public int getYear() { return field(attributes, YEAR_SHIFT, 12); } 
+    public int getBPM() { return field(attributes, BPM_SHIFT, 10); } 
+    public int getEnergy() { return field(attributes, ENERGY_SHIFT, 8); } 
+    public int getDanceability() { return field(attributes, DANCEABILITY_SHIFT, 8); } 
+    public int getLoudness() { return field(attributes, LOUDNESS_SHIFT, 8) - LOUDNESS_BIAS; } 
+    public int getLiveness() { return field(attributes, LIVENESS_SHIFT, 8); }
+
+    /**
+     * @return the numeric attributes of this song packed into one long, as
+     * described above; subclasses that override the numeric accessors must
+     * override this too
+     */
+    public long getPackedAttributes() { return attributes; }
+
+    // packing
+
+    /**
+     * Packs numeric song attributes into the bit fields of one long.
+     * @return the packed attributes
+     * @throws IllegalArgumentException if an attribute does not fit its field
+     */
+    public static long pack(int year, int bpm, int energy, int danceability, int loudness,
+                            int liveness) {
+        checkRange("year", year, 0, MAX_YEAR);
+        checkRange("bpm", bpm, 0, MAX_BPM);
+        checkRange("energy", energy, 0, MAX_PERCENT);
+        checkRange("danceability", danceability, 0, MAX_PERCENT);
+        checkRange("loudness", loudness, MIN_LOUDNESS, MAX_LOUDNESS);
+        checkRange("liveness", liveness, 0, MAX_PERCENT);
+        return (long) (loudness + LOUDNESS_BIAS) << LOUDNESS_SHIFT
+            | (long) year << YEAR_SHIFT
+            | (long) bpm << BPM_SHIFT
+            | (long) energy << ENERGY_SHIFT
+            | (long) danceability << DANCEABILITY_SHIFT
+            | (long) liveness << LIVENESS_SHIFT;
+    }
+
+    private static int field(long packed, int shift, int bits) {
+        return (int) (packed >>> shift) & ((1 << bits) - 1);
+    }
+
+    private static void checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " " + value + " is outside of [" + min + ", " + max + "]");
+        }
+    }
     
 // comparisons
     
@@ -83,6 +148,8 @@ public class Song implements Comparable<Song> {
         if(this.comparator != null)
             return this.comparator.compare(this,other);
         else
-            return this.title.compareTo(other.title);
+            // through the accessor, so that views that read their title
+            // from elsewhere, such as SongStore.View, compare correctly
+            return this.getTitle().compareTo(other.getTitle());
     }
 }
\ No newline at end of file
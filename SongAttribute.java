@@ -0,0 +1,62 @@
+/**
+ * This enum lists the attributes of a Song that queries can refer to, and
+ * reads each attribute from a Song. Numeric attributes are read as Integers
+ * and the others as Strings.
+ */
+public enum SongAttribute {
+    TITLE(false),
+    ARTIST(false),
+    GENRE(false),
+    YEAR(true),
+    BPM(true),
+    ENERGY(true),
+    DANCEABILITY(true),
+    LOUDNESS(true),
+    LIVENESS(true);
+
+    private final boolean numeric;
+
+    private SongAttribute(boolean numeric) {
+        this.numeric = numeric;
+    }
+
+    /**
+     * @return true if this attribute holds an int, false if it holds a String
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * @param song the song to read this attribute from
+     * @return the value of this attribute in song, as an Integer for numeric
+     *     attributes and a String for the others
+     */
+    public Comparable<?> valueOf(Song song) {
+        if (numeric) {
+            return intValueOf(song);
+        }
+        switch (this) {
+        case TITLE: return song.getTitle();
+        case ARTIST: return song.getArtist();
+        default: return song.getGenres();
+        }
+    }
+
+    /**
+     * @param song the song to read this attribute from
+     * @return the value of this numeric attribute in song
+     * @throws UnsupportedOperationException if this attribute is not numeric
+     */
+    public int intValueOf(Song song) {
+        switch (this) {
+        case YEAR: return song.getYear();
+        case BPM: return song.getBPM();
+        case ENERGY: return song.getEnergy();
+        case DANCEABILITY: return song.getDanceability();
+        case LOUDNESS: return song.getLoudness();
+        case LIVENESS: return song.getLiveness();
+        default: throw new UnsupportedOperationException(this + " is not numeric");
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class maintains compressed bitmap indexes over bucketed Song
+ * attributes. Every added song is given the next row id, and that id is
+ * added to the bitmap of the bucket each of its attributes falls in:
+ * Loudness and year by exact value, BPM in buckets of BPM_BUCKET_WIDTH, and
+ * genre and artist by their normalized (trimmed, lower case) names. A query
+ * combining several predicates intersects the matching bitmaps and only
+ * looks up the songs whose row ids survive every predicate.
+ */
+public class SongBitmapIndex {
+
+    // number of consecutive BPM values that share one bitmap
+    public static final int BPM_BUCKET_WIDTH = 10;
+
+    // songs by row id
+    private List<Song> rows = new ArrayList<>();
+    private TreeMap<Integer, CompressedBitmap> loudness = new TreeMap<>();
+    private TreeMap<Integer, CompressedBitmap> bpmBuckets = new TreeMap<>();
+    private Map<Integer, CompressedBitmap> years = new HashMap<>();
+    private Map<String, CompressedBitmap> genres = new HashMap<>();
+    private Map<String, CompressedBitmap> artists = new HashMap<>();
+
+    /**
+     * Assigns song the next row id and adds it to the bitmaps of its buckets.
+     * @param song the song to index
+     * @throws NullPointerException if song is null
+     */
+    public void add(Song song) {
+        if (song == null) {
+            throw new NullPointerException("Cannot index null values");
+        }
+        int row = rows.size();
+        rows.add(song);
+        loudness.computeIfAbsent(song.getLoudness(), k -> new CompressedBitmap()).add(row);
+        bpmBuckets.computeIfAbsent(Math.floorDiv(song.getBPM(), BPM_BUCKET_WIDTH),
+                                   k -> new CompressedBitmap()).add(row);
+        years.computeIfAbsent(song.getYear(), k -> new CompressedBitmap()).add(row);
+        if (song.getGenres() != null) {
+            genres.computeIfAbsent(normalize(song.getGenres()), k -> new CompressedBitmap()).add(row);
+        }
+        if (song.getArtist() != null) {
+            artists.computeIfAbsent(normalize(song.getArtist()), k -> new CompressedBitmap()).add(row);
+        }
+    }
+
+    /**
+     * @return the number of songs that have been indexed
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Finds the songs that satisfy every one of the provided predicates, where
+     * a null argument means that attribute is not restricted.
+     * @param loudnessLow the minimum Loudness, or null for no minimum
+     * @param loudnessHigh the maximum Loudness, or null for no maximum
+     * @param bpmThreshold the exclusive minimum BPM, or null for no minimum
+     * @param year the exact year to match, or null for any year
+     * @param genre the genre to match (case insensitive), or null for any genre
+     * @param artist the artist to match (case insensitive), or null for any artist
+     * @return the matching songs ordered by Loudness
+     */
+    public List<Song> select(Integer loudnessLow, Integer loudnessHigh, Integer bpmThreshold,
+                             Integer year, String genre, String artist) {
+        List<CompressedBitmap> predicates = new ArrayList<>();
+        if (loudnessLow != null || loudnessHigh != null) {
+            predicates.add(union(loudness, loudnessLow, loudnessHigh));
+        }
+        if (bpmThreshold != null) {
+            // the bucket holding the threshold only partly matches, so the
+            // songs that survive are checked against the exact threshold below
+            predicates.add(union(bpmBuckets, Math.floorDiv(bpmThreshold, BPM_BUCKET_WIDTH), null));
+        }
+        if (year != null) {
+            predicates.add(years.getOrDefault(year, new CompressedBitmap()));
+        }
+        if (genre != null) {
+            predicates.add(genres.getOrDefault(normalize(genre), new CompressedBitmap()));
+        }
+        if (artist != null) {
+            predicates.add(artists.getOrDefault(normalize(artist), new CompressedBitmap()));
+        }
+
+        List<Song> matches = new ArrayList<>();
+        if (predicates.isEmpty()) {
+            matches.addAll(rows);
+        } else {
+            // intersect the smallest bitmaps first to keep intermediates small
+            predicates.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+            CompressedBitmap survivors = predicates.get(0);
+            for (int i = 1; i < predicates.size() && survivors.cardinality() > 0; i++) {
+                survivors = CompressedBitmap.and(survivors, predicates.get(i));
+            }
+            survivors.forEach(row -> {
+                Song song = rows.get(row);
+                if (bpmThreshold == null || song.getBPM() > bpmThreshold) {
+                    matches.add(song);
+                }
+            });
+        }
+        matches.sort(Song.BY_LOUDNESS);
+        return matches;
+    }
+
+    /**
+     * @return the number of songs with a Loudness in [low, high], where a null
+     * bound leaves that end of the range open
+     */
+    public int countLoudness(Integer low, Integer high) {
+        int count = 0;
+        for (CompressedBitmap bucket : range(loudness, low, high).values()) {
+            count += bucket.cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * @return an upper bound on the number of songs with a BPM larger than
+     * threshold: the size of every BPM bucket that may hold such songs
+     */
+    public int countBpmAbove(int threshold) {
+        int count = 0;
+        for (CompressedBitmap bucket : range(bpmBuckets, Math.floorDiv(threshold, BPM_BUCKET_WIDTH),
+                                             null).values()) {
+            count += bucket.cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of songs released in year
+     */
+    public int countYear(int year) {
+        CompressedBitmap bitmap = years.get(year);
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    /**
+     * @return the number of songs in genre (case insensitive)
+     */
+    public int countGenre(String genre) {
+        CompressedBitmap bitmap = genres.get(normalize(genre));
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    /**
+     * @return the number of songs by artist (case insensitive)
+     */
+    public int countArtist(String artist) {
+        CompressedBitmap bitmap = artists.get(normalize(artist));
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    /**
+     * @return the union of the bitmaps for every key in [low, high], where a
+     * null bound leaves that end of the range open
+     */
+    private static CompressedBitmap union(TreeMap<Integer, CompressedBitmap> buckets,
+                                          Integer low, Integer high) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (CompressedBitmap bucket : range(buckets, low, high).values()) {
+            result = CompressedBitmap.or(result, bucket);
+        }
+        return result;
+    }
+
+    /**
+     * @return the buckets for every key in [low, high], where a null bound
+     * leaves that end of the range open
+     */
+    private static Map<Integer, CompressedBitmap> range(TreeMap<Integer, CompressedBitmap> buckets,
+                                                        Integer low, Integer high) {
+        if (low != null && high != null) {
+            return low > high ? new TreeMap<>() : buckets.subMap(low, true, high, true);
+        } else if (low != null) {
+            return buckets.tailMap(low, true);
+        } else if (high != null) {
+            return buckets.headMap(high, true);
+        }
+        return buckets;
+    }
+
+    /**
+     * @return the key used for a genre or artist name
+     */
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that a query with several predicates matches a row by row scan,
+     * including row ids beyond the first 65536 and bpm values inside the
+     * partly matching bucket.
+     */
+    @Test
+    public void testSelectMatchesScan() {
+        SongBitmapIndex index = new SongBitmapIndex();
+        List<Song> all = new ArrayList<>();
+        String[] genres = { "pop", "dance pop", "rock" };
+        for (int i = 0; i < 70000; i++) {
+            Song song = new Song("S" + i, "Artist" + (i % 7), genres[i % 3], 2010 + i % 10,
+                                 60 + (i * 31) % 140, 50, i % 100, -(i * 17) % 60, 10);
+            index.add(song);
+            all.add(song);
+        }
+        List<Song> result = index.select(-40, -10, 123, null, "Dance Pop", null);
+        int expected = 0;
+        for (Song song : all) {
+            if (song.getLoudness() >= -40 && song.getLoudness() <= -10 && song.getBPM() > 123
+                && song.getGenres().equals("dance pop")) {
+                expected++;
+            }
+        }
+        assertEquals(expected, result.size());
+        assertEquals(all.size(), index.select(null, null, null, null, null, null).size());
+    }
+
+    /**
+     * Checks that predicates that no song satisfies produce an empty result.
+     */
+    @Test
+    public void testSelectNoMatches() {
+        SongBitmapIndex index = new SongBitmapIndex();
+        index.add(new Song("Only", "Someone", "pop", 2019, 100, 50, 50, -6, 10));
+        assertTrue(index.select(null, null, null, 1999, null, null).isEmpty());
+        assertTrue(index.select(-3, -1, null, null, null, null).isEmpty());
+        assertEquals(1, index.select(null, null, 99, 2019, "POP", " someone ").size());
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * SongColumns - songs that are stored by attribute rather than as Song
+ * objects, and identified by row id (the order in which they were stored).
+ * Numeric attributes can be read without creating a Song, so that a scan
+ * only creates Songs for the rows it returns.
+ */
+public interface SongColumns {
+
+    /**
+     * @return the number of stored songs
+     */
+    public int size();
+
+    // numeric attributes of the song with the given row id
+    public int getYear(int row);
+    public int getBPM(int row);
+    public int getEnergy(int row);
+    public int getDanceability(int row);
+    public int getLoudness(int row);
+    public int getLiveness(int row);
+
+    /**
+     * @param row the row id of the song
+     * @return a Song with the stored attributes
+     */
+    public Song toSong(int row);
+}
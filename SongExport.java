@@ -0,0 +1,228 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class writes songs out one at a time, as plain titles, CSV rows or
+ * newline delimited JSON objects, so that exporting a large result never
+ * holds more than one encoded song in memory. Songs can be written to any
+ * Appendable, or encoded as UTF-8 into a WritableByteChannel through a
+ * ChannelAppender, which reuses the same fixed size buffers for every song.
+ */
+public class SongExport {
+
+    /**
+     * The formats songs can be exported in.
+     */
+    public enum Format {
+        TITLES,  // one title per line
+        CSV,     // a header row, then one row per song
+        NDJSON   // one JSON object per line
+    }
+
+    private static final String CSV_HEADER =
+        "title,artist,top genre,year,bpm,nrgy,dnce,dB,live\n";
+
+    private SongExport() { }
+
+    /**
+     * Writes whatever must come before the first song in format, which is
+     * only the header row for CSV.
+     * @param format the export format
+     * @param out where the header is written
+     * @throws IOException if out cannot be written to
+     */
+    public static void writeHeader(Format format, Appendable out) throws IOException {
+        if (format == Format.CSV) {
+            out.append(CSV_HEADER);
+        }
+    }
+
+    /**
+     * Writes one song in format, followed by a newline.
+     * @param format the export format
+     * @param song the song to write
+     * @param out where the song is written
+     * @throws IOException if out cannot be written to
+     */
+    public static void writeSong(Format format, Song song, Appendable out) throws IOException {
+        switch (format) {
+        case TITLES:
+            out.append(String.valueOf(song.getTitle()));
+            break;
+        case CSV:
+            writeCsvField(out, song.getTitle());
+            out.append(',');
+            writeCsvField(out, song.getArtist());
+            out.append(',');
+            writeCsvField(out, song.getGenres());
+            out.append(',').append(Integer.toString(song.getYear()))
+                .append(',').append(Integer.toString(song.getBPM()))
+                .append(',').append(Integer.toString(song.getEnergy()))
+                .append(',').append(Integer.toString(song.getDanceability()))
+                .append(',').append(Integer.toString(song.getLoudness()))
+                .append(',').append(Integer.toString(song.getLiveness()));
+            break;
+        default:
+            out.append("{\"title\":");
+            writeJsonValue(out, song.getTitle());
+            out.append(",\"artist\":");
+            writeJsonValue(out, song.getArtist());
+            out.append(",\"genre\":");
+            writeJsonValue(out, song.getGenres());
+            out.append(",\"year\":").append(Integer.toString(song.getYear()))
+                .append(",\"bpm\":").append(Integer.toString(song.getBPM()))
+                .append(",\"energy\":").append(Integer.toString(song.getEnergy()))
+                .append(",\"danceability\":").append(Integer.toString(song.getDanceability()))
+                .append(",\"loudness\":").append(Integer.toString(song.getLoudness()))
+                .append(",\"liveness\":").append(Integer.toString(song.getLiveness()))
+                .append('}');
+            break;
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Writes value as a CSV field, quoting it only when it holds a comma,
+     * quote or line break. A null value is written as an empty field.
+     */
+    private static void writeCsvField(Appendable out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static void writeJsonValue(Appendable out, String value) throws IOException {
+        if (value == null) {
+            out.append("null");
+        } else {
+            BackendServer.writeJsonString(out, value);
+        }
+    }
+
+    /**
+     * An Appendable that encodes characters as UTF-8 into a channel. Characters
+     * are gathered in a fixed size buffer and encoded into a fixed size byte
+     * buffer, which is written to the channel whenever it fills, so the same
+     * two buffers are reused for everything written. Call flush to write out
+     * what is still buffered.
+     */
+    public static class ChannelAppender implements Appendable, Flushable {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars;
+        private final ByteBuffer bytes;
+
+        /**
+         * Creates an appender for channel with 8K characters of buffering.
+         */
+        public ChannelAppender(WritableByteChannel channel) {
+            this(channel, 8192);
+        }
+
+        /**
+         * Creates an appender for channel that buffers up to bufferChars
+         * characters before encoding them.
+         */
+        public ChannelAppender(WritableByteChannel channel, int bufferChars) {
+            this.channel = channel;
+            this.chars = CharBuffer.allocate(bufferChars);
+            // enough for every buffered character to take three bytes
+            this.bytes = ByteBuffer.allocateDirect(bufferChars * 3);
+        }
+
+        @Override
+        public ChannelAppender append(CharSequence csq) throws IOException {
+            String text = String.valueOf(csq);
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public ChannelAppender append(CharSequence csq, int start, int end) throws IOException {
+            if (csq == null) {
+                return append("null", start, end);
+            }
+            while (start < end) {
+                if (!chars.hasRemaining()) {
+                    encode();
+                }
+                int count = Math.min(chars.remaining(), end - start);
+                if (csq instanceof String) {
+                    chars.put((String) csq, start, start + count);
+                } else {
+                    for (int i = start; i < start + count; i++) {
+                        chars.put(csq.charAt(i));
+                    }
+                }
+                start += count;
+            }
+            return this;
+        }
+
+        @Override
+        public ChannelAppender append(char c) throws IOException {
+            if (!chars.hasRemaining()) {
+                encode();
+            }
+            chars.put(c);
+            return this;
+        }
+
+        /**
+         * Encodes and writes every buffered character to the channel. A high
+         * surrogate at the very end is kept until its low surrogate arrives.
+         * @throws IOException if the channel cannot be written to
+         */
+        @Override
+        public void flush() throws IOException {
+            encode();
+            write();
+        }
+
+        /**
+         * Moves buffered characters into the byte buffer, writing the byte
+         * buffer to the channel each time it fills.
+         */
+        private void encode() throws IOException {
+            chars.flip();
+            while (encoder.encode(chars, bytes, false) == CoderResult.OVERFLOW) {
+                write();
+            }
+            chars.compact();
+        }
+
+        private void write() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
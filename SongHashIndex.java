@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class indexes songs by title and artist in an open addressing hash
+ * table, so finding the song with a given title and artist takes expected
+ * constant time rather than O(log n) title comparisons in the tree. Each key
+ * holds the first song added with it, which lets the index tell a Backend
+ * that a newly loaded song is a duplicate.
+ *
+ * Songs are kept in one array and their hashes in a parallel int array, and
+ * collisions are resolved by linear probing. Comparing cached hashes first
+ * means titles and artists are only compared for songs that are almost
+ * certainly equal. The table doubles when it is more than half full, which
+ * keeps probe sequences short.
+ */
+public class SongHashIndex {
+
+    private Song[] songs = new Song[16];
+    private int[] hashes = new int[16];
+    private int size = 0;
+
+    /**
+     * Adds song under its title and artist, unless a song with the same title
+     * and artist was already added.
+     * @param song the song to index
+     * @return true if song was added, false if it is a duplicate
+     * @throws NullPointerException if song is null
+     */
+    public boolean add(Song song) {
+        if (song == null) {
+            throw new NullPointerException("Cannot index null values");
+        }
+        String title = song.getTitle();
+        String artist = song.getArtist();
+        int hash = hash(title, artist);
+        int slot = find(title, artist, hash);
+        if (songs[slot] != null) {
+            return false;
+        }
+        songs[slot] = song;
+        hashes[slot] = hash;
+        size++;
+        if (size * 2 > songs.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return the first song added with this title and artist, or null if
+     * there is none
+     */
+    public Song get(String title, String artist) {
+        return songs[find(title, artist, hash(title, artist))];
+    }
+
+    /**
+     * @return true if a song with this title and artist was added
+     */
+    public boolean contains(String title, String artist) {
+        return get(title, artist) != null;
+    }
+
+    /**
+     * @return the number of distinct title and artist pairs indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot holding the song with this title and artist, or the
+     * empty slot where it would be added
+     */
+    private int find(String title, String artist, int hash) {
+        int mask = songs.length - 1;
+        int slot = hash & mask;
+        while (songs[slot] != null) {
+            if (hashes[slot] == hash && Objects.equals(songs[slot].getTitle(), title)
+                && Objects.equals(songs[slot].getArtist(), artist)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Moves every song into a table twice the size.
+     */
+    private void grow() {
+        Song[] oldSongs = songs;
+        int[] oldHashes = hashes;
+        songs = new Song[oldSongs.length * 2];
+        hashes = new int[oldSongs.length * 2];
+        int mask = songs.length - 1;
+        for (int i = 0; i < oldSongs.length; i++) {
+            if (oldSongs[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (songs[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                songs[slot] = oldSongs[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * @return the hash of a title and artist, with its bits mixed so that
+     * similar titles do not land in neighboring slots
+     */
+    private static int hash(String title, String artist) {
+        int hash = Objects.hashCode(title) * 31 + Objects.hashCode(artist);
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that songs are found by title and artist as the table grows,
+     * including songs that share a title or an artist.
+     */
+    @Test
+    public void testAddAndGet() {
+        SongHashIndex index = new SongHashIndex();
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Song song = new Song("Song " + (i % 1000), "Artist " + (i / 1000), "pop", 2015,
+                                 100, 50, 50, -5, 10);
+            songs.add(song);
+            assertTrue(index.add(song));
+        }
+        assertEquals(5000, index.size());
+        for (Song song : songs) {
+            assertTrue(index.get(song.getTitle(), song.getArtist()) == song);
+        }
+        assertFalse(index.contains("Song 1", "Artist 5"));
+        assertFalse(index.contains("Song 1000", "Artist 0"));
+    }
+
+    /**
+     * Checks that a second song with the same title and artist is rejected
+     * and the first is kept, and that null titles and artists are keys too.
+     */
+    @Test
+    public void testDuplicates() {
+        SongHashIndex index = new SongHashIndex();
+        Song first = new Song("Hello", "Adele", "pop", 2015, 79, 43, 48, -6, 9);
+        assertTrue(index.add(first));
+        assertFalse(index.add(new Song("Hello", "Adele", "pop", 2016, 80, 40, 40, -7, 10)));
+        assertTrue(index.add(new Song("Hello", "Lionel Richie", "soul", 1984, 65, 30, 50, -10, 10)));
+        assertTrue(index.get("Hello", "Adele") == first);
+        assertTrue(index.add(new Song(null, null, "pop", 2015, 100, 50, 50, -5, 10)));
+        assertTrue(index.contains(null, null));
+        assertFalse(index.contains("Hello", null));
+        assertEquals(3, index.size());
+        assertThrows(NullPointerException.class, () -> index.add(null));
+    }
+}
@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class counts how many songs have each value of every numeric song
+ * attribute, so that percentiles and histograms of an attribute can be read
+ * without sorting the songs. Every numeric attribute of a Song fits a small
+ * fixed range (see Song.MAX_YEAR and the other limits), so one counter per
+ * possible value takes a few kilobytes in all, no matter how many songs are
+ * counted. Unlike a sketch, the counts are exact: percentiles and
+ * histograms have no error, and songs can be removed as well as added.
+ *
+ * Adding or removing a song takes constant time. A percentile takes at most
+ * one step per possible value of the attribute (4096 for the year, 256 for
+ * most others), and a histogram one step per value in the counted range.
+ */
+public class SongHistograms {
+
+    // counts[value - min] songs have each value of an attribute
+    private final Map<SongAttribute, long[]> counts = new EnumMap<>(SongAttribute.class);
+    private long size = 0;
+
+    /**
+     * Creates histograms with no songs counted.
+     */
+    public SongHistograms() {
+        for (SongAttribute attribute : SongAttribute.values()) {
+            if (attribute.isNumeric()) {
+                counts.put(attribute, new long[maxValue(attribute) - minValue(attribute) + 1]);
+            }
+        }
+    }
+
+    /**
+     * @return the smallest value a Song can hold for a numeric attribute
+     */
+    public static int minValue(SongAttribute attribute) {
+        return attribute == SongAttribute.LOUDNESS ? Song.MIN_LOUDNESS : 0;
+    }
+
+    /**
+     * @return the largest value a Song can hold for a numeric attribute
+     */
+    public static int maxValue(SongAttribute attribute) {
+        switch (attribute) {
+        case YEAR: return Song.MAX_YEAR;
+        case BPM: return Song.MAX_BPM;
+        case LOUDNESS: return Song.MAX_LOUDNESS;
+        default: return Song.MAX_PERCENT;
+        }
+    }
+
+    /**
+     * @return the number of songs counted
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Counts every numeric attribute of song.
+     * @param song the song to count
+     * @throws NullPointerException if song is null
+     */
+    public void add(Song song) {
+        update(song, 1);
+    }
+
+    /**
+     * Stops counting a song that was added before. Removing a song that was
+     * never added makes the counts meaningless.
+     * @param song the song to stop counting
+     * @throws NullPointerException if song is null
+     */
+    public void remove(Song song) {
+        update(song, -1);
+    }
+
+    private void update(Song song, int delta) {
+        if (song == null) {
+            throw new NullPointerException("Cannot index null values");
+        }
+        for (Map.Entry<SongAttribute, long[]> entry : counts.entrySet()) {
+            SongAttribute attribute = entry.getKey();
+            entry.getValue()[attribute.intValueOf(song) - minValue(attribute)] += delta;
+        }
+        size += delta;
+    }
+
+    /**
+     * Counts every row of columns, without creating Songs.
+     * @param columns the stored songs to count
+     */
+    public void addAll(SongColumns columns) {
+        for (int row = 0; row < columns.size(); row++) {
+            counts.get(SongAttribute.YEAR)[columns.getYear(row)]++;
+            counts.get(SongAttribute.BPM)[columns.getBPM(row)]++;
+            counts.get(SongAttribute.ENERGY)[columns.getEnergy(row)]++;
+            counts.get(SongAttribute.DANCEABILITY)[columns.getDanceability(row)]++;
+            counts.get(SongAttribute.LOUDNESS)[columns.getLoudness(row) - Song.MIN_LOUDNESS]++;
+            counts.get(SongAttribute.LIVENESS)[columns.getLiveness(row)]++;
+        }
+        size += columns.size();
+    }
+
+    /**
+     * @return the number of counted songs whose attribute is from low
+     * through high
+     * @throws IllegalArgumentException if attribute is not numeric
+     */
+    public long count(SongAttribute attribute, int low, int high) {
+        long[] values = countsOf(attribute);
+        int min = minValue(attribute);
+        long count = 0;
+        for (int value = Math.max(low, min); value <= Math.min(high, maxValue(attribute)); value++) {
+            count += values[value - min];
+        }
+        return count;
+    }
+
+    /**
+     * Finds the percentile of an attribute by the nearest rank method: the
+     * smallest value that at least percent percent of the counted songs are
+     * at or below. The 0th percentile is the smallest value and the 100th the
+     * largest, so for example the loudest 10% of songs are those at or above
+     * the 90th percentile of LOUDNESS.
+     * @param attribute the numeric attribute
+     * @param percent the percentile, from 0 through 100
+     * @return the value at that percentile, or null if no songs are counted
+     * @throws IllegalArgumentException if attribute is not numeric or
+     *     percent is not from 0 through 100
+     */
+    public Integer percentile(SongAttribute attribute, double percent) {
+        long[] values = countsOf(attribute);
+        if (!(percent >= 0 && percent <= 100)) {
+            throw new IllegalArgumentException("Percentile must be from 0 through 100: " + percent);
+        }
+        if (size == 0) {
+            return null;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * size));
+        long seen = 0;
+        for (int i = 0; i < values.length; i++) {
+            seen += values[i];
+            if (seen >= rank) {
+                return i + minValue(attribute);
+            }
+        }
+        return maxValue(attribute); // only reached through rounding at the 100th percentile
+    }
+
+    /**
+     * Counts the songs in buckets of bucketWidth values of an attribute.
+     * Buckets start at multiples of bucketWidth, so with a width of 10, 2015
+     * falls in the bucket for 2010. Buckets run from the one holding the
+     * smallest counted value to the one holding the largest, including the
+     * empty buckets between them.
+     * @param attribute the numeric attribute
+     * @param bucketWidth the number of values in each bucket
+     * @return the number of songs in each bucket, by the first value of the
+     *     bucket, or an empty map if no songs are counted
+     * @throws IllegalArgumentException if attribute is not numeric or
+     *     bucketWidth is not positive
+     */
+    public SortedMap<Integer, Long> histogram(SongAttribute attribute, int bucketWidth) {
+        long[] values = countsOf(attribute);
+        if (bucketWidth < 1) {
+            throw new IllegalArgumentException("bucketWidth must be positive: " + bucketWidth);
+        }
+        SortedMap<Integer, Long> buckets = new TreeMap<>();
+        if (size == 0) {
+            return buckets;
+        }
+        int min = minValue(attribute);
+        int first = 0;
+        while (values[first] == 0) {
+            first++;
+        }
+        int last = values.length - 1;
+        while (values[last] == 0) {
+            last--;
+        }
+        int start = Math.floorDiv(first + min, bucketWidth) * bucketWidth;
+        int end = Math.floorDiv(last + min, bucketWidth) * bucketWidth;
+        for (int bucket = start; bucket <= end; bucket += bucketWidth) {
+            buckets.put(bucket, count(attribute, bucket, bucket + bucketWidth - 1));
+        }
+        return buckets;
+    }
+
+    private long[] countsOf(SongAttribute attribute) {
+        long[] values = counts.get(attribute);
+        if (values == null) {
+            throw new IllegalArgumentException(attribute + " is not numeric");
+        }
+        return values;
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that percentiles match the nearest rank of the sorted values,
+     * and that they follow songs as they are removed.
+     */
+    @Test
+    public void testPercentiles() {
+        SongHistograms histograms = new SongHistograms();
+        assertNull(histograms.percentile(SongAttribute.LOUDNESS, 50));
+        Random random = new Random(49);
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 2001; i++) {
+            Song song = new Song("Song " + i, "Artist", "pop", 1950 + random.nextInt(70),
+                                 60 + random.nextInt(140), random.nextInt(100), random.nextInt(100),
+                                 -2 - random.nextInt(30), random.nextInt(100));
+            songs.add(song);
+            histograms.add(song);
+        }
+        for (int round = 0; round < 2; round++) {
+            for (SongAttribute attribute : List.of(SongAttribute.YEAR, SongAttribute.BPM,
+                                                   SongAttribute.LOUDNESS)) {
+                List<Integer> sorted = new ArrayList<>();
+                for (Song song : songs) {
+                    sorted.add(attribute.intValueOf(song));
+                }
+                Collections.sort(sorted);
+                for (double percent : new double[] { 0, 1, 10, 25, 50, 90, 99.9, 100 }) {
+                    int rank = Math.max(1, (int) Math.ceil(percent / 100 * sorted.size()));
+                    assertEquals(sorted.get(rank - 1), histograms.percentile(attribute, percent));
+                }
+            }
+            // remove half of the songs and check again
+            for (int i = songs.size() - 1; i >= 1000; i--) {
+                histograms.remove(songs.remove(i));
+            }
+        }
+        assertEquals(1000, histograms.size());
+        assertThrows(IllegalArgumentException.class, () -> histograms.percentile(SongAttribute.TITLE, 50));
+        assertThrows(IllegalArgumentException.class, () -> histograms.percentile(SongAttribute.BPM, 101));
+        assertThrows(NullPointerException.class, () -> histograms.add(null));
+    }
+
+    /**
+     * Checks that histogram buckets are aligned, cover the counted range
+     * including empty buckets, and hold every song once.
+     */
+    @Test
+    public void testHistogram() {
+        SongHistograms histograms = new SongHistograms();
+        assertTrue(histograms.histogram(SongAttribute.LOUDNESS, 5).isEmpty());
+        int[] loudness = { -31, -30, -26, -12, -11, -10, -3 };
+        for (int value : loudness) {
+            histograms.add(new Song("Song", "Artist", "pop", 2015, 120, 50, 50, value, 10));
+        }
+        SortedMap<Integer, Long> buckets = histograms.histogram(SongAttribute.LOUDNESS, 10);
+        assertEquals(List.of(-40, -30, -20, -10), new ArrayList<>(buckets.keySet()));
+        assertEquals(List.of(1L, 2L, 2L, 2L), new ArrayList<>(buckets.values()));
+        buckets = histograms.histogram(SongAttribute.LOUDNESS, 5);
+        assertEquals(-35, (int) buckets.firstKey());
+        assertEquals(7, buckets.size());
+        assertEquals(0L, (long) buckets.get(-20));
+        assertEquals(Map.of(2015, 7L), histograms.histogram(SongAttribute.YEAR, 1));
+        assertEquals(3, histograms.count(SongAttribute.LOUDNESS, -12, -5));
+        assertEquals(7, histograms.count(SongAttribute.LOUDNESS, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> histograms.histogram(SongAttribute.BPM, 0));
+    }
+}
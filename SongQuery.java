@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class describes a query over songs: a conjunction of predicates on
+ * song attributes, an optional ordering and an optional limit. It is built
+ * by chaining calls, and run with Backend.query or described with
+ * Backend.explain:
+ *
+ *     SongQuery query = new SongQuery()
+ *         .between(SongAttribute.LOUDNESS, -10, -2)
+ *         .greaterThan(SongAttribute.BPM, 120)
+ *         .equalTo(SongAttribute.GENRE, "dance pop")
+ *         .orderBy(SongAttribute.DANCEABILITY, true)
+ *         .limit(5);
+ *
+ * Numeric attributes are compared as ints. String attributes are compared
+ * ignoring case and surrounding whitespace, the same way as
+ * Backend.getMatching.
+ */
+public class SongQuery {
+
+    /**
+     * The kinds of predicate a query can contain.
+     */
+    public enum Kind { EQUALS, BETWEEN, GREATER_THAN }
+
+    /**
+     * A single condition on one attribute of a song.
+     */
+    public static class Predicate {
+        private final SongAttribute attribute;
+        private final Kind kind;
+        // EQUALS and GREATER_THAN use low; BETWEEN uses both, inclusive
+        private final Comparable<?> low;
+        private final Comparable<?> high;
+
+        private Predicate(SongAttribute attribute, Kind kind, Comparable<?> low, Comparable<?> high) {
+            this.attribute = attribute;
+            this.kind = kind;
+            this.low = low;
+            this.high = high;
+        }
+
+        public SongAttribute getAttribute() { return attribute; }
+        public Kind getKind() { return kind; }
+        public Comparable<?> getLow() { return low; }
+        public Comparable<?> getHigh() { return high; }
+
+        /**
+         * @param song the song to check
+         * @return true if song satisfies this predicate
+         */
+        public boolean test(Song song) {
+            Comparable<?> value = attribute.valueOf(song);
+            if (value == null) {
+                return false;
+            }
+            switch (kind) {
+            case EQUALS: return compare(value, low) == 0;
+            case GREATER_THAN: return compare(value, low) > 0;
+            default: return compare(value, low) >= 0 && compare(value, high) <= 0;
+            }
+        }
+
+        private int compare(Comparable<?> value, Comparable<?> bound) {
+            if (attribute.isNumeric()) {
+                return Integer.compare((Integer) value, (Integer) bound);
+            }
+            return normalize((String) value).compareTo(normalize((String) bound));
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+            case EQUALS: return attribute + " = " + low;
+            case GREATER_THAN: return attribute + " > " + low;
+            default: return attribute + " BETWEEN " + low + " AND " + high;
+            }
+        }
+    }
+
+    private final List<Predicate> predicates = new ArrayList<>();
+    private SongAttribute orderBy = null;
+    private boolean descending = false;
+    private int limit = -1;
+
+    /**
+     * Requires attribute to equal value.
+     * @return this query
+     * @throws IllegalArgumentException if value does not match the attribute's type
+     */
+    public SongQuery equalTo(SongAttribute attribute, Object value) {
+        return add(new Predicate(attribute, Kind.EQUALS, checkType(attribute, value), null));
+    }
+
+    /**
+     * Requires attribute to be at least low and at most high.
+     * @return this query
+     * @throws IllegalArgumentException if a bound does not match the attribute's type
+     */
+    public SongQuery between(SongAttribute attribute, Object low, Object high) {
+        return add(new Predicate(attribute, Kind.BETWEEN, checkType(attribute, low),
+                                 checkType(attribute, high)));
+    }
+
+    /**
+     * Requires attribute to be larger than value.
+     * @return this query
+     * @throws IllegalArgumentException if value does not match the attribute's type
+     */
+    public SongQuery greaterThan(SongAttribute attribute, Object value) {
+        return add(new Predicate(attribute, Kind.GREATER_THAN, checkType(attribute, value), null));
+    }
+
+    /**
+     * Orders results by attribute. Without an ordering, results are returned
+     * in the order the chosen access path produces them.
+     * @param descending true to return the largest values first
+     * @return this query
+     */
+    public SongQuery orderBy(SongAttribute attribute, boolean descending) {
+        this.orderBy = attribute;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Returns at most limit results.
+     * @return this query
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public SongQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public List<Predicate> getPredicates() { return Collections.unmodifiableList(predicates); }
+    public SongAttribute getOrderBy() { return orderBy; }
+    public boolean isDescending() { return descending; }
+    // -1 when there is no limit
+    public int getLimit() { return limit; }
+
+    private SongQuery add(Predicate predicate) {
+        predicates.add(predicate);
+        return this;
+    }
+
+    private static Comparable<?> checkType(SongAttribute attribute, Object value) {
+        if (attribute.isNumeric() ? value instanceof Integer : value instanceof String) {
+            return (Comparable<?>) value;
+        }
+        throw new IllegalArgumentException(attribute + " cannot be compared to " + value);
+    }
+
+    static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
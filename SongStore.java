@@ -0,0 +1,306 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class stores song data outside of the Java heap, in direct byte
+ * buffers, so that catalogs of tens of millions of songs do not create tens
+ * of millions of Song and String objects for the garbage collector to trace.
+ *
+ * Each song is a fixed-width 16 byte record holding its numeric attributes
+ * and the offset of its strings, and is identified by its row id (the order
+ * in which it was added). The title, artist and genre of a song are stored
+ * one after another as length-prefixed UTF-8 in a separate string area.
+ * Both areas are split into fixed-size chunks that are allocated as needed.
+ *
+ * Attributes can be read directly by row id, through a reusable View (a Song
+ * that reads from the store), or copied into a regular Song with toSong.
+ */
+public class SongStore implements SongColumns {
+
+    // record layout: string offset (8), year (2), bpm (2), then one byte each
+    // for energy, danceability and liveness (unsigned, 0 to 255, the same as
+    // Song.MAX_PERCENT) and loudness (signed)
+    private static final int RECORD_BYTES = 16;
+    private static final int STRINGS = 0;
+    private static final int YEAR = 8;
+    private static final int BPM = 10;
+    private static final int ENERGY = 12;
+    private static final int DANCEABILITY = 13;
+    private static final int LOUDNESS = 14;
+    private static final int LIVENESS = 15;
+
+    // 2^20 records (16 MB) per record chunk, and 16 MB per string chunk
+    private static final int RECORD_CHUNK_SHIFT = 20;
+    private static final int RECORD_CHUNK_MASK = (1 << RECORD_CHUNK_SHIFT) - 1;
+    private static final int STRING_CHUNK_SHIFT = 24;
+    private static final int STRING_CHUNK_BYTES = 1 << STRING_CHUNK_SHIFT;
+
+    private List<ByteBuffer> recordChunks = new ArrayList<>();
+    private List<ByteBuffer> stringChunks = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Copies the attributes of song into the store.
+     * @param song the song to store
+     * @return the row id of the stored song
+     * @throws IllegalArgumentException if an attribute does not fit its field
+     */
+    public int add(Song song) {
+        return add(song.getTitle(), song.getArtist(), song.getGenres(), song.getYear(),
+                   song.getBPM(), song.getEnergy(), song.getDanceability(),
+                   song.getLoudness(), song.getLiveness());
+    }
+
+    /**
+     * Stores a song with these attributes. Every attribute must fit in the
+     * fields of Song.pack, and year and BPM in a short; loudness then fits a
+     * signed byte, and energy, danceability and liveness an unsigned byte.
+     * @return the row id of the stored song
+     * @throws IllegalArgumentException if an attribute does not fit its field,
+     *     or a string is longer than 65534 bytes of UTF-8
+     */
+    public int add(String title, String artist, String genre, int year, int bpm,
+                   int energy, int danceability, int loudness, int liveness) {
+        // stored songs must also be valid Songs, so that views can be packed
+        Song.pack(year, bpm, energy, danceability, loudness, liveness);
+        checkRange("year", year, Short.MIN_VALUE, Short.MAX_VALUE);
+        checkRange("bpm", bpm, Short.MIN_VALUE, Short.MAX_VALUE);
+        checkRange("energy", energy, 0, 0xFF);
+        checkRange("danceability", danceability, 0, 0xFF);
+        checkRange("loudness", loudness, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        checkRange("liveness", liveness, 0, 0xFF);
+        long strings = addStrings(title, artist, genre);
+
+        int row = size;
+        if ((row & RECORD_CHUNK_MASK) == 0) {
+            recordChunks.add(ByteBuffer.allocateDirect(RECORD_BYTES << RECORD_CHUNK_SHIFT));
+        }
+        ByteBuffer chunk = recordChunks.get(row >>> RECORD_CHUNK_SHIFT);
+        int base = (row & RECORD_CHUNK_MASK) * RECORD_BYTES;
+        chunk.putLong(base + STRINGS, strings);
+        chunk.putShort(base + YEAR, (short) year);
+        chunk.putShort(base + BPM, (short) bpm);
+        chunk.put(base + ENERGY, (byte) energy);
+        chunk.put(base + DANCEABILITY, (byte) danceability);
+        chunk.put(base + LOUDNESS, (byte) loudness);
+        chunk.put(base + LIVENESS, (byte) liveness);
+        size++;
+        return row;
+    }
+
+    /**
+     * @return the number of songs in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Releases every chunk, so that the store is empty.
+     */
+    public void clear() {
+        recordChunks = new ArrayList<>();
+        stringChunks = new ArrayList<>();
+        size = 0;
+    }
+
+    public int getYear(int row) { return records(row).getShort(base(row) + YEAR); }
+    public int getBPM(int row) { return records(row).getShort(base(row) + BPM); }
+    public int getEnergy(int row) { return Byte.toUnsignedInt(records(row).get(base(row) + ENERGY)); }
+    public int getDanceability(int row) { return Byte.toUnsignedInt(records(row).get(base(row) + DANCEABILITY)); }
+    public int getLoudness(int row) { return records(row).get(base(row) + LOUDNESS); }
+    public int getLiveness(int row) { return Byte.toUnsignedInt(records(row).get(base(row) + LIVENESS)); }
+    public String getTitle(int row) { return readString(row, 0); }
+    public String getArtist(int row) { return readString(row, 1); }
+    public String getGenres(int row) { return readString(row, 2); }
+
+    /**
+     * Copies a stored song back onto the heap as a regular Song.
+     * @param row the row id of the song
+     * @return a new Song with the stored attributes
+     */
+    public Song toSong(int row) {
+        return new Song(getTitle(row), getArtist(row), getGenres(row), getYear(row),
+                        getBPM(row), getEnergy(row), getDanceability(row),
+                        getLoudness(row), getLiveness(row));
+    }
+
+    /**
+     * @return a new View, positioned at row 0
+     */
+    public View view() {
+        return new View();
+    }
+
+    /**
+     * A Song that reads its attributes from this store. One View can be moved
+     * from row to row, so that scanning the store allocates nothing.
+     */
+    public class View extends Song {
+        private int row = 0;
+
+        private View() {
+            super(null, null, null, 0, 0, 0, 0, 0, 0);
+        }
+
+        /**
+         * Positions this view on another song.
+         * @param row the row id of the song to read
+         * @return this view
+         * @throws IndexOutOfBoundsException if row is not a stored row id
+         */
+        public View moveTo(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+            }
+            this.row = row;
+            return this;
+        }
+
+        /**
+         * @return the row id this view is positioned on
+         */
+        public int getRow() { return row; }
+
+        @Override public String getTitle() { return SongStore.this.getTitle(row); }
+        @Override public String getArtist() { return SongStore.this.getArtist(row); }
+        @Override public String getGenres() { return SongStore.this.getGenres(row); }
+        @Override public int getYear() { return SongStore.this.getYear(row); }
+        @Override public int getBPM() { return SongStore.this.getBPM(row); }
+        @Override public int getEnergy() { return SongStore.this.getEnergy(row); }
+        @Override public int getDanceability() { return SongStore.this.getDanceability(row); }
+        @Override public int getLoudness() { return SongStore.this.getLoudness(row); }
+        @Override public int getLiveness() { return SongStore.this.getLiveness(row); }
+        @Override public long getPackedAttributes() {
+            return Song.pack(getYear(), getBPM(), getEnergy(), getDanceability(), getLoudness(),
+                             getLiveness());
+        }
+    }
+
+    private ByteBuffer records(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return recordChunks.get(row >>> RECORD_CHUNK_SHIFT);
+    }
+
+    private static int base(int row) {
+        return (row & RECORD_CHUNK_MASK) * RECORD_BYTES;
+    }
+
+    /**
+     * Appends three length-prefixed strings to the string area, all within
+     * one chunk.
+     * @return the offset of the first string
+     */
+    private long addStrings(String... strings) {
+        byte[][] encoded = new byte[strings.length][];
+        int total = 0;
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i] == null ? null : strings[i].getBytes(StandardCharsets.UTF_8);
+            int length = encoded[i] == null ? 0 : encoded[i].length;
+            if (length > 0xFFFE) {
+                throw new IllegalArgumentException("String is too long to store: " + length + " bytes");
+            }
+            total += 2 + length;
+        }
+        ByteBuffer chunk = stringChunks.isEmpty() ? null : stringChunks.get(stringChunks.size() - 1);
+        if (chunk == null || chunk.remaining() < total) {
+            chunk = ByteBuffer.allocateDirect(STRING_CHUNK_BYTES);
+            stringChunks.add(chunk);
+        }
+        long offset = ((long) (stringChunks.size() - 1) << STRING_CHUNK_SHIFT) | chunk.position();
+        for (byte[] bytes : encoded) {
+            // 0xFFFF marks a null string
+            chunk.putShort((short) (bytes == null ? 0xFFFF : bytes.length));
+            if (bytes != null) {
+                chunk.put(bytes);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes the index-th string stored for row.
+     */
+    private String readString(int row, int index) {
+        long offset = records(row).getLong(base(row) + STRINGS);
+        ByteBuffer chunk = stringChunks.get((int) (offset >>> STRING_CHUNK_SHIFT));
+        int position = (int) (offset & (STRING_CHUNK_BYTES - 1));
+        for (int i = 0; i < index; i++) {
+            int length = chunk.getShort(position) & 0xFFFF;
+            position += 2 + (length == 0xFFFF ? 0 : length);
+        }
+        int length = chunk.getShort(position) & 0xFFFF;
+        if (length == 0xFFFF) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        chunk.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " " + value + " is outside of [" + min + ", " + max + "]");
+        }
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that stored songs read back with the same attributes, through
+     * row accessors, views and copies.
+     */
+    @Test
+    public void testRoundTrip() {
+        SongStore store = new SongStore();
+        int first = store.add(new Song("Caf\u00e9 del Mar", "Energy 52", "trance", 1993, 133, 80, 61, -9, 12));
+        int second = store.add("Untitled", null, "", 2021, 90, 20, 45, -30, 100);
+        assertEquals(2, store.size());
+
+        Song copy = store.toSong(first);
+        assertEquals("Caf\u00e9 del Mar", copy.getTitle());
+        assertEquals("Energy 52", copy.getArtist());
+        assertEquals("trance", copy.getGenres());
+        assertEquals(1993, copy.getYear());
+        assertEquals(-9, copy.getLoudness());
+
+        SongStore.View view = store.view().moveTo(second);
+        assertEquals("Untitled", view.getTitle());
+        assertNull(view.getArtist());
+        assertEquals("", view.getGenres());
+        assertEquals(100, view.getLiveness());
+        assertTrue(view.compareTo(copy) > 0);
+        // a Song reads the view's title through its accessor
+        assertTrue(copy.compareTo(view) < 0);
+        assertEquals(0, new Song("Untitled", "A", "pop", 2000, 90, 20, 45, -30, 100).compareTo(view));
+    }
+
+    /**
+     * Checks that attributes outside of their stored width are rejected, and
+     * that every value a Song accepts is stored as it was.
+     */
+    @Test
+    public void testRejectsOutOfRange() {
+        SongStore store = new SongStore();
+        assertThrows(IllegalArgumentException.class,
+                     () -> store.add("Too Loud", "A", "G", 2000, 100, 50, 50, 200, 10));
+        assertThrows(IllegalArgumentException.class,
+                     () -> store.add("Too Lively", "A", "G", 2000, 100, 50, 50, -5, Song.MAX_PERCENT + 1));
+        assertEquals(0, store.size());
+
+        int row = store.add(new Song("Extreme", "A", "G", Song.MAX_YEAR, Song.MAX_BPM, Song.MAX_PERCENT,
+                                     Song.MAX_PERCENT, Song.MIN_LOUDNESS, Song.MAX_PERCENT));
+        assertEquals(Song.MAX_PERCENT, store.getEnergy(row));
+        assertEquals(Song.MAX_PERCENT, store.getDanceability(row));
+        assertEquals(Song.MIN_LOUDNESS, store.getLoudness(row));
+        assertEquals(Song.MAX_PERCENT, store.getLiveness(row));
+        assertEquals(Song.MAX_PERCENT, store.toSong(row).getDanceability());
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Collection;
+
 /**
  * This interface defines an ADT for data structures that support storing a 
  * collection of comparable values in their natural ordering.
@@ -12,6 +14,19 @@ public interface SortedCollection<T extends Comparable<T>> {
      */
     public void insert(T data) throws NullPointerException;
 
+    /**
+     * Inserts every value in data into the sorted collection. Implementations
+     * can override this to insert a large batch faster than one value at a
+     * time; by default each value is passed to insert in turn.
+     * @param data the new values being inserted
+     * @throws NullPointerException if data, or any value in it, is null
+     */
+    public default void insertAll(Collection<? extends T> data) throws NullPointerException {
+        for (T value : data) {
+            insert(value);
+        }
+    }
+
     /**
      * Check whether data is stored in the tree.
      * @param data the value to check for in the collection
@@ -0,0 +1,278 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class indexes songs by title in a compact radix trie, for prefix and
+ * autocomplete lookups. Every edge of the trie is labeled with a run of
+ * characters, and nodes with a single child are merged into their parent,
+ * so a trie over n titles has fewer than 2n nodes. Rather than copying its
+ * label into a new String, a node refers to a range of the title of one of
+ * the songs below it.
+ *
+ * Titles are compared ignoring case, the same way as
+ * String.CASE_INSENSITIVE_ORDER, and prefix queries return songs in that
+ * order. Finding the first n songs with a prefix takes O(prefix length + n)
+ * steps.
+ */
+public class TitleIndex {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * A node of the trie. Its label is characters [from, to) of the title of
+     * source.
+     */
+    private static class Node {
+        private final Song source;
+        private int from;
+        private final int to;
+        // the folded first character of the label, so that finding a child
+        // does not have to follow every sibling's source to its title
+        private char first;
+        // ordered by the first character of their labels
+        private Node[] children = NO_CHILDREN;
+        // the songs whose title ends at this node: null, a Song or a Song[]
+        private Object songs;
+
+        private Node(Song source, int from, int to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.first = from < to ? labelAt(from) : 0;
+        }
+
+        private char labelAt(int i) {
+            return fold(source.getTitle().charAt(i));
+        }
+
+        private void addSong(Song song) {
+            if (songs == null) {
+                songs = song;
+            } else if (songs instanceof Song) {
+                songs = new Song[] { (Song) songs, song };
+            } else {
+                Song[] old = (Song[]) songs;
+                Song[] grown = Arrays.copyOf(old, old.length + 1);
+                grown[old.length] = song;
+                songs = grown;
+            }
+        }
+    }
+
+    private Node root = new Node(null, 0, 0);
+    private int size = 0;
+
+    /**
+     * Adds song under its title. Songs without a title are not indexed.
+     * @param song the song to index
+     * @throws NullPointerException if song is null
+     */
+    public void add(Song song) {
+        if (song == null) {
+            throw new NullPointerException("Cannot index null values");
+        }
+        String key = song.getTitle();
+        if (key == null) {
+            return;
+        }
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int index = childIndex(node, fold(key.charAt(i)));
+            if (index < 0) {
+                Node leaf = new Node(song, i, key.length());
+                index = -index - 1;
+                Node[] children = new Node[node.children.length + 1];
+                System.arraycopy(node.children, 0, children, 0, index);
+                System.arraycopy(node.children, index, children, index + 1,
+                                 node.children.length - index);
+                children[index] = leaf;
+                node.children = children;
+                node = leaf;
+                break;
+            }
+            Node child = node.children[index];
+            String label = child.source.getTitle();
+            int j = child.from + 1;
+            i++;
+            while (j < child.to && i < key.length() && fold(label.charAt(j)) == fold(key.charAt(i))) {
+                i++;
+                j++;
+            }
+            if (j < child.to) {
+                // the key leaves the label part way, so split the edge there
+                Node middle = new Node(child.source, child.from, j);
+                child.from = j;
+                child.first = child.labelAt(j);
+                middle.children = new Node[] { child };
+                node.children[index] = middle;
+                child = middle;
+            }
+            node = child;
+        }
+        node.addSong(song);
+        size++;
+    }
+
+    /**
+     * @return the number of indexed songs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every song from this index.
+     */
+    public void clear() {
+        root = new Node(null, 0, 0);
+        size = 0;
+    }
+
+    /**
+     * Finds the first n songs, in case insensitive title order, whose title
+     * starts with prefix ignoring case. Songs with the same title are returned
+     * in the order they were added.
+     * @param prefix the prefix to match; the empty prefix matches every song
+     * @param n the largest number of songs to return
+     * @return the matching songs
+     */
+    public List<Song> withPrefix(String prefix, int n) {
+        List<Song> matches = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int index = childIndex(node, fold(prefix.charAt(i)));
+            if (index < 0) {
+                return matches;
+            }
+            node = node.children[index];
+            for (int j = node.from; j < node.to && i < prefix.length(); j++, i++) {
+                if (node.labelAt(j) != fold(prefix.charAt(i))) {
+                    return matches;
+                }
+            }
+        }
+
+        // a node's own songs come before those of its children, which are
+        // visited in order of their labels
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty() && matches.size() < n) {
+            Node next = stack.pop();
+            if (next.songs instanceof Song) {
+                matches.add((Song) next.songs);
+            } else if (next.songs != null) {
+                for (Song song : (Song[]) next.songs) {
+                    if (matches.size() == n) {
+                        break;
+                    }
+                    matches.add(song);
+                }
+            }
+            for (int c = next.children.length - 1; c >= 0; c--) {
+                stack.push(next.children[c]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the index of the child of node whose label starts with c, or
+     * (-(insertion point) - 1) if there is none
+     */
+    private static int childIndex(Node node, char c) {
+        int lo = 0;
+        int hi = node.children.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = node.children[mid].first;
+            if (first < c) {
+                lo = mid + 1;
+            } else if (first > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * @return c with its case folded the same way as String.CASE_INSENSITIVE_ORDER
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that prefix queries return the same songs, in the same order, as
+     * sorting every matching title.
+     */
+    @Test
+    public void testPrefixMatchesScan() {
+        String[] words = { "Love", "love", "Lover", "Lo", "Night", "Nights", "Ni", "Sun", "Sunny", "a" };
+        Random random = new Random(38);
+        TitleIndex index = new TitleIndex();
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+            Song song = new Song(title, "Artist", "pop", 2015, 100, 50, 50, -5, 10);
+            songs.add(song);
+            index.add(song);
+        }
+        assertEquals(2000, index.size());
+        songs.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.getTitle(), b.getTitle()));
+
+        for (String prefix : new String[] { "", "l", "LOVE", "love l", "Lovers", "nigh", "sunny a", "x" }) {
+            for (int n : new int[] { 0, 1, 7, 5000 }) {
+                List<Song> expected = new ArrayList<>();
+                for (Song song : songs) {
+                    if (expected.size() < n && song.getTitle().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                        expected.add(song);
+                    }
+                }
+                List<Song> actual = index.withPrefix(prefix, n);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertTrue(String.CASE_INSENSITIVE_ORDER.compare(expected.get(i).getTitle(),
+                                                                     actual.get(i).getTitle()) == 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that edges are split correctly and that songs sharing a title are
+     * all kept, in the order they were added.
+     */
+    @Test
+    public void testSplitsAndDuplicates() {
+        TitleIndex index = new TitleIndex();
+        Song first = new Song("Romance", "A", "pop", 2015, 100, 50, 50, -5, 10);
+        Song second = new Song("ROMANCE", "B", "pop", 2016, 100, 50, 50, -5, 10);
+        index.add(first);
+        index.add(new Song("Rome", "C", "pop", 2017, 100, 50, 50, -5, 10));
+        index.add(new Song("Ro", "D", "pop", 2018, 100, 50, 50, -5, 10));
+        index.add(second);
+        index.add(new Song(null, "E", "pop", 2019, 100, 50, 50, -5, 10));
+        assertEquals(4, index.size());
+
+        List<Song> matches = index.withPrefix("rom", 10);
+        assertEquals(3, matches.size());
+        assertTrue(matches.get(0) == first);
+        assertTrue(matches.get(1) == second);
+        assertEquals("Rome", matches.get(2).getTitle());
+        assertEquals("Ro", index.withPrefix("R", 1).get(0).getTitle());
+        assertTrue(index.withPrefix("Romances", 10).isEmpty());
+        assertThrows(NullPointerException.class, () -> index.add(null));
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * This class benchmarks the IterableSortedCollection implementations against
+ * each other. It is run from the command line, optionally with the number of
+ * values to insert as its first argument:
+ *
+ *     java TreeBenchmark 1000000
+ *
+ * For each tree it reports the insert throughput, the speed of range scans
+ * over one percent of the values, and the approximate number of bytes of heap
+ * used by the tree structure for each stored value (the values themselves are
+ * allocated before measuring and are not counted). It then compares the
+ * throughput of the lock-free skip list against a locked red-black tree as
+ * the number of threads grows.
+ */
+public class TreeBenchmark {
+
+    // number of times each measurement is repeated; the best run is reported
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Integer[] values = randomValues(n, 42);
+
+        System.out.println("Benchmarking " + n + " random Integer values");
+        benchmark("RedBlackTree", RedBlackTree::new, values);
+        benchmark("BPlusTree", BPlusTree::new, values);
+        benchmark("PooledRBT", PooledRedBlackTree::new, values);
+        benchmark("SkipList", ConcurrentSkipList::new, values);
+
+        // low-cardinality keys, like the ~60 distinct loudness values of songs
+        Integer[] lowCardinality = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            lowCardinality[i] = values[i] % 60;
+        }
+        System.out.println("Benchmarking " + n + " values with 60 distinct keys");
+        benchmark("RedBlackTree", RedBlackTree::new, lowCardinality);
+        benchmark("BucketedRBT", RedBlackTree::bucketed, lowCardinality);
+
+        benchmarkInsertAll(values);
+        benchmarkDropIntoLargeTree();
+        benchmarkConcurrent(values);
+    }
+
+    /**
+     * Compares a ConcurrentSkipList against a RedBlackTree behind one lock,
+     * as threads run a mix of contains and insert calls. Each collection
+     * starts with half of values, and every configuration runs the same
+     * total number of operations, split evenly between the threads.
+     */
+    static void benchmarkConcurrent(Integer[] values) throws InterruptedException {
+        int half = values.length / 2;
+        int operations = 2_000_000;
+        System.out.println("Concurrent contains/insert, " + operations + " operations, Mops/s");
+        System.out.printf("%8s %6s %12s %12s%n", "threads", "reads", "locked RBT", "skip list");
+        for (int readPercent : new int[] { 50, 90, 99 }) {
+            for (int threads = 1; threads <= 64; threads *= 2) {
+                double[] throughput = new double[2];
+                for (int kind = 0; kind < 2; kind++) {
+                    IterableSortedCollection<Integer> collection =
+                        kind == 0 ? new RedBlackTree<>() : new ConcurrentSkipList<>();
+                    for (int i = 0; i < half; i++) {
+                        collection.insert(values[i]);
+                    }
+                    boolean locked = kind == 0;
+                    int perThread = operations / threads;
+                    Thread[] workers = new Thread[threads];
+                    for (int t = 0; t < threads; t++) {
+                        int id = t;
+                        workers[t] = new Thread(() -> {
+                            Random random = new Random(id);
+                            for (int i = 0; i < perThread; i++) {
+                                Integer value = values[random.nextInt(values.length)];
+                                boolean read = random.nextInt(100) < readPercent;
+                                if (locked) {
+                                    synchronized (collection) {
+                                        if (read) {
+                                            collection.contains(value);
+                                        } else {
+                                            collection.insert(value);
+                                        }
+                                    }
+                                } else if (read) {
+                                    collection.contains(value);
+                                } else {
+                                    collection.insert(value);
+                                }
+                            }
+                        });
+                    }
+                    long start = System.nanoTime();
+                    for (Thread worker : workers) {
+                        worker.start();
+                    }
+                    for (Thread worker : workers) {
+                        worker.join();
+                    }
+                    throughput[kind] = perThread * (double) threads / ((System.nanoTime() - start) / 1e3);
+                }
+                System.out.printf("%8d %5d%% %12.2f %12.2f%n", threads, readPercent,
+                                  throughput[0], throughput[1]);
+            }
+        }
+    }
+
+    /**
+     * Compares loading values into a RedBlackTree one at a time against
+     * loading them in catalog-drop sized batches through insertAll.
+     */
+    static void benchmarkInsertAll(Integer[] values) {
+        int batchSize = 100_000;
+        long bestSingle = Long.MAX_VALUE;
+        long bestBatched = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            RedBlackTree<Integer> single = new RedBlackTree<>();
+            long start = System.nanoTime();
+            for (Integer value : values) {
+                single.insert(value);
+            }
+            bestSingle = Math.min(bestSingle, System.nanoTime() - start);
+
+            RedBlackTree<Integer> batched = new RedBlackTree<>();
+            start = System.nanoTime();
+            for (int from = 0; from < values.length; from += batchSize) {
+                int to = Math.min(values.length, from + batchSize);
+                batched.insertAll(java.util.Arrays.asList(values).subList(from, to));
+            }
+            bestBatched = Math.min(bestBatched, System.nanoTime() - start);
+        }
+        System.out.printf("RedBlackTree   insert %8.1f ms   insertAll(%d) %8.1f ms%n",
+                          bestSingle / 1e6, batchSize, bestBatched / 1e6);
+    }
+
+    /**
+     * Compares ways of adding a catalog drop of 100,000 values to a
+     * RedBlackTree that already holds 1,000,000: one insert at a time, the
+     * BATCH_SIZE batches that Backend.readData passes to insertAll, and the
+     * whole drop in one call to insertAll.
+     */
+    static void benchmarkDropIntoLargeTree() {
+        Integer[] existing = randomValues(1_000_000, 43);
+        List<Integer> drop = java.util.Arrays.asList(randomValues(100_000, 44));
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int way = 0; way < best.length; way++) {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                tree.insertAll(java.util.Arrays.asList(existing));
+                long start = System.nanoTime();
+                if (way == 0) {
+                    for (Integer value : drop) {
+                        tree.insert(value);
+                    }
+                } else if (way == 1) {
+                    for (int from = 0; from < drop.size(); from += Backend.BATCH_SIZE) {
+                        tree.insertAll(drop.subList(from, Math.min(drop.size(), from + Backend.BATCH_SIZE)));
+                    }
+                } else {
+                    tree.insertAll(drop);
+                }
+                best[way] = Math.min(best[way], System.nanoTime() - start);
+            }
+        }
+        System.out.printf("100K drop into 1M   insert %8.1f ms   insertAll(%d) %8.1f ms"
+                          + "   insertAll(100000) %8.1f ms%n",
+                          best[0] / 1e6, Backend.BATCH_SIZE, best[1] / 1e6, best[2] / 1e6);
+    }
+
+    /**
+     * Creates n boxed values, drawn from a range of 10 * n so that some of
+     * them are duplicates.
+     */
+    static Integer[] randomValues(int n, long seed) {
+        Random random = new Random(seed);
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextInt(10 * n);
+        }
+        return values;
+    }
+
+    /**
+     * Measures and prints insert throughput, range scan speed and heap bytes
+     * per value for the trees created by factory.
+     */
+    static void benchmark(String name, Supplier<IterableSortedCollection<Integer>> factory,
+                          Integer[] values) {
+        int n = values.length;
+
+        // insert throughput
+        long bestInsert = Long.MAX_VALUE;
+        IterableSortedCollection<Integer> tree = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            tree = null;
+            System.gc();
+            long start = System.nanoTime();
+            tree = factory.get();
+            for (Integer value : values) {
+                tree.insert(value);
+            }
+            bestInsert = Math.min(bestInsert, System.nanoTime() - start);
+        }
+
+        // range scans, each covering about one percent of the values
+        int maxValue = 0;
+        for (Integer value : values) {
+            maxValue = Math.max(maxValue, value);
+        }
+        Random random = new Random(7);
+        int scans = 1000;
+        long scanned = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            int low = random.nextInt(maxValue + 1);
+            tree.setIteratorMin(low);
+            tree.setIteratorMax(low + maxValue / 100);
+            for (Integer value : tree) {
+                scanned += value & 1;
+            }
+        }
+        long scanTime = System.nanoTime() - start;
+        tree.setIteratorMin(null);
+        tree.setIteratorMax(null);
+
+        // heap used by the tree structure
+        tree = null;
+        long before = usedHeap();
+        tree = factory.get();
+        for (Integer value : values) {
+            tree.insert(value);
+        }
+        long after = usedHeap();
+
+        System.out.printf("%-14s insert %8.0f Kops/s   scan %8.1f us/range   %6.1f bytes/value   (%d)%n",
+                          name, n / (bestInsert / 1e6), scanTime / 1e3 / scans,
+                          (after - before) / (double) n, scanned + tree.size());
+    }
+
+    /**
+     * @return the number of bytes in use on the heap after collecting garbage
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,348 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class stress tests the tree family with long runs of random and
+ * adversarial operations, checking every tree against a java.util.TreeMap
+ * that counts how many times each value was inserted. It is run from the
+ * command line, optionally with the number of operations per tree, the
+ * number of operations between full checks and a random seed:
+ *
+ *     java TreeStressTest 5000000 10000 46
+ *
+ * Operations are inserts, contains queries for present and absent values,
+ * and batch inserts and bounded iteration on red-black trees. Values come in
+ * phases that switch every few thousand operations: uniformly random,
+ * ascending and descending runs, a handful of heavily duplicated values, and
+ * values that zigzag between the two ends of the range. Plain binary search
+ * trees and BSTRotation are also given random rotations, which must keep
+ * their order. Since these two trees do not balance, and recurse on their
+ * height, they are cleared whenever they pass a small size.
+ *
+ * Every check walks the whole tree, verifying that values are in order,
+ * that parent links match child links, that the values match the TreeMap,
+ * and for red-black trees that the root is black, no red node has a red
+ * child and every path has the same number of black nodes. A failed check
+ * throws an IllegalStateException naming the tree, operation and seed. The
+ * number of operations per second, not counting checks, is reported for
+ * every tree, so performance and correctness regressions show up together.
+ */
+public class TreeStressTest {
+
+    // the phases values are drawn from
+    private enum Phase { RANDOM, ASCENDING, DESCENDING, DUPLICATES, ZIGZAG }
+
+    // number of operations before the phase changes
+    private static final int PHASE_LENGTH = 5000;
+    // values are drawn from [0, RANGE)
+    private static final int RANGE = 1 << 20;
+
+    /**
+     * The outcome of one run.
+     */
+    public static class Result {
+        private final String name;
+        private final long operations;
+        private final long checks;
+        private final long nanos;
+
+        private Result(String name, long operations, long checks, long nanos) {
+            this.name = name;
+            this.operations = operations;
+            this.checks = checks;
+            this.nanos = nanos;
+        }
+
+        public long getOperations() { return operations; }
+        public long getChecks() { return checks; }
+        // operations per second, not counting the time spent checking
+        public double getOpsPerSecond() { return operations * 1e9 / Math.max(1, nanos); }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %,12d ops %,8d checks %,14.0f ops/s",
+                                 name, operations, checks, getOpsPerSecond());
+        }
+    }
+
+    public static void main(String[] args) {
+        long operations = args.length > 0 ? Long.parseLong(args[0]) : 2_000_000;
+        int checkInterval = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 46;
+        System.out.println("Stress testing with " + operations + " operations per tree, checking every "
+                           + checkInterval + ", seed " + seed);
+        for (Result result : runAll(operations, checkInterval, seed)) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * Runs every tree in the family for the same number of operations.
+     * @return the result of each run
+     */
+    public static List<Result> runAll(long operations, int checkInterval, long seed) {
+        List<Result> results = new ArrayList<>();
+        results.add(run("BinarySearchTree", BinarySearchTree::new, operations, checkInterval, 2_000, seed));
+        results.add(run("BSTRotation", BSTRotation::new, operations, checkInterval, 2_000, seed));
+        results.add(run("RedBlackTree", RedBlackTree::new, operations, checkInterval, 200_000, seed));
+        results.add(run("BucketedRBT", RedBlackTree::bucketed, operations, checkInterval,
+                        200_000, seed));
+        return results;
+    }
+
+    /**
+     * Runs one tree through random operations, checking it against a TreeMap
+     * every checkInterval operations and at the end.
+     * @param name the name to report the tree under
+     * @param factory creates the empty tree
+     * @param operations the number of operations to run
+     * @param checkInterval the number of operations between full checks
+     * @param maxSize the size past which the tree and TreeMap are cleared
+     * @param seed the seed for the random operations
+     * @return the number of operations, checks and time taken
+     * @throws IllegalStateException if a check fails
+     */
+    public static Result run(String name, Supplier<? extends BinarySearchTree<Integer>> factory,
+                             long operations, int checkInterval, int maxSize, long seed) {
+        Random random = new Random(seed);
+        BinarySearchTree<Integer> tree = factory.get();
+        RedBlackTree<Integer> redBlack = tree instanceof RedBlackTree ? (RedBlackTree<Integer>) tree : null;
+        boolean rotate = redBlack == null && tree instanceof BSTRotation;
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        int size = 0;
+        Phase phase = Phase.RANDOM;
+        int next = 0;
+        long nanos = 0;
+        long checks = 0;
+
+        for (long op = 1; op <= operations; op++) {
+            if (op % PHASE_LENGTH == 1) {
+                phase = Phase.values()[random.nextInt(Phase.values().length)];
+                next = random.nextInt(RANGE);
+            }
+            int value;
+            switch (phase) {
+            case ASCENDING: value = next++ % RANGE; break;
+            case DESCENDING: value = Math.floorMod(next--, RANGE); break;
+            case DUPLICATES: value = random.nextInt(8); break;
+            case ZIGZAG: value = (op & 1) == 0 ? next++ % RANGE : RANGE - 1 - next % RANGE; break;
+            default: value = random.nextInt(RANGE); break;
+            }
+
+            if (op > 1 && (op - 1) % checkInterval == 0) {
+                check(name, op - 1, seed, tree, expected, size);
+                checks++;
+            }
+
+            int kind = random.nextInt(100);
+            long start = System.nanoTime();
+            if (size >= maxSize) {
+                tree.clear();
+                expected.clear();
+                size = 0;
+                nanos += System.nanoTime() - start;
+            } else if (kind < 30) {
+                boolean found = tree.contains(value);
+                nanos += System.nanoTime() - start;
+                if (found != expected.containsKey(value)) {
+                    fail(name, op, seed, "contains(" + value + ") returned " + found);
+                }
+            } else if (kind < 35 && redBlack != null) {
+                List<Integer> batch = new ArrayList<>();
+                for (int i = random.nextInt(64); i >= 0; i--) {
+                    batch.add(phase == Phase.RANDOM ? random.nextInt(RANGE) : value + i);
+                }
+                start = System.nanoTime();
+                redBlack.insertAll(batch);
+                nanos += System.nanoTime() - start;
+                for (int batchValue : batch) {
+                    expected.merge(batchValue, 1, Integer::sum);
+                }
+                size += batch.size();
+            } else if (kind < 40 && redBlack != null) {
+                int high = value + random.nextInt(RANGE / 64);
+                List<Integer> actual = new ArrayList<>();
+                Iterator<Integer> iterator = redBlack.iterator(value, high);
+                while (iterator.hasNext() && actual.size() < 1000) {
+                    actual.add(iterator.next());
+                }
+                nanos += System.nanoTime() - start;
+                List<Integer> wanted = expand(expected.subMap(value, true, high, true), 1000);
+                if (!actual.equals(wanted)) {
+                    fail(name, op, seed, "iterator(" + value + ", " + high + ") returned " + actual
+                         + " instead of " + wanted);
+                }
+            } else if (kind < 45 && rotate && tree.root != null) {
+                rotateRandomly((BSTRotation<Integer>) tree, random);
+                nanos += System.nanoTime() - start;
+            } else {
+                tree.insert(value);
+                nanos += System.nanoTime() - start;
+                expected.merge(value, 1, Integer::sum);
+                size++;
+            }
+        }
+        check(name, operations, seed, tree, expected, size);
+        checks++;
+        return new Result(name, operations, checks, nanos);
+    }
+
+    /**
+     * Rotates a random node of tree with its parent.
+     */
+    private static void rotateRandomly(BSTRotation<Integer> tree, Random random) {
+        BSTNode<Integer> node = tree.root;
+        int depth = random.nextInt(16);
+        for (int i = 0; i < depth; i++) {
+            BSTNode<Integer> child = random.nextBoolean() ? node.left : node.right;
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        if (node.up != null) {
+            tree.rotate(node, node.up);
+        }
+    }
+
+    /**
+     * Walks the whole tree and checks every invariant against expected.
+     * @throws IllegalStateException if an invariant does not hold
+     */
+    static void check(String name, long op, long seed, BinarySearchTree<Integer> tree,
+                      TreeMap<Integer, Integer> expected, int size) {
+        if (tree.root != null && tree.root.up != null) {
+            fail(name, op, seed, "root has a parent");
+        }
+        // in-order walk, checking order and links on the way
+        List<Integer> actual = new ArrayList<>(size);
+        ArrayDeque<BSTNode<Integer>> stack = new ArrayDeque<>();
+        for (BSTNode<Integer> node = tree.root; node != null; node = node.left) {
+            stack.push(node);
+        }
+        while (!stack.isEmpty()) {
+            BSTNode<Integer> node = stack.pop();
+            if ((node.left != null && node.left.up != node) || (node.right != null && node.right.up != node)) {
+                fail(name, op, seed, "parent link of a child of " + node.data + " is wrong");
+            }
+            if (!actual.isEmpty() && actual.get(actual.size() - 1) > node.data) {
+                fail(name, op, seed, node.data + " comes after " + actual.get(actual.size() - 1));
+            }
+            actual.add(node.data);
+            if (node instanceof RBTNode) {
+                RBTNode<Integer> bucket = (RBTNode<Integer>) node;
+                for (int i = 0; i < bucket.getDuplicateCount(); i++) {
+                    actual.add(bucket.getDuplicate(i));
+                }
+            }
+            for (BSTNode<Integer> child = node.right; child != null; child = child.left) {
+                stack.push(child);
+            }
+        }
+        if (!actual.equals(expand(expected, Integer.MAX_VALUE))) {
+            fail(name, op, seed, "values differ from the TreeMap");
+        }
+        if (tree.size() != size) {
+            fail(name, op, seed, "size() is " + tree.size() + " instead of " + size);
+        }
+
+        if (tree instanceof RedBlackTree && tree.root != null) {
+            RBTNode<Integer> root = (RBTNode<Integer>) tree.root;
+            if (root.isRed()) {
+                fail(name, op, seed, "root is red");
+            }
+            if (blackHeight(root) < 0) {
+                fail(name, op, seed, "red property or black height violated");
+            }
+        }
+    }
+
+    /**
+     * @return the number of black nodes on every path from node down to a
+     * null child, or -1 if paths differ or a red node has a red child
+     */
+    private static int blackHeight(RBTNode<Integer> node) {
+        if (node == null) {
+            return 1;
+        }
+        if (node.isRed() && ((node.getLeft() != null && node.getLeft().isRed())
+                             || (node.getRight() != null && node.getRight().isRed()))) {
+            return -1;
+        }
+        int left = blackHeight(node.getLeft());
+        int right = blackHeight(node.getRight());
+        if (left < 0 || left != right) {
+            return -1;
+        }
+        return left + (node.isRed() ? 0 : 1);
+    }
+
+    /**
+     * @return the first limit values counted in counts, in order
+     */
+    private static List<Integer> expand(NavigableMap<Integer, Integer> counts, int limit) {
+        List<Integer> values = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            for (int i = 0; i < entry.getValue() && values.size() < limit; i++) {
+                values.add(entry.getKey());
+            }
+        }
+        return values;
+    }
+
+    private static void fail(String name, long op, long seed, String message) {
+        throw new IllegalStateException(name + " failed at operation " + op + " with seed " + seed
+                                        + ": " + message);
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Runs a short stress test of every tree, checking often.
+     */
+    @Test
+    public void testTreesAgainstTreeMap() {
+        for (Result result : runAll(30_000, 500, 46)) {
+            assertEquals(30_000, result.getOperations());
+            assertEquals(60, result.getChecks());
+        }
+    }
+
+    /**
+     * Checks that the checker notices a red root, a red child of a red node,
+     * a broken parent link and a missing value.
+     */
+    @Test
+    public void testDetectsViolations() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int value : new int[] { 5, 3, 8, 1, 4 }) {
+            tree.insert(value);
+            expected.put(value, 1);
+        }
+        check("RedBlackTree", 0, 0, tree, expected, 5);
+
+        RBTNode<Integer> root = (RBTNode<Integer>) tree.root;
+        root.flipColor();
+        assertThrows(IllegalStateException.class, () -> check("RedBlackTree", 0, 0, tree, expected, 5));
+        root.flipColor();
+        root.getLeft().flipColor();
+        assertThrows(IllegalStateException.class, () -> check("RedBlackTree", 0, 0, tree, expected, 5));
+        root.getLeft().flipColor();
+        root.getLeft().getLeft().up = root;
+        assertThrows(IllegalStateException.class, () -> check("RedBlackTree", 0, 0, tree, expected, 5));
+        root.getLeft().getLeft().up = root.getLeft();
+        expected.put(9, 1);
+        assertThrows(IllegalStateException.class, () -> check("RedBlackTree", 0, 0, tree, expected, 6));
+    }
+}
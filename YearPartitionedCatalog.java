@@ -0,0 +1,451 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class keeps songs in separate trees by release year, one per range of
+ * yearsPerPartition years, so that a query over recent years only walks the
+ * trees for those years. Every partition also records the smallest and
+ * largest value of each numeric attribute among its songs, and a query skips
+ * any partition whose ranges show that none of its songs can match, such as
+ * a partition of quiet songs for a query on loud ones.
+ *
+ * Partitions are independent, so a range of years can be dropped, to free
+ * the memory of back catalog that is no longer queried, or reloaded, to
+ * replace its songs with a fresh copy, without touching the other years.
+ * Since songs are never removed from a partition, its statistics stay exact.
+ */
+public class YearPartitionedCatalog {
+
+    /**
+     * The songs released within one range of years, with the smallest and
+     * largest value of every numeric attribute among them. Iterating a
+     * partition returns its songs in the order of its tree.
+     */
+    public static class Partition implements Iterable<Song> {
+        private final int firstYear;
+        private final int lastYear;
+        private final RedBlackTree<Song> songs = new RedBlackTree<>();
+        private final Map<SongAttribute, int[]> ranges = new EnumMap<>(SongAttribute.class);
+
+        private Partition(int firstYear, int lastYear) {
+            this.firstYear = firstYear;
+            this.lastYear = lastYear;
+        }
+
+        public int getFirstYear() { return firstYear; }
+        public int getLastYear() { return lastYear; }
+        public int size() { return songs.size(); }
+
+        @Override
+        public Iterator<Song> iterator() {
+            return songs.iterator(null, null);
+        }
+
+        /**
+         * @return the smallest value of a numeric attribute among the songs
+         * of this partition
+         */
+        public int getMin(SongAttribute attribute) { return ranges.get(attribute)[0]; }
+
+        /**
+         * @return the largest value of a numeric attribute among the songs
+         * of this partition
+         */
+        public int getMax(SongAttribute attribute) { return ranges.get(attribute)[1]; }
+
+        /**
+         * Widens the attribute ranges of this partition to cover songs.
+         */
+        private void cover(Collection<Song> songs) {
+            for (Song song : songs) {
+                for (SongAttribute attribute : SongAttribute.values()) {
+                    if (!attribute.isNumeric()) {
+                        continue;
+                    }
+                    int value = attribute.intValueOf(song);
+                    int[] range = ranges.get(attribute);
+                    if (range == null) {
+                        ranges.put(attribute, new int[] { value, value });
+                    } else {
+                        range[0] = Math.min(range[0], value);
+                        range[1] = Math.max(range[1], value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks the attribute ranges of this partition against predicates.
+         * Predicates on string attributes cannot rule a partition out.
+         * @return false if no song in this partition can satisfy every one
+         *     of predicates, true if some might
+         */
+        public boolean mayMatch(List<SongQuery.Predicate> predicates) {
+            for (SongQuery.Predicate predicate : predicates) {
+                if (!predicate.getAttribute().isNumeric()) {
+                    continue;
+                }
+                int min = getMin(predicate.getAttribute());
+                int max = getMax(predicate.getAttribute());
+                int low = (Integer) predicate.getLow();
+                switch (predicate.getKind()) {
+                case EQUALS:
+                    if (low < min || low > max) {
+                        return false;
+                    }
+                    break;
+                case GREATER_THAN:
+                    if (max <= low) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (max < low || min > (Integer) predicate.getHigh()) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+            return true;
+        }
+    }
+
+    // set when the catalog is created, before any song is added
+    private int yearsPerPartition = 10;
+    // partitions by their first year, only for years that hold songs
+    private final TreeMap<Integer, Partition> partitions = new TreeMap<>();
+    private int size = 0;
+
+    /**
+     * Creates an empty catalog with one partition per decade.
+     */
+    public YearPartitionedCatalog() {
+    }
+
+    /**
+     * Creates an empty catalog with one partition per yearsPerPartition years.
+     * Partitions start at multiples of yearsPerPartition, so with 10, 2015
+     * falls in the partition for 2010 through 2019.
+     * @param yearsPerPartition the number of years in each partition
+     * @return a new, empty catalog
+     * @throws IllegalArgumentException if yearsPerPartition is not positive
+     */
+    public static YearPartitionedCatalog withYearsPerPartition(int yearsPerPartition) {
+        if (yearsPerPartition < 1) {
+            throw new IllegalArgumentException("yearsPerPartition must be positive: " + yearsPerPartition);
+        }
+        YearPartitionedCatalog catalog = new YearPartitionedCatalog();
+        catalog.yearsPerPartition = yearsPerPartition;
+        return catalog;
+    }
+
+    public int getYearsPerPartition() { return yearsPerPartition; }
+
+    /**
+     * @return the total number of songs in every partition
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the first year of the partition that year falls in
+     */
+    public int partitionStart(int year) {
+        return Math.floorDiv(year, yearsPerPartition) * yearsPerPartition;
+    }
+
+    /**
+     * @return the partitions that hold songs, ordered by year
+     */
+    public List<Partition> getPartitions() {
+        return Collections.unmodifiableList(new ArrayList<>(partitions.values()));
+    }
+
+    /**
+     * @return the partition that year falls in, or null if it holds no songs
+     */
+    public Partition getPartition(int year) {
+        return partitions.get(partitionStart(year));
+    }
+
+    /**
+     * Adds song to the partition for its year.
+     * @param song the song to add
+     * @throws NullPointerException if song is null
+     */
+    public void add(Song song) {
+        if (song == null) {
+            throw new NullPointerException("Cannot insert null values");
+        }
+        addAll(List.of(song));
+    }
+
+    /**
+     * Adds songs to the partitions for their years, with one call to insertAll
+     * per partition.
+     * @param songs the songs to add
+     * @throws NullPointerException if any song is null
+     */
+    public void addAll(Collection<Song> songs) {
+        TreeMap<Integer, List<Song>> byPartition = new TreeMap<>();
+        for (Song song : songs) {
+            if (song == null) {
+                throw new NullPointerException("Cannot insert null values");
+            }
+            byPartition.computeIfAbsent(partitionStart(song.getYear()), start -> new ArrayList<>())
+                .add(song);
+        }
+        for (Map.Entry<Integer, List<Song>> entry : byPartition.entrySet()) {
+            int start = entry.getKey();
+            Partition partition = partitions.computeIfAbsent(
+                start, first -> new Partition(first, first + yearsPerPartition - 1));
+            partition.songs.insertAll(entry.getValue());
+            partition.cover(entry.getValue());
+            size += entry.getValue().size();
+        }
+    }
+
+    /**
+     * Drops the partition that year falls in, with all of its songs.
+     * @param year any year in the partition to drop
+     * @return the number of songs dropped
+     */
+    public int dropPartition(int year) {
+        Partition partition = partitions.remove(partitionStart(year));
+        if (partition == null) {
+            return 0;
+        }
+        size -= partition.size();
+        return partition.size();
+    }
+
+    /**
+     * Replaces the songs of the partition that year falls in with the songs
+     * among replacements that fall in the same partition. Songs from other
+     * years are ignored, so a whole export can be given to reload one range
+     * of years from it.
+     * @param year any year in the partition to reload
+     * @param replacements the songs to reload the partition from
+     * @return the number of songs in the reloaded partition
+     */
+    public int reloadPartition(int year, Iterable<Song> replacements) {
+        int start = partitionStart(year);
+        List<Song> kept = new ArrayList<>();
+        for (Song song : replacements) {
+            if (song != null && partitionStart(song.getYear()) == start) {
+                kept.add(song);
+            }
+        }
+        dropPartition(year);
+        addAll(kept);
+        return kept.size();
+    }
+
+    /**
+     * @return the partitions that may hold songs satisfying every one of
+     * predicates, ordered by year
+     */
+    public List<Partition> prune(List<SongQuery.Predicate> predicates) {
+        List<Partition> kept = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            if (partition.mayMatch(predicates)) {
+                kept.add(partition);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return the number of songs in the partitions that may hold songs
+     * satisfying every one of predicates, which is how many songs a scan
+     * of those partitions would check
+     */
+    public long countCandidates(List<SongQuery.Predicate> predicates) {
+        long count = 0;
+        for (Partition partition : prune(predicates)) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns every song in the partitions that may hold songs satisfying
+     * every one of predicates. The songs themselves are not checked, so
+     * callers must still test each of them against predicates.
+     * @return the songs of the remaining partitions, ordered by year range
+     *     and then by each partition's tree
+     */
+    public Iterable<Song> candidates(List<SongQuery.Predicate> predicates) {
+        List<Partition> kept = prune(predicates);
+        for (Partition partition : kept) {
+            partition.songs.setIteratorMin(null);
+            partition.songs.setIteratorMax(null);
+        }
+        return () -> new Iterator<Song>() {
+            private int next = 0;
+            private Iterator<Song> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && next < kept.size()) {
+                    current = kept.get(next++).songs.iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Song next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Collects the songs released from fromYear through toYear, with a
+     * Loudness from loudnessLow through loudnessHigh and a BPM above
+     * bpmThreshold. Only the partitions whose ranges overlap every bound
+     * are scanned.
+     * @param fromYear the earliest year, or null for no earliest year
+     * @param toYear the latest year, or null for no latest year
+     * @param loudnessLow the smallest Loudness, or null for no minimum
+     * @param loudnessHigh the largest Loudness, or null for no maximum
+     * @param bpmThreshold the BPM that songs must be above, or null for any BPM
+     * @return a new list of the matching songs, ordered by Loudness
+     */
+    public List<Song> select(Integer fromYear, Integer toYear, Integer loudnessLow,
+                             Integer loudnessHigh, Integer bpmThreshold) {
+        List<SongQuery.Predicate> predicates = new SongQuery()
+            .between(SongAttribute.YEAR, fromYear == null ? Integer.MIN_VALUE : fromYear,
+                     toYear == null ? Integer.MAX_VALUE : toYear)
+            .between(SongAttribute.LOUDNESS, loudnessLow == null ? Integer.MIN_VALUE : loudnessLow,
+                     loudnessHigh == null ? Integer.MAX_VALUE : loudnessHigh)
+            .getPredicates();
+        if (bpmThreshold != null) {
+            predicates = new ArrayList<>(predicates);
+            predicates.add(new SongQuery().greaterThan(SongAttribute.BPM, bpmThreshold)
+                               .getPredicates().get(0));
+        }
+        List<Song> selected = new ArrayList<>();
+        for (Song song : candidates(predicates)) {
+            if (matchesAll(predicates, song)) {
+                selected.add(song);
+            }
+        }
+        selected.sort(Song.BY_LOUDNESS);
+        return selected;
+    }
+
+    private static boolean matchesAll(List<SongQuery.Predicate> predicates, Song song) {
+        for (SongQuery.Predicate predicate : predicates) {
+            if (!predicate.test(song)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ================= JUnit Test Methods ====================
+
+    /**
+     * Checks that songs land in the partition for their year, that each
+     * partition's ranges are exact, and that pruning keeps exactly the
+     * partitions whose ranges overlap a query while select still returns
+     * every match.
+     */
+    @Test
+    public void testPruning() {
+        YearPartitionedCatalog catalog = YearPartitionedCatalog.withYearsPerPartition(10);
+        List<Song> songs = new ArrayList<>();
+        for (int year = 1960; year < 2020; year++) {
+            // older songs are quieter, so loudness bounds can prune too
+            int loudness = -30 + (year - 1960) / 3;
+            songs.add(new Song("Song " + year, "Artist", "pop", year, 60 + year % 100,
+                               50, 50, loudness, 10));
+        }
+        catalog.addAll(songs);
+        assertEquals(60, catalog.size());
+        assertEquals(6, catalog.getPartitions().size());
+        Partition sixties = catalog.getPartitions().get(0);
+        assertEquals(1960, sixties.getFirstYear());
+        assertEquals(1969, sixties.getLastYear());
+        assertEquals(10, sixties.size());
+        assertEquals(1960, sixties.getMin(SongAttribute.YEAR));
+        assertEquals(1969, sixties.getMax(SongAttribute.YEAR));
+        assertEquals(-30, sixties.getMin(SongAttribute.LOUDNESS));
+        assertEquals(-27, sixties.getMax(SongAttribute.LOUDNESS));
+
+        List<SongQuery.Predicate> recent = new SongQuery()
+            .greaterThan(SongAttribute.YEAR, 2009).getPredicates();
+        assertEquals(1, catalog.prune(recent).size());
+        assertEquals(10, catalog.countCandidates(recent));
+        List<SongQuery.Predicate> loud = new SongQuery()
+            .between(SongAttribute.LOUDNESS, -14, 0).getPredicates();
+        assertEquals(2, catalog.prune(loud).size());
+        assertEquals(1, catalog.prune(new SongQuery().equalTo(SongAttribute.YEAR, 1975)
+                                          .equalTo(SongAttribute.GENRE, "rock").getPredicates()).size());
+        assertEquals(0, catalog.prune(new SongQuery().equalTo(SongAttribute.YEAR, 2025)
+                                          .getPredicates()).size());
+
+        List<Song> selected = catalog.select(1995, 2004, -20, null, 80);
+        List<Song> expected = new ArrayList<>();
+        for (Song song : songs) {
+            if (song.getYear() >= 1995 && song.getYear() <= 2004 && song.getLoudness() >= -20
+                && song.getBPM() > 80) {
+                expected.add(song);
+            }
+        }
+        expected.sort(Song.BY_LOUDNESS);
+        assertEquals(expected, selected);
+        assertEquals(60, catalog.select(null, null, null, null, null).size());
+        assertThrows(NullPointerException.class, () -> catalog.add(null));
+        assertThrows(IllegalArgumentException.class, () -> YearPartitionedCatalog.withYearsPerPartition(0));
+    }
+
+    /**
+     * Checks that dropping and reloading a partition leaves the others alone,
+     * and that a reload only keeps songs from its own years.
+     */
+    @Test
+    public void testDropAndReload() {
+        YearPartitionedCatalog catalog = YearPartitionedCatalog.withYearsPerPartition(5);
+        for (int year = 2000; year < 2020; year++) {
+            for (int i = 0; i < 3; i++) {
+                catalog.add(new Song("Song " + year + "-" + i, "Artist", "pop", year, 120,
+                                     50, 50, -5, 10));
+            }
+        }
+        assertEquals(4, catalog.getPartitions().size());
+        assertEquals(15, catalog.dropPartition(2003));
+        assertEquals(0, catalog.dropPartition(2003));
+        assertEquals(45, catalog.size());
+        assertEquals(2005, catalog.getPartitions().get(0).getFirstYear());
+        assertTrue(catalog.select(2000, 2004, null, null, null).isEmpty());
+
+        List<Song> export = new ArrayList<>();
+        for (int year = 1998; year < 2012; year++) {
+            export.add(new Song("Reloaded " + year, "Artist", "pop", year, 130, 50, 50, -3, 10));
+        }
+        assertEquals(5, catalog.reloadPartition(2000, export));
+        assertEquals(5, catalog.reloadPartition(2007, export));
+        assertEquals(40, catalog.size());
+        assertEquals(4, catalog.getPartitions().size());
+        assertEquals(5, catalog.select(2005, 2009, null, null, null).size());
+        assertEquals(130, catalog.getPartitions().get(1).getMin(SongAttribute.BPM));
+        assertEquals(30, catalog.select(2010, null, null, null, null).size());
+        assertEquals(-5, catalog.getPartitions().get(3).getMax(SongAttribute.LOUDNESS));
+    }
+}